@@ -0,0 +1,119 @@
+package dawndb.buffer;
+
+import dawndb.file.Page;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 21:30
+ * @Version: 1.0
+ * @Description:
+ * 后台写线程。每隔interval毫秒检查各分区即将被淘汰的缓冲区，提前写回其中的脏缓冲区，
+ * 使固定块的线程淘汰时通常遇到未修改的缓冲区，无需同步地刷新日志和写回。
+ * 写回前先将日志刷新到这些缓冲区的最大日志序列号，遵守预写日志规则。
+ *
+ * partitions: 缓冲池的分区
+ * interval: 两轮之间的间隔(毫秒)
+ * maxWrites: 每轮最多写回的块数, 平均分给各分区
+ * cleanPercent: 每个分区预计最先被淘汰的缓冲区中未修改的目标比例
+ * writes: 写回的块数, 由缓冲区管理器持有, 写线程重启后继续累计
+ * scratch: 复制缓冲区内容用的页
+ * next: 下一轮从哪个分区开始, 使各分区轮流优先
+ * running: 为false时写线程在当前一轮结束后退出。停止时不中断写线程：
+ * 中断正在读写的线程会关闭共享的文件通道(ClosedByInterruptException)，之后所有线程对该文件的I/O都会失败
+ */
+
+
+class BackgroundWriter implements Runnable {
+
+    private BufferPartition[] partitions;
+    private long interval;
+    private int maxWrites;
+    private int cleanPercent;
+    private LongAdder writes;
+    private List<Page> scratch = new ArrayList<>();
+    private int next;
+    private volatile boolean running = true;
+    private Thread thread;
+
+    BackgroundWriter(BufferPartition[] partitions, long interval, int maxWrites, int cleanPercent,
+                     LongAdder writes) {
+        this.partitions = partitions;
+        this.writes = writes;
+        this.interval = Math.max(1, interval);
+        this.maxWrites = Math.max(1, maxWrites);
+        this.cleanPercent = Math.min(100, Math.max(0, cleanPercent));
+    }
+
+    void start() {
+        thread = new Thread(this, "dawndb-bgwriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 停止写线程并等待当前一轮结束。唤醒在两轮之间等待的写线程，但不中断它
+     */
+    void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            pause();
+            if (!running) {
+                break;
+            }
+            try {
+                round();
+            } catch (RuntimeException e) {
+                System.out.println("background writer: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 等待interval毫秒，停止时提前返回
+     */
+    private void pause() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(interval);
+        long remaining;
+        while (running && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    /**
+     * 一轮写回，每个分区最多写回maxWrites/分区数个块(至少1个)
+     */
+    private void round() {
+        int budget = Math.max(1, maxWrites / partitions.length);
+        int remaining = maxWrites;
+        for (int i = 0; i < partitions.length && remaining > 0 && running; i++) {
+            BufferPartition part = partitions[(next + i) % partitions.length];
+            int n = part.writeAhead(Math.min(budget, remaining), cleanPercent, scratch);
+            writes.add(n);
+            remaining -= n;
+        }
+        next = (next + 1) % partitions.length;
+    }
+}
@@ -5,6 +5,8 @@ import dawndb.file.FileMgr;
 import dawndb.file.Page;
 import dawndb.log.LogMgr;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 /**
  * @Author: WangChen
  * @Date: 2023/1/10 11:36
@@ -15,29 +17,52 @@ import dawndb.log.LogMgr;
  * lm: 日志管理器
  * contents: 缓冲区内容
  * blk: 分配给缓冲区的磁盘块
- * pins: 当前固定块的个数
- * txnum: 事务序列号
- * lsn: 日志序列号
+ * pins: 当前固定块的个数, 通过PINS原子地更新, 大于1时取消固定无需加分区锁
+ * txnum: 修改缓冲区的事务序列号, -1表示未修改
+ * lsn: 最近一次修改写入的日志记录的LSN(在日志中的字节偏移)
+ * frame: 缓冲区在缓冲池中的下标, 不属于缓冲池时为-1
+ * modifications: 修改次数, 后台写线程据此判断复制之后缓冲区是否又被修改
+ * writing: 后台写线程或淘汰它的线程正在写回该缓冲区的副本
+ * loading: 固定它的线程或预读线程正在读入该缓冲区的内容
+ * dirtyPages: 所属分区的脏页表, 不属于缓冲池时为null
  */
 
 
 public class Buffer {
 
+    private static final AtomicIntegerFieldUpdater<Buffer> PINS =
+            AtomicIntegerFieldUpdater.newUpdater(Buffer.class, "pins");
+
     private FileMgr fm;
     private LogMgr lm;
     private Page contents;
     private BlockId blk = null;
-    private int pins = 0;
-    private int txnum = -1;
-    private int lsn = -1;
+    private volatile int pins;
+    private volatile int txnum = -1;
+    private long lsn = -1;
+    private int frame;
+    private int modifications;
+    private boolean writing;
+    private volatile boolean loading;
+    private DirtyPageTable dirtyPages;
 
     /**
      * 初始化缓冲区
      */
     public Buffer(FileMgr fm, LogMgr lm) {
+        this(fm, lm, -1, null, fm.newPage());
+    }
+
+    /**
+     * 初始化缓冲池中下标为frame的缓冲区, 被修改时登记到分区的脏页表dirtyPages
+     * @param contents 缓冲池内存中该缓冲区的页
+     */
+    Buffer(FileMgr fm, LogMgr lm, int frame, DirtyPageTable dirtyPages, Page contents) {
         this.fm = fm;
         this.lm = lm;
-        contents = new Page(fm.blockSize());
+        this.frame = frame;
+        this.dirtyPages = dirtyPages;
+        this.contents = contents;
     }
 
     /**
@@ -57,11 +82,20 @@ public class Buffer {
     /**
      * 更新事务序列号及日志序列号
      */
-    public void setModified(int txnum, int lsn) {
+    public synchronized void setModified(int txnum, long lsn) {
+        if (this.txnum != txnum && dirtyPages != null) {
+            if (this.txnum >= 0) {
+                dirtyPages.remove(this.txnum, this);
+            }
+            if (txnum >= 0) {
+                dirtyPages.add(txnum, this);
+            }
+        }
         this.txnum = txnum;
         if (lsn >= 0) {
             this.lsn = lsn;
         }
+        modifications++;
     }
 
     /**
@@ -78,16 +112,138 @@ public class Buffer {
         return txnum;
     }
 
+    int frame() {
+        return frame;
+    }
+
+    /**
+     * 返回最近一次修改对应的日志序列号
+     */
+    synchronized long lsn() {
+        return lsn;
+    }
+
+    synchronized int modifications() {
+        return modifications;
+    }
+
+    /**
+     * 缓冲区内容已由调用者写回磁盘，将其标记为未修改
+     */
+    synchronized void markFlushed() {
+        clearModified();
+    }
+
+    /**
+     * 缓冲区未被修改且没有正在进行的写回，可以直接分配给其他块
+     */
+    synchronized boolean isClean() {
+        return txnum < 0 && !writing;
+    }
+
+    synchronized boolean isWriting() {
+        return writing;
+    }
+
+    /**
+     * 后台写线程或淘汰它的线程复制了缓冲区内容，开始写回
+     */
+    synchronized void startWrite() {
+        writing = true;
+    }
+
+    /**
+     * 写回结束。写回的是修改次数为modifications时的内容，此后未被修改时标记为未修改
+     */
+    synchronized void endWrite(int modifications) {
+        if (this.modifications == modifications) {
+            clearModified();
+        }
+        writing = false;
+        notifyAll();
+    }
+
+    /**
+     * 等待写回结束，避免较旧的副本在更新的内容之后落盘
+     */
+    synchronized void awaitWrite() {
+        boolean interrupted = false;
+        while (writing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * 读取指定块的内容进缓冲区，若缓冲区不为空则先将缓冲区内容写回磁盘
      */
     void assignToBlock(BlockId blk) {
+        awaitWrite();
         flush();
         this.blk = blk;
         fm.read(this.blk, contents);
         pins = 0;
     }
 
+    /**
+     * 将缓冲区分配给块blk，内容由调用者在分区锁外读入后调用{@link #endLoad}。
+     * 调用者保证缓冲区未被修改且不在写回中(见{@link #isClean})，因此无需写回原来的块
+     */
+    void assignForLoad(BlockId blk) {
+        this.blk = blk;
+        pins = 0;
+        loading = true;
+    }
+
+    /**
+     * 读入结束，loaded为false表示读入失败，缓冲区不再属于任何块
+     */
+    synchronized void endLoad(boolean loaded) {
+        if (!loaded) {
+            blk = null;
+        }
+        loading = false;
+        notifyAll();
+    }
+
+    /**
+     * 等待其他线程读入缓冲区内容
+     * @return 缓冲区是否仍属于块blk
+     */
+    boolean awaitLoad(BlockId blk) {
+        if (loading) {
+            synchronized (this) {
+                boolean interrupted = false;
+                while (loading) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        return blk.equals(this.blk);
+    }
+
+    /**
+     * 缓冲区被移出缓冲池，写回修改后不再属于任何块
+     */
+    void detach() {
+        awaitWrite();
+        flush();
+        blk = null;
+    }
+
     /**
      * 将缓冲区内容写回磁盘
      */
@@ -95,21 +251,47 @@ public class Buffer {
         if (txnum >= 0) {
             lm.flush(lsn);
             fm.write(blk, contents);
-            txnum = -1;
+            clearModified();
         }
     }
 
+    /**
+     * 标记为未修改并从脏页表中移除
+     */
+    private void clearModified() {
+        if (txnum >= 0 && dirtyPages != null) {
+            dirtyPages.remove(txnum, this);
+        }
+        txnum = -1;
+    }
+
     /**
      * 增加缓冲区块的引用数
      */
     void pin() {
-        pins++;
+        PINS.incrementAndGet(this);
     }
 
     /**
      * 减少缓冲区块的引用数
      */
     void unpin() {
-        pins--;
+        PINS.decrementAndGet(this);
+    }
+
+    /**
+     * 引用数大于1时减少引用数并返回true；否则不做任何事并返回false，
+     * 由调用者在分区锁内完成引用数降为0的取消固定
+     */
+    boolean unpinShared() {
+        while (true) {
+            int p = pins;
+            if (p <= 1) {
+                return false;
+            }
+            if (PINS.compareAndSet(this, p, p - 1)) {
+                return true;
+            }
+        }
     }
 }
@@ -0,0 +1,86 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 22:50
+ * @Version: 1.0
+ * @Description:
+ * 缓冲区访问策略：大表的顺序扫描使用一个私有的小环形缓冲区。
+ * 扫描读入新块时优先复用环中最早的缓冲区，而不是由替换策略淘汰其他块，
+ * 因此一次全表扫描最多占用ringSize个缓冲区，不会冲掉其他事务的热点块。
+ * 环中的缓冲区已被其他线程固定、被修改或已被淘汰改作他用时不再复用，移出环并正常选择淘汰的缓冲区。
+ * 块按哈希值属于某个分区，因此环按分区划分，每个分区的环容量为ringSize/分区数(至少1)。
+ * 一个策略对象只供一次扫描(一个线程)使用，每个分区的环只在持有该分区的锁时访问。
+ *
+ * ringSize: 环的总容量
+ * rings: 各分区的环, 按加入的先后排列
+ * DEFAULT_RING_SIZE: 默认的环容量
+ */
+
+
+public class BufferAccessStrategy {
+
+    public static final int DEFAULT_RING_SIZE = 32;
+
+    private int ringSize;
+    private Map<BufferPartition, ArrayDeque<Slot>> rings = new HashMap<>();
+
+    public BufferAccessStrategy(int ringSize) {
+        this.ringSize = Math.max(1, ringSize);
+    }
+
+    /**
+     * 默认容量的环形缓冲区, 用于大表的顺序扫描
+     */
+    public static BufferAccessStrategy bulkRead() {
+        return new BufferAccessStrategy(DEFAULT_RING_SIZE);
+    }
+
+    public int ringSize() {
+        return ringSize;
+    }
+
+    /**
+     * 在持有分区锁时调用。环未满时返回null，由分区正常选择缓冲区后调用{@link #added}；
+     * 环已满时取出最早的缓冲区，仍可复用则放回环尾并返回它，否则返回null
+     * @param partitions 分区个数
+     */
+    Buffer reuse(BufferPartition part, int partitions) {
+        ArrayDeque<Slot> ring = rings.computeIfAbsent(part, p -> new ArrayDeque<>());
+        if (ring.size() < Math.max(1, ringSize / partitions)) {
+            return null;
+        }
+        Slot slot = ring.pollFirst();
+        Buffer buff = slot.buff;
+        if (buff.isPinned() || buff.modifyingTx() >= 0 || !slot.blk.equals(buff.block())) {
+            return null;
+        }
+        return buff;
+    }
+
+    /**
+     * 在持有分区锁时调用，缓冲区buff被分配给块blk后加入环尾
+     */
+    void added(BufferPartition part, Buffer buff, BlockId blk) {
+        rings.computeIfAbsent(part, p -> new ArrayDeque<>()).addLast(new Slot(buff, blk));
+    }
+
+    /**
+     * 环中的一项, blk为扫描读入的块, 缓冲区已不属于该块时不再复用
+     */
+    private static class Slot {
+        Buffer buff;
+        BlockId blk;
+
+        Slot(Buffer buff, BlockId blk) {
+            this.buff = buff;
+            this.blk = blk;
+        }
+    }
+}
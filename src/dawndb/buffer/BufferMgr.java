@@ -2,140 +2,483 @@ package dawndb.buffer;
 
 import dawndb.file.BlockId;
 import dawndb.file.FileMgr;
+import dawndb.file.Page;
 import dawndb.log.LogMgr;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
 /**
  * @Author: WangChen
  * @Date: 2023/1/10 11:59
  * @Version: 1.0
  * @Description:
  * 缓冲区管理器
- * bufferPool: 缓冲池
- * numAvailable: 可用块的数量
+ * 缓冲池分为若干分区(见BufferPartition)，块按哈希值属于某个分区，各分区独立加锁。
+ * fm: 文件管理器
+ * lm: 日志管理器
+ * numbuffs: 缓冲区总数
+ * arena: 与创建时的缓冲池内存分配方式相同、不含内存的FrameArena, 扩大缓冲池时据此分配新的内存
+ * partitions: 缓冲池的分区, 个数为2的幂
+ * partitionBits: 分区个数的对数
+ * trace: 不为null时记录每次固定与取消固定
+ * writer: 后台写线程, 未启动时为null
+ * readAhead: 顺序预读, 未启动时为null
+ * residency: 定期保存驻留表的线程, 未启动时为null
+ * warmUp: 按驻留表预热缓冲池, 未开始预热时为null
+ * earlyWritten: 在提交前被淘汰写回(未刷盘)的脏缓冲区所属的文件, 下次flushAll时刷盘
+ * backgroundWrites: 后台写线程写回的块数
+ * dirtyVictimWrites: 固定块时淘汰脏缓冲区而由前台线程写回的次数
+ * victimCopy: 线程私有的页, 淘汰脏缓冲区时在分区锁内复制其内容, 解锁后写回
  * MAX_TIME: 最大等待时间
+ * MIN_PARTITION_SIZE/MAX_PARTITIONS: 默认分区方式下每个分区至少的缓冲区数、最多的分区数
  */
 
 
 public class BufferMgr {
 
-    private Buffer[] bufferPool;
-    private int numAvailable;
+    private FileMgr fm;
+    private LogMgr lm;
+    private volatile int numbuffs;
+    private FrameArena arena;
+    private BufferPartition[] partitions;
+    private int partitionBits;
+    private volatile PinTrace trace;
+    private BackgroundWriter writer;
+    private volatile ReadAhead readAhead;
+    private ResidencyMap residency;
+    private volatile WarmUp warmUp;
+    private Set<String> earlyWritten = ConcurrentHashMap.newKeySet();
+    private LongAdder backgroundWrites = new LongAdder();
+    private LongAdder dirtyVictimWrites = new LongAdder();
+    private ThreadLocal<Page> victimCopy;
     private static final long MAX_TIME = 10000;
+    private static final int MIN_PARTITION_SIZE = 128;
+    private static final int MAX_PARTITIONS = 64;
 
     /**
-     * 初始化缓冲区管理器
+     * 初始化使用CLOCK替换策略的缓冲区管理器
      * @param numbuffs 缓冲区个数
      */
     public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs) {
-        bufferPool = new Buffer[numbuffs];
-        numAvailable = numbuffs;
-        // 初始化缓冲区
-        for (int i=0; i< numbuffs; i++) {
-            bufferPool[i] = new Buffer(fm, lm);
+        this(fm, lm, numbuffs, ClockPolicy::new);
+    }
+
+    /**
+     * 初始化缓冲区管理器, 分区个数随缓冲区个数增加, 每个分区至少MIN_PARTITION_SIZE个缓冲区
+     * @param numbuffs 缓冲区个数
+     * @param policy 为每个分区创建替换策略
+     */
+    public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs, Supplier<ReplacementPolicy> policy) {
+        this(fm, lm, numbuffs, Math.min(MAX_PARTITIONS, numbuffs / MIN_PARTITION_SIZE), policy);
+    }
+
+    /**
+     * 初始化缓冲区管理器
+     * @param numbuffs 缓冲区个数
+     * @param numPartitions 分区个数, 向下取为2的幂
+     * @param policy 为每个分区创建替换策略
+     */
+    public BufferMgr(FileMgr fm, LogMgr lm, int numbuffs, int numPartitions, Supplier<ReplacementPolicy> policy) {
+        this(fm, lm, FrameArena.allocate(numbuffs, fm), numPartitions, policy);
+    }
+
+    /**
+     * 初始化使用内存arena的缓冲区管理器, 缓冲区个数为arena的页数
+     * @param arena 缓冲池的内存, 例如映射在hugetlbfs上的{@link FrameArena#map}
+     * @param numPartitions 分区个数, 向下取为2的幂
+     * @param policy 为每个分区创建替换策略
+     */
+    public BufferMgr(FileMgr fm, LogMgr lm, FrameArena arena, int numPartitions, Supplier<ReplacementPolicy> policy) {
+        this.fm = fm;
+        this.lm = lm;
+        this.numbuffs = arena.frames();
+        this.arena = arena.template();
+        victimCopy = ThreadLocal.withInitial(fm::newPage);
+        int n = Integer.highestOneBit(Math.max(1, Math.min(numPartitions, numbuffs)));
+        partitionBits = Integer.numberOfTrailingZeros(n);
+        partitions = new BufferPartition[n];
+        int base = 0;
+        for (int i = 0; i < n; i++) {
+            int size = numbuffs / n + (i < numbuffs % n ? 1 : 0);
+            partitions[i] = new BufferPartition(this, fm, lm, arena, base, size, policy.get());
+            base += size;
         }
     }
 
     /**
      * 返回当前可用缓冲区个数
      */
-    public synchronized int available() {
-        return numAvailable;
+    public int available() {
+        int available = 0;
+        for (BufferPartition part : partitions) {
+            available += part.available();
+        }
+        return available;
+    }
+
+    public int size() {
+        return numbuffs;
     }
 
     /**
-     * 将被指定事务修改的缓冲区写回内存
+     * 在运行时改变缓冲区总数，各分区的大小按同样方式重新分配。
+     * 扩大时新增的缓冲区立即可用，其内存以创建时的方式一次分配；缩小时不等待被固定的缓冲区，
+     * 它们在引用数降为0时才被移出，修改过的缓冲区在移出前写回。
+     * 已移出的内存段在不再被任何缓冲区引用后由垃圾回收释放
+     * @param numbuffs 新的缓冲区总数, 不小于分区个数
      */
-    public synchronized void flushAll(int txnum) {
-        for (Buffer buff : bufferPool) {
-            if (buff.modifyingTx() == txnum) {
-                buff.flush();
-            }
+    public synchronized void resize(int numbuffs) {
+        int n = partitions.length;
+        if (numbuffs < n) {
+            throw new IllegalArgumentException("buffer pool needs at least " + n + " buffers");
+        }
+        int[] sizes = new int[n];
+        int growth = 0;
+        for (int i = 0; i < n; i++) {
+            sizes[i] = numbuffs / n + (i < numbuffs % n ? 1 : 0);
+            growth += Math.max(0, sizes[i] - partitions[i].size());
         }
+        FrameArena grown = (growth > 0) ? arena.sibling(growth) : null;
+        int base = 0;
+        for (int i = 0; i < n; i++) {
+            int delta = sizes[i] - partitions[i].size();
+            partitions[i].resize(sizes[i], grown, base);
+            base += Math.max(0, delta);
+        }
+        this.numbuffs = numbuffs;
+    }
+
+    public int partitions() {
+        return partitions.length;
+    }
+
+    public String policyName() {
+        return partitions[0].policy().name();
     }
 
     /**
-     * 取消引用某个缓冲区。如果它的引用数为零，那么通知任何等待线程。
+     * 固定的块已在缓冲池中的次数
      */
-    public synchronized void unpin(Buffer buff) {
-        buff.unpin();
-        if (!buff.isPinned()) {
-            numAvailable++;
-            notifyAll();
+    public long hits() {
+        long hits = 0;
+        for (BufferPartition part : partitions) {
+            hits += part.hits();
         }
+        return hits;
     }
 
     /**
-     * 将缓冲区固定到指定的块上，可能会等待缓冲区可用。
-     * 若在某段时间内没有可用缓冲区则抛出{@link BufferAbortException}异常
+     * 固定的块需要从磁盘读入的次数
      */
-    public synchronized Buffer pin(BlockId blk) {
-        try {
-            long timestamp = System.currentTimeMillis();
-            Buffer buff = tryToPin(blk);
-            while (buff == null && !waitingTooLong(timestamp)) {
-                wait(MAX_TIME);
-                buff = tryToPin(blk);
-            }
-            if (buff == null) {
-                throw new BufferAbortException();
-            }
-            return buff;
+    public long misses() {
+        long misses = 0;
+        for (BufferPartition part : partitions) {
+            misses += part.misses();
         }
-        catch(InterruptedException e) {
-            throw new BufferAbortException();
+        return misses;
+    }
+
+    /**
+     * 命中率, 尚未固定过块时为0
+     */
+    public double hitRatio() {
+        long hits = hits();
+        long total = hits + misses();
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+    /**
+     * 启动后台写线程，已启动时按新的参数重新启动
+     * @param intervalMillis 每轮之间的间隔(毫秒)
+     * @param maxWritesPerRound 每轮最多写回的块数
+     * @param cleanPercent 每个分区预计最先被淘汰的缓冲区中未修改的目标百分比
+     */
+    public synchronized void startBackgroundWriter(long intervalMillis, int maxWritesPerRound, int cleanPercent) {
+        stopBackgroundWriter();
+        writer = new BackgroundWriter(partitions, intervalMillis, maxWritesPerRound, cleanPercent,
+                backgroundWrites);
+        writer.start();
+    }
+
+    public synchronized void stopBackgroundWriter() {
+        if (writer != null) {
+            writer.stop();
+            writer = null;
         }
     }
 
     /**
-     * 等待时间是否超过某个值
+     * 后台写线程写回的块数
      */
-    private boolean waitingTooLong(long starttime) {
-        return System.currentTimeMillis() - starttime > MAX_TIME;
+    public long backgroundWrites() {
+        return backgroundWrites.sum();
     }
 
     /**
-     * 尝试将缓冲区固定到指定的块。如果已经有一个缓冲区分配给该块，
-     * 那么该缓冲区将被使用;否则，将从池中选择一个未固定的缓冲区。
-     * 如果没有可用缓冲区，则返回空值。
+     * 固定块时不得不先写回被淘汰的脏缓冲区的次数
      */
-    private Buffer tryToPin(BlockId blk) {
-        Buffer buff = findExistingBuffer(blk);
-        if (buff == null) {
-            buff = chooseUnpinnedBuffer();
-            if (buff == null) {
-                return null;
+    public long dirtyVictimWrites() {
+        return dirtyVictimWrites.sum();
+    }
+
+    /**
+     * 启动顺序预读，已启动时按新的参数重新启动
+     * @param window 检测到顺序访问后每次预读的块数, 不超过缓冲区总数的1/4
+     */
+    public synchronized void startReadAhead(int window) {
+        stopReadAhead();
+        ReadAhead ra = new ReadAhead(this, fm, Math.min(window, Math.max(1, numbuffs / 4)));
+        ra.start();
+        readAhead = ra;
+    }
+
+    public synchronized void stopReadAhead() {
+        if (readAhead != null) {
+            readAhead.stop();
+            readAhead = null;
+        }
+    }
+
+    /**
+     * 预读的块数
+     */
+    public long prefetched() {
+        long prefetched = 0;
+        for (BufferPartition part : partitions) {
+            prefetched += part.prefetched();
+        }
+        return prefetched;
+    }
+
+    /**
+     * 缓冲池中的块，按最近使用的先后排列。各分区按替换策略排好序后轮流取一个块合并
+     */
+    public List<BlockId> residentBlocks() {
+        List<List<BlockId>> lists = new ArrayList<>(partitions.length);
+        int total = 0;
+        for (BufferPartition part : partitions) {
+            List<BlockId> blocks = part.residentBlocks();
+            lists.add(blocks);
+            total += blocks.size();
+        }
+        List<BlockId> blocks = new ArrayList<>(total);
+        for (int i = 0; blocks.size() < total; i++) {
+            for (List<BlockId> list : lists) {
+                if (i < list.size()) {
+                    blocks.add(list.get(i));
+                }
             }
-            buff.assignToBlock(blk);
         }
-        if (!buff.isPinned()) {
-            numAvailable--;
+        return blocks;
+    }
+
+    /**
+     * 将缓冲池的驻留表保存到file，重启后可用{@link #startWarmUp}预热
+     */
+    public void saveResidency(File file) {
+        ResidencyMap.save(residentBlocks(), file);
+    }
+
+    /**
+     * 启动定期保存驻留表的线程，已启动时按新的参数重新启动
+     * @param intervalMillis 两次保存之间的间隔(毫秒)
+     */
+    public synchronized void startResidencySaver(File file, long intervalMillis) {
+        stopResidencySaver();
+        residency = new ResidencyMap(file, this::residentBlocks, intervalMillis);
+        residency.start();
+    }
+
+    /**
+     * 停止保存线程，停止前最后保存一次驻留表
+     */
+    public synchronized void stopResidencySaver() {
+        if (residency != null) {
+            residency.stop();
+            residency = null;
+        }
+    }
+
+    /**
+     * 在后台按file中保存的驻留表预热缓冲池，不等待预热完成。
+     * 驻留表不存在时不做任何事，已损坏时忽略它
+     */
+    public synchronized void startWarmUp(File file) {
+        stopWarmUp();
+        List<BlockId> blocks;
+        try {
+            blocks = ResidencyMap.load(file);
+        } catch (IOException e) {
+            System.out.println("cannot warm up buffer pool: " + e.getMessage());
+            return;
         }
-        buff.pin();
-        return buff;
+        WarmUp w = new WarmUp(this, fm, blocks);
+        w.start();
+        warmUp = w;
+    }
+
+    /**
+     * 等待预热完成，用于在开始服务之前预热
+     */
+    public void awaitWarmUp() {
+        WarmUp w = warmUp;
+        if (w != null) {
+            w.await();
+        }
+    }
+
+    public synchronized void stopWarmUp() {
+        if (warmUp != null) {
+            warmUp.stop();
+        }
+    }
+
+    /**
+     * 预热读入的块数
+     */
+    public int warmedUp() {
+        WarmUp w = warmUp;
+        return (w == null) ? 0 : w.loaded();
+    }
+
+    /**
+     * 扫描numblocks个块时使用的访问策略：超过缓冲区总数的1/4时使用环形缓冲区，否则返回null，使用整个缓冲池
+     */
+    public BufferAccessStrategy bulkReadStrategy(int numblocks) {
+        return (numblocks > numbuffs / 4) ? BufferAccessStrategy.bulkRead() : null;
     }
 
     /**
-     * 找到被固定到指定块的缓冲区
+     * 开始记录固定与取消固定操作, 参数为null时停止记录
      */
-    private Buffer findExistingBuffer(BlockId blk) {
-        for (Buffer buff : bufferPool) {
-            BlockId b = buff.block();
-            if (b != null && b.equals(blk)) {
-                return buff;
+    public void setTrace(PinTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * 将被指定事务修改的缓冲区写回磁盘。
+     * 只检查各分区脏页表中该事务修改的缓冲区，耗时与缓冲池大小无关。
+     * 先固定这些缓冲区使其不被淘汰，再一次性刷新这些修改对应的日志，
+     * 然后通过批量写按文件、块号顺序写出并每个文件刷盘一次，写回期间不持有任何分区锁。
+     * 该事务修改的块可能在提交前已被淘汰写回，因此还要对这些写回所在的文件刷盘。
+     * 事务提交、回滚时调用，此后才能写入提交/回滚记录
+     */
+    public void flushAll(int txnum) {
+        List<Buffer> dirty = new ArrayList<>();
+        for (BufferPartition part : partitions) {
+            part.pinModified(txnum, dirty);
+        }
+        try {
+            forceEarlyWrites();
+            if (dirty.isEmpty()) {
+                return;
+            }
+            long maxlsn = -1;
+            List<BlockId> blocks = new ArrayList<>(dirty.size());
+            List<Page> pages = new ArrayList<>(dirty.size());
+            for (Buffer buff : dirty) {
+                buff.awaitWrite();
+                maxlsn = Math.max(maxlsn, buff.lsn());
+                blocks.add(buff.block());
+                pages.add(buff.contents());
+            }
+            lm.flush(maxlsn);
+            fm.writeBatch(blocks, pages);
+            for (Buffer buff : dirty) {
+                buff.markFlushed();
+            }
+        } finally {
+            for (Buffer buff : dirty) {
+                partition(buff.block()).unpin(buff);
+            }
+            for (BufferPartition part : partitions) {
+                part.forgetIfClean(txnum);
             }
         }
-        return null;
     }
 
     /**
-     * 找到未被固定的缓冲区
+     * 对淘汰写回的文件刷盘。在固定了事务的所有脏缓冲区之后调用，
+     * 此后该事务的修改不会再被淘汰写回
      */
-    private Buffer chooseUnpinnedBuffer() {
-        for (Buffer buff : bufferPool) {
-            if (!buff.isPinned()) {
-                return buff;
+    private void forceEarlyWrites() {
+        for (String filename : earlyWritten) {
+            if (earlyWritten.remove(filename)) {
+                fm.force(filename);
             }
         }
-        return null;
+    }
+
+    /**
+     * 当前线程用于复制被淘汰的脏缓冲区的页
+     */
+    Page victimCopy() {
+        return victimCopy.get();
+    }
+
+    /**
+     * 分区淘汰了filename文件的一个脏缓冲区并已将其写回
+     */
+    void dirtyVictimWritten(String filename) {
+        earlyWritten.add(filename);
+        dirtyVictimWrites.increment();
+    }
+
+    /**
+     * 取消引用某个缓冲区。如果它的引用数为零，那么唤醒该分区的一个等待线程。
+     */
+    public void unpin(Buffer buff) {
+        PinTrace t = trace;
+        if (t != null) {
+            t.unpin(buff.block());
+        }
+        partition(buff.block()).unpin(buff);
+    }
+
+    /**
+     * 将缓冲区固定到指定的块上，可能会等待该块所属分区的缓冲区可用。
+     * 若在某段时间内没有可用缓冲区则抛出{@link BufferAbortException}异常
+     */
+    public Buffer pin(BlockId blk) {
+        return pin(blk, null);
+    }
+
+    /**
+     * 按访问策略固定块，strategy为null时与{@link #pin(BlockId)}相同
+     */
+    public Buffer pin(BlockId blk, BufferAccessStrategy strategy) {
+        ReadAhead ra = readAhead;
+        if (ra != null) {
+            ra.accessed(blk);
+        }
+        BufferPartition part = partition(blk);
+        Buffer buff = part.pin(blk, MAX_TIME, strategy);
+        // 块正由其他线程或预读线程读入时等待读入完成, 读入失败则重新固定
+        while (!buff.awaitLoad(blk)) {
+            part.unpin(buff);
+            buff = part.pin(blk, MAX_TIME, strategy);
+        }
+        PinTrace t = trace;
+        if (t != null) {
+            t.pin(blk);
+        }
+        return buff;
+    }
+
+    /**
+     * 块blk所属的分区, 哈希值经乘法散列, 使同一文件的相邻块分散到不同分区
+     */
+    BufferPartition partition(BlockId blk) {
+        if (partitionBits == 0) {
+            return partitions[0];
+        }
+        return partitions[(blk.hashCode() * 0x9E3779B9) >>> (32 - partitionBits)];
     }
 }
@@ -0,0 +1,660 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+import dawndb.file.FileMgr;
+import dawndb.file.Page;
+import dawndb.log.LogMgr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 20:40
+ * @Version: 1.0
+ * @Description:
+ * 缓冲池的一个分区。块按哈希值固定地属于某个分区，只能使用该分区的缓冲区；
+ * 每个分区有自己的锁、页表、替换策略和等待队列，不同分区的固定操作互不阻塞。
+ * 引用数降为0时只唤醒一个等待线程，被唤醒的线程固定成功后若仍有可用缓冲区则继续唤醒下一个。
+ * 分区大小可以在运行时改变(见{@link #resize})：扩大时新增的缓冲区立即可用；
+ * 缩小时下标不小于size的缓冲区被排空，未被固定的立即写回并移出，被固定的在引用数降为0时移出，
+ * 排空期间它们仍在页表中，固定它们的事务不受影响，但不会再被用来读入其他块。
+ *
+ * mgr: 所属的缓冲区管理器, 淘汰脏缓冲区时通知它
+ * fm/lm: 文件管理器、日志管理器, 用于后台写回
+ * lock: 分区锁, 保护页表、替换策略以及缓冲区的分配
+ * bufferFreed: 有缓冲区的引用数降为0时发出信号
+ * buffers: 分区的缓冲区, 下标即缓冲区的frame; 缓冲区在第一次被使用时才创建, 缩小后排空完毕前长度大于size
+ * size: 分区的缓冲区个数
+ * segments: 缓冲区的内存, 每次扩大增加一段
+ * retiring: 下标不小于size、仍被固定而尚未移出的缓冲区个数
+ * pageTable: 页表
+ * dirtyPages: 各事务修改的缓冲区
+ * policy: 替换策略
+ * free/numFree: 尚未分配块的缓冲区下标(空闲链表), 以栈的方式使用
+ * numAvailable: 未被固定的缓冲区个数
+ * waiters: 正在等待的线程数
+ * hits/misses: 命中、未命中次数
+ * prefetched: 预读的块数
+ */
+
+
+class BufferPartition {
+
+    private BufferMgr mgr;
+    private FileMgr fm;
+    private LogMgr lm;
+    private ReentrantLock lock = new ReentrantLock();
+    private Condition bufferFreed = lock.newCondition();
+    private Buffer[] buffers;
+    private volatile int size;
+    private List<Segment> segments = new ArrayList<>();
+    private int retiring;
+    private PageTable pageTable;
+    private DirtyPageTable dirtyPages = new DirtyPageTable();
+    private ReplacementPolicy policy;
+    private int[] free;
+    private int numFree;
+    private volatile int numAvailable;
+    private int waiters;
+    private long hits;
+    private long misses;
+    private long prefetched;
+
+    BufferPartition(BufferMgr mgr, FileMgr fm, LogMgr lm, FrameArena arena, int base, int numbuffs,
+                    ReplacementPolicy policy) {
+        this.mgr = mgr;
+        this.fm = fm;
+        this.lm = lm;
+        buffers = new Buffer[numbuffs];
+        size = numbuffs;
+        segments.add(new Segment(arena, base, 0, numbuffs));
+        free = new int[numbuffs];
+        for (int frame = numbuffs - 1; frame >= 0; frame--) {
+            free[numFree++] = frame;
+        }
+        pageTable = new PageTable(numbuffs);
+        numAvailable = numbuffs;
+        this.policy = policy;
+        policy.init(numbuffs);
+    }
+
+    int available() {
+        return numAvailable;
+    }
+
+    int size() {
+        return size;
+    }
+
+    ReplacementPolicy policy() {
+        return policy;
+    }
+
+    DirtyPageTable dirtyPages() {
+        return dirtyPages;
+    }
+
+    /**
+     * 分区使用的内存段数，缩小后排空完毕时减少
+     */
+    int segments() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long hits() {
+        lock.lock();
+        try {
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long misses() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long prefetched() {
+        lock.lock();
+        try {
+            return prefetched;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 将缓冲区固定到块blk上，没有可用缓冲区时最多等待maxTime毫秒。
+     * 分区锁内只修改页表和替换策略，不做I/O：块不在分区中时，将一个未修改的缓冲区分配给它并标记为读入中，
+     * 解锁后再读入内容，同时固定该块的线程在{@link Buffer#awaitLoad}中等待读入完成；
+     * 选中的缓冲区被修改过时，在锁内复制其内容，解锁后写回副本，再重新选择
+     * @param strategy 不为null时块不在分区中时优先复用它的环形缓冲区
+     */
+    Buffer pin(BlockId blk, long maxTime, BufferAccessStrategy strategy) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxTime);
+        while (true) {
+            Buffer buff;
+            boolean hit;
+            Buffer victim = null;
+            VictimWrite write = null;
+            lock.lock();
+            try {
+                while (true) {
+                    buff = pageTable.get(blk);
+                    hit = buff != null;
+                    if (buff == null && strategy != null) {
+                        buff = strategy.reuse(this, mgr.partitions());
+                    }
+                    if (buff == null) {
+                        buff = chooseUnpinnedBuffer();
+                    }
+                    if (buff != null) {
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw new BufferAbortException();
+                    }
+                    waiters++;
+                    try {
+                        bufferFreed.awaitNanos(remaining);
+                    } finally {
+                        waiters--;
+                    }
+                }
+                if (hit || buff.isClean()) {
+                    if (!hit) {
+                        assign(buff, blk);
+                        if (strategy != null) {
+                            strategy.added(this, buff, blk);
+                        }
+                    }
+                    pinBuffer(buff, blk, hit);
+                } else {
+                    // 正由后台写线程写回的缓冲区不再复制, 等待写回结束即可
+                    victim = buff;
+                    buff = null;
+                    write = victim.isWriting() ? null : startVictimWrite(victim);
+                }
+            } catch (InterruptedException e) {
+                throw new BufferAbortException();
+            } finally {
+                lock.unlock();
+            }
+            if (buff != null) {
+                if (!hit) {
+                    load(buff, blk);
+                }
+                return buff;
+            }
+            if (write != null) {
+                write.run();
+            } else {
+                victim.awaitWrite();
+            }
+        }
+    }
+
+    /**
+     * 取消固定。引用数大于1时无需加锁；降为0时加锁更新可用缓冲区数并唤醒一个等待线程
+     */
+    void unpin(Buffer buff) {
+        if (buff.unpinShared()) {
+            return;
+        }
+        lock.lock();
+        try {
+            buff.unpin();
+            if (!buff.isPinned()) {
+                if (buff.frame() >= size) {
+                    retire(buff);
+                    retiring--;
+                    trimIfDrained();
+                    return;
+                }
+                policy.unpinned(buff.frame());
+                numAvailable++;
+                if (waiters > 0) {
+                    bufferFreed.signal();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 固定被事务txnum修改的缓冲区并加入dirty，使其在写回期间不被淘汰。
+     * 只检查脏页表中该事务的缓冲区，耗时与修改的块数成正比而与分区大小无关。
+     * 写回后由调用者通过{@link #unpin}取消固定
+     */
+    void pinModified(int txnum, List<Buffer> dirty) {
+        lock.lock();
+        try {
+            for (Buffer buff : dirtyPages.buffers(txnum)) {
+                if (buff.modifyingTx() == txnum) {
+                    if (!buff.isPinned()) {
+                        numAvailable--;
+                    }
+                    buff.pin();
+                    notePinned(buff, buff.block(), true);
+                    dirty.add(buff);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 事务txnum修改的缓冲区均已写回后移除它在脏页表中的记录
+     */
+    void forgetIfClean(int txnum) {
+        dirtyPages.removeIfEmpty(txnum);
+    }
+
+    /**
+     * 后台写回：沿替换策略预计的淘汰顺序检查未被固定的缓冲区，复制其中的脏缓冲区，
+     * 直到预计最先被淘汰的缓冲区中未修改的达到cleanPercent%或复制了budget个。
+     * 复制在分区锁内完成，写回时不持有锁；写回期间淘汰这些缓冲区的线程会等待写回结束。
+     * 写回后若缓冲区未再被修改，则标记为未修改
+     * @param scratch 用于复制的页, 不够时增加
+     * @return 写回的块数
+     */
+    int writeAhead(int budget, int cleanPercent, List<Page> scratch) {
+        List<Buffer> dirty = new ArrayList<>();
+        List<BlockId> blocks = new ArrayList<>();
+        List<Page> pages = new ArrayList<>();
+        int[] modifications = new int[budget];
+        long maxlsn = -1;
+        lock.lock();
+        try {
+            int target = size * cleanPercent / 100;
+            int clean = numFree;
+            if (clean >= target) {
+                return 0;
+            }
+            for (int frame : policy.nextVictims(target - clean + budget)) {
+                if (clean + dirty.size() >= target || dirty.size() >= budget) {
+                    break;
+                }
+                Buffer buff = buffers[frame];
+                // 尚未分配块的缓冲区已计入numFree
+                if (buff == null) {
+                    continue;
+                }
+                if (buff.modifyingTx() < 0) {
+                    clean++;
+                    continue;
+                }
+                // 淘汰它的线程正在写回, 同一缓冲区的两个副本不能同时写回
+                if (buff.isWriting()) {
+                    continue;
+                }
+                if (scratch.size() <= dirty.size()) {
+                    scratch.add(fm.newPage());
+                }
+                Page copy = scratch.get(dirty.size());
+                copy.copyFrom(buff.contents());
+                modifications[dirty.size()] = buff.modifications();
+                buff.startWrite();
+                maxlsn = Math.max(maxlsn, buff.lsn());
+                dirty.add(buff);
+                blocks.add(buff.block());
+                pages.add(copy);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (dirty.isEmpty()) {
+            return 0;
+        }
+        boolean written = false;
+        try {
+            lm.flush(maxlsn);
+            fm.writeBatch(blocks, pages);
+            written = true;
+        } finally {
+            for (int i = 0; i < dirty.size(); i++) {
+                dirty.get(i).endWrite(written ? modifications[i] : -1);
+            }
+        }
+        return dirty.size();
+    }
+
+    /**
+     * 在分区锁内固定已分配给块blk的缓冲区，更新可用缓冲区数、替换策略和命中统计。
+     * 固定的块已在缓冲区中时没有用掉被释放的缓冲区，将信号传给下一个等待线程
+     */
+    private void pinBuffer(Buffer buff, BlockId blk, boolean hit) {
+        if (!buff.isPinned()) {
+            numAvailable--;
+        }
+        buff.pin();
+        notePinned(buff, blk, hit);
+        if (hit) {
+            hits++;
+        } else {
+            misses++;
+        }
+        if (waiters > 0 && numAvailable > 0) {
+            bufferFreed.signal();
+        }
+    }
+
+    /**
+     * 在分区锁外读入刚分配给块blk的缓冲区。读入失败时将缓冲区从页表中移除并取消固定
+     */
+    private void load(Buffer buff, BlockId blk) {
+        boolean ok = false;
+        try {
+            fm.read(blk, buff.contents());
+            ok = true;
+        } finally {
+            loaded(buff, ok, false);
+        }
+    }
+
+    /**
+     * 在分区锁内复制被淘汰的脏缓冲区并标记为写回中，由调用者解锁后调用{@link VictimWrite#run}写回副本。
+     * 写回期间缓冲区仍属于原来的块，固定该块的线程直接命中，不会从磁盘读到旧的内容
+     */
+    private VictimWrite startVictimWrite(Buffer buff) {
+        Page copy = mgr.victimCopy();
+        copy.copyFrom(buff.contents());
+        VictimWrite write = new VictimWrite(buff, buff.block(), copy, buff.modifications(), buff.lsn());
+        buff.startWrite();
+        return write;
+    }
+
+    /**
+     * 分区中的块，按最近使用的先后排列：先是被固定的块，再按替换策略预计的淘汰顺序倒序排列未被固定的块。
+     * 临时表的块在重启时已被删除，不包括在内
+     */
+    List<BlockId> residentBlocks() {
+        List<BlockId> blocks = new ArrayList<>();
+        lock.lock();
+        try {
+            for (int frame = 0; frame < size; frame++) {
+                Buffer buff = buffers[frame];
+                if (buff != null && buff.isPinned() && isPersistent(buff.block())) {
+                    blocks.add(buff.block());
+                }
+            }
+            int[] victims = policy.nextVictims(size);
+            for (int i = victims.length - 1; i >= 0; i--) {
+                Buffer buff = buffers[victims[i]];
+                if (buff != null && isPersistent(buff.block())) {
+                    blocks.add(buff.block());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return blocks;
+    }
+
+    private static boolean isPersistent(BlockId blk) {
+        return blk != null && !blk.filename().startsWith("temp");
+    }
+
+    /**
+     * 预读：为块blk预留一个缓冲区并固定，由调用者读入内容后调用{@link #loaded}。
+     * 块已在分区中、没有可用缓冲区、有线程在等待缓冲区或选中的缓冲区被修改过时返回null，
+     * 不与前台线程争用缓冲区，也不为预读写回脏缓冲区
+     * @param freeOnly 为true时只使用尚未分配块的缓冲区，不淘汰任何块
+     */
+    Buffer reserve(BlockId blk, boolean freeOnly) {
+        lock.lock();
+        try {
+            if (waiters > 0 || pageTable.get(blk) != null || (freeOnly && numFree == 0)) {
+                return null;
+            }
+            Buffer buff = chooseUnpinnedBuffer();
+            if (buff == null || !buff.isClean()) {
+                return null;
+            }
+            assign(buff, blk);
+            numAvailable--;
+            buff.pin();
+            policy.pinned(buff.frame(), blk, false);
+            prefetched++;
+            return buff;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 预留的缓冲区读入结束并取消固定。读入失败时将缓冲区从页表中移除，
+     * 等待该块的线程会重新固定它
+     */
+    void loaded(Buffer buff, boolean ok) {
+        loaded(buff, ok, true);
+    }
+
+    /**
+     * 缓冲区读入结束。读入失败时将缓冲区从页表中移除并取消固定
+     * @param unpin 读入成功时是否也取消固定
+     */
+    private void loaded(Buffer buff, boolean ok, boolean unpin) {
+        if (ok) {
+            buff.endLoad(true);
+        } else {
+            lock.lock();
+            try {
+                pageTable.remove(buff.block());
+                buff.endLoad(false);
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (unpin || !ok) {
+            unpin(buff);
+        }
+    }
+
+    /**
+     * 将未被固定且未修改的缓冲区buff改为分配给块blk并标记为读入中，内容由调用者在锁外读入
+     */
+    private void assign(Buffer buff, BlockId blk) {
+        if (buff.block() != null) {
+            pageTable.remove(buff.block());
+        }
+        buff.assignForLoad(blk);
+        pageTable.put(blk, buff);
+    }
+
+    /**
+     * 将分区大小改为newSize。扩大时新增的缓冲区使用arena中从base开始的页；
+     * 缩小时未被固定的缓冲区立即写回并移出，被固定的在引用数降为0时移出
+     */
+    void resize(int newSize, FrameArena arena, int base) {
+        lock.lock();
+        try {
+            int oldSize = size;
+            if (newSize > oldSize) {
+                if (buffers.length < newSize) {
+                    buffers = Arrays.copyOf(buffers, newSize);
+                }
+                if (free.length < newSize) {
+                    free = Arrays.copyOf(free, newSize);
+                }
+                segments.add(new Segment(arena, base, oldSize, newSize - oldSize));
+                policy.resize(newSize);
+                pageTable.ensureCapacity(newSize);
+                size = newSize;
+                // 尚在排空的缓冲区重新属于分区，它们都被固定着
+                for (int frame = newSize - 1; frame >= oldSize; frame--) {
+                    Buffer buff = buffers[frame];
+                    if (buff == null) {
+                        free[numFree++] = frame;
+                        numAvailable++;
+                    } else {
+                        retiring--;
+                        policy.pinned(frame, buff.block(), false);
+                    }
+                }
+                if (waiters > 0) {
+                    bufferFreed.signalAll();
+                }
+            } else if (newSize < oldSize) {
+                size = newSize;
+                policy.resize(newSize);
+                int kept = 0;
+                for (int i = 0; i < numFree; i++) {
+                    if (free[i] < newSize) {
+                        free[kept++] = free[i];
+                    }
+                }
+                numAvailable -= numFree - kept;
+                numFree = kept;
+                for (int frame = newSize; frame < oldSize; frame++) {
+                    Buffer buff = buffers[frame];
+                    if (buff == null) {
+                        continue;
+                    }
+                    if (buff.isPinned()) {
+                        retiring++;
+                    } else {
+                        retire(buff);
+                        numAvailable--;
+                    }
+                }
+                trimIfDrained();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 将未被固定且下标不小于size的缓冲区移出分区，修改过的先写回
+     */
+    private void retire(Buffer buff) {
+        BlockId blk = buff.block();
+        String dirtyFile = (buff.modifyingTx() >= 0) ? blk.filename() : null;
+        if (blk != null) {
+            pageTable.remove(blk);
+        }
+        buff.detach();
+        buffers[buff.frame()] = null;
+        if (dirtyFile != null) {
+            mgr.dirtyVictimWritten(dirtyFile);
+        }
+    }
+
+    /**
+     * 排空完毕后缩短数组并释放不再使用的内存段
+     */
+    private void trimIfDrained() {
+        if (retiring > 0 || buffers.length == size) {
+            return;
+        }
+        buffers = Arrays.copyOf(buffers, size);
+        free = Arrays.copyOf(free, size);
+        segments.removeIf(s -> s.first >= size);
+    }
+
+    /**
+     * 块blk被固定到缓冲区buff，排空中的缓冲区已不在替换策略中
+     */
+    private void notePinned(Buffer buff, BlockId blk, boolean hit) {
+        if (buff.frame() < size) {
+            policy.pinned(buff.frame(), blk, hit);
+        }
+    }
+
+    /**
+     * 第frame个缓冲区的页，取自包含该下标的最新一段内存
+     */
+    private Page page(int frame) {
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Segment s = segments.get(i);
+            if (frame >= s.first && frame < s.first + s.count) {
+                return s.arena.page(s.base + frame - s.first);
+            }
+        }
+        throw new IllegalStateException("no memory for frame " + frame);
+    }
+
+    /**
+     * 找到未被固定的缓冲区，优先使用尚未分配过块的缓冲区，否则由替换策略选择
+     */
+    private Buffer chooseUnpinnedBuffer() {
+        if (numFree > 0) {
+            int frame = free[--numFree];
+            buffers[frame] = new Buffer(fm, lm, frame, dirtyPages, page(frame));
+            return buffers[frame];
+        }
+        if (numAvailable == 0) {
+            return null;
+        }
+        int frame = policy.victim();
+        return (frame < 0) ? null : buffers[frame];
+    }
+
+    /**
+     * 被淘汰的脏缓冲区的副本，在分区锁外写回。
+     * 写回前刷新日志；写回后若缓冲区未再被修改则标记为未修改，此前先通知缓冲区管理器该文件有未刷盘的写入
+     */
+    private class VictimWrite {
+        Buffer buff;
+        BlockId blk;
+        Page copy;
+        int modifications;
+        long lsn;
+
+        VictimWrite(Buffer buff, BlockId blk, Page copy, int modifications, long lsn) {
+            this.buff = buff;
+            this.blk = blk;
+            this.copy = copy;
+            this.modifications = modifications;
+            this.lsn = lsn;
+        }
+
+        void run() {
+            boolean written = false;
+            try {
+                lm.flush(lsn);
+                fm.write(blk, copy);
+                mgr.dirtyVictimWritten(blk.filename());
+                written = true;
+            } finally {
+                buff.endWrite(written ? modifications : -1);
+            }
+        }
+    }
+
+    /**
+     * 一段缓冲区内存：分区中从first开始的count个缓冲区使用arena中从base开始的页
+     */
+    private static class Segment {
+        FrameArena arena;
+        int base;
+        int first;
+        int count;
+
+        Segment(FrameArena arena, int base, int first, int count) {
+            this.arena = arena;
+            this.base = base;
+            this.first = first;
+            this.count = count;
+        }
+    }
+}
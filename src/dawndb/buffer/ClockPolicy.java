@@ -0,0 +1,98 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+
+import java.util.Arrays;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 19:20
+ * @Version: 1.0
+ * @Description:
+ * CLOCK(第二次机会)替换策略。每次固定缓冲区时设置其访问位；
+ * 选择淘汰对象时指针循环扫描缓冲池，跳过被固定的缓冲区，访问位为1的清零后跳过，
+ * 淘汰第一个访问位为0的缓冲区。缓冲区管理器的默认策略。
+ *
+ * referenced: 访问位
+ * pinned: 各缓冲区是否被固定
+ * hand: 时钟指针
+ */
+
+
+public class ClockPolicy implements ReplacementPolicy {
+
+    private boolean[] referenced;
+    private boolean[] pinned;
+    private int hand;
+
+    @Override
+    public void init(int numbuffs) {
+        referenced = new boolean[numbuffs];
+        pinned = new boolean[numbuffs];
+    }
+
+    @Override
+    public void resize(int numbuffs) {
+        referenced = Arrays.copyOf(referenced, numbuffs);
+        pinned = Arrays.copyOf(pinned, numbuffs);
+        if (hand >= numbuffs) {
+            hand = 0;
+        }
+    }
+
+    @Override
+    public void pinned(int frame, BlockId blk, boolean hit) {
+        pinned[frame] = true;
+        referenced[frame] = true;
+    }
+
+    @Override
+    public void unpinned(int frame) {
+        pinned[frame] = false;
+    }
+
+    /**
+     * 最多扫描两圈：第一圈清除访问位后，第二圈必能找到未被固定的缓冲区(若存在)
+     */
+    @Override
+    public int victim() {
+        int n = pinned.length;
+        for (int i = 0; i < 2 * n; i++) {
+            int frame = hand;
+            hand = (hand + 1 == n) ? 0 : hand + 1;
+            if (pinned[frame]) {
+                continue;
+            }
+            if (referenced[frame]) {
+                referenced[frame] = false;
+                continue;
+            }
+            return frame;
+        }
+        return -1;
+    }
+
+    /**
+     * 从指针处开始，先是访问位为0的缓冲区，再是访问位为1的缓冲区
+     */
+    @Override
+    public int[] nextVictims(int max) {
+        int n = pinned.length;
+        int[] frames = new int[Math.min(max, n)];
+        int count = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < n && count < frames.length; i++) {
+                int frame = (hand + i) % n;
+                if (!pinned[frame] && referenced[frame] == (pass == 1)) {
+                    frames[count++] = frame;
+                }
+            }
+        }
+        return Arrays.copyOf(frames, count);
+    }
+
+    @Override
+    public String name() {
+        return "clock";
+    }
+}
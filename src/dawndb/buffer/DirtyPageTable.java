@@ -0,0 +1,56 @@
+package dawndb.buffer;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 23:20
+ * @Version: 1.0
+ * @Description:
+ * 一个分区中各事务修改的缓冲区。缓冲区被事务修改时加入该事务的集合，写回或改由其他事务修改时移出，
+ * 因此提交时只需检查该事务修改过的缓冲区，而不必遍历整个缓冲池。
+ * 事务修改缓冲区时只固定了缓冲区而不持有分区锁，因此使用并发集合。
+ *
+ * dirty: 事务序列号 -> 该事务修改的缓冲区
+ */
+
+
+class DirtyPageTable {
+
+    private Map<Integer, Set<Buffer>> dirty = new ConcurrentHashMap<>();
+
+    void add(int txnum, Buffer buff) {
+        dirty.computeIfAbsent(txnum, t -> ConcurrentHashMap.newKeySet()).add(buff);
+    }
+
+    void remove(int txnum, Buffer buff) {
+        Set<Buffer> buffs = dirty.get(txnum);
+        if (buffs != null) {
+            buffs.remove(buff);
+        }
+    }
+
+    /**
+     * 事务txnum修改的缓冲区, 可能包含已写回的缓冲区, 调用者需检查{@link Buffer#modifyingTx()}
+     */
+    Set<Buffer> buffers(int txnum) {
+        Set<Buffer> buffs = dirty.get(txnum);
+        return (buffs != null) ? buffs : Set.of();
+    }
+
+    /**
+     * 事务txnum没有未写回的缓冲区时移除它的集合
+     */
+    void removeIfEmpty(int txnum) {
+        dirty.computeIfPresent(txnum, (t, buffs) -> buffs.isEmpty() ? null : buffs);
+    }
+
+    /**
+     * 有集合的事务数，提交或回滚的事务写回后不再计入
+     */
+    int transactions() {
+        return dirty.size();
+    }
+}
@@ -0,0 +1,198 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 7:50
+ * @Version: 1.0
+ * @Description:
+ * 被淘汰的块的记录，供替换策略在块重新读入时使用(LRU-K的访问历史、2Q的A1out)。
+ * 按放入的先后最多记录capacity个块，超过时移除最早放入的；每个块附带width个long。
+ * 全部用数组实现：表项存放在槽位中，槽位按放入的先后串成双向链表，空闲槽位以栈的方式使用；
+ * 块到槽位的索引是线性探测的开放寻址哈希表，删除时将后续表项前移，不使用墓碑。
+ * 放入、查找、删除都不创建对象。
+ *
+ * width: 每个块附带的long个数
+ * capacity: 最多记录的块数
+ * blocks: 各槽位的块, 空闲槽位为null
+ * values: 各槽位附带的值, 第slot个槽位占[slot*width, slot*width+width)
+ * prev/next: 按放入先后的前后槽位, -1表示无
+ * head/tail: 最早、最新放入的槽位
+ * free/numFree: 空闲槽位
+ * index: 哈希表, 存放槽位+1, 0表示空
+ * mask: 哈希表长度-1
+ */
+
+
+class EvictedBlocks {
+
+    private int width;
+    private int capacity;
+    private BlockId[] blocks;
+    private long[] values;
+    private int[] prev;
+    private int[] next;
+    private int head = -1;
+    private int tail = -1;
+    private int size;
+    private int[] free;
+    private int numFree;
+    private int[] index;
+    private int mask;
+
+    EvictedBlocks(int capacity, int width) {
+        this.width = width;
+        allocate(Math.max(1, capacity));
+    }
+
+    private void allocate(int capacity) {
+        this.capacity = capacity;
+        blocks = new BlockId[capacity];
+        values = new long[capacity * width];
+        prev = new int[capacity];
+        next = new int[capacity];
+        free = new int[capacity];
+        numFree = 0;
+        for (int slot = capacity - 1; slot >= 0; slot--) {
+            free[numFree++] = slot;
+        }
+        head = -1;
+        tail = -1;
+        size = 0;
+        int slots = Integer.highestOneBit(capacity) << 2;
+        index = new int[slots];
+        mask = slots - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 改变最多记录的块数，超过时只保留最近放入的capacity个
+     */
+    void setCapacity(int capacity) {
+        capacity = Math.max(1, capacity);
+        if (capacity == this.capacity) {
+            return;
+        }
+        BlockId[] oldBlocks = blocks;
+        long[] oldValues = values;
+        int[] oldNext = next;
+        int slot = head;
+        for (int skip = size - capacity; skip > 0; skip--) {
+            slot = oldNext[slot];
+        }
+        allocate(capacity);
+        for (; slot >= 0; slot = oldNext[slot]) {
+            put(oldBlocks[slot], oldValues, slot * width);
+        }
+    }
+
+    /**
+     * 放入块blk，附带的值从src[offset]开始复制。blk已存在时只更新附带的值，位置不变
+     */
+    void put(BlockId blk, long[] src, int offset) {
+        int slot = find(blk);
+        if (slot < 0) {
+            if (size == capacity) {
+                removeSlot(head);
+            }
+            slot = free[--numFree];
+            blocks[slot] = blk;
+            prev[slot] = tail;
+            next[slot] = -1;
+            if (tail >= 0) {
+                next[tail] = slot;
+            } else {
+                head = slot;
+            }
+            tail = slot;
+            size++;
+            int i = home(blk);
+            while (index[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            index[i] = slot + 1;
+        }
+        if (width > 0) {
+            System.arraycopy(src, offset, values, slot * width, width);
+        }
+    }
+
+    /**
+     * 移除块blk，附带的值复制到dst[offset]开始处
+     * @return blk是否存在
+     */
+    boolean remove(BlockId blk, long[] dst, int offset) {
+        int slot = find(blk);
+        if (slot < 0) {
+            return false;
+        }
+        if (width > 0) {
+            System.arraycopy(values, slot * width, dst, offset, width);
+        }
+        removeSlot(slot);
+        return true;
+    }
+
+    private int find(BlockId blk) {
+        for (int i = home(blk); index[i] != 0; i = (i + 1) & mask) {
+            int slot = index[i] - 1;
+            if (blocks[slot].equals(blk)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 从链表和哈希表中移除槽位slot并放回空闲槽位
+     */
+    private void removeSlot(int slot) {
+        int i = home(blocks[slot]);
+        while (index[i] != slot + 1) {
+            i = (i + 1) & mask;
+        }
+        int j = i;
+        while (true) {
+            index[i] = 0;
+            while (true) {
+                j = (j + 1) & mask;
+                if (index[j] == 0) {
+                    break;
+                }
+                int h = home(blocks[index[j] - 1]);
+                // h在(i, j]之间时表项j无需移动
+                boolean stay = (i <= j) ? (i < h && h <= j) : (i < h || h <= j);
+                if (!stay) {
+                    break;
+                }
+            }
+            if (index[j] == 0) {
+                break;
+            }
+            index[i] = index[j];
+            i = j;
+        }
+        if (prev[slot] >= 0) {
+            next[prev[slot]] = next[slot];
+        } else {
+            head = next[slot];
+        }
+        if (next[slot] >= 0) {
+            prev[next[slot]] = prev[slot];
+        } else {
+            tail = prev[slot];
+        }
+        blocks[slot] = null;
+        free[numFree++] = slot;
+        size--;
+    }
+
+    private int home(BlockId blk) {
+        int h = blk.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,142 @@
+package dawndb.buffer;
+
+import dawndb.file.FileMgr;
+import dawndb.file.Page;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 23:50
+ * @Version: 1.0
+ * @Description:
+ * 缓冲池的堆外内存。整个缓冲池使用少数几块大内存(每块不超过CHUNK_SIZE)，每个缓冲区的页是其中一段的视图，
+ * 而不是各自分配一个直接缓冲区，避免大量小直接缓冲区各自的Cleaner和碎片，也使缓冲池的创建不随缓冲区个数变慢。
+ * 两种分配方式：
+ * allocate: 分配直接缓冲区, 创建时即清零全部内存
+ * map: 在目录dir中创建稀疏文件并以私有方式映射后删除该文件，内存在首次访问时才分配且不会写回文件；
+ *      dir为hugetlbfs的挂载点时使用大页
+ * 每块内存的起始地址按文件管理器的对齐单位对齐(映射的内存按操作系统页对齐)，块大小是对齐单位的倍数时每个页都满足直接I/O的要求。
+ *
+ * chunks: 各块内存
+ * framesPerChunk: 每块内存容纳的页数
+ * frames: 页数
+ * blocksize: 页大小
+ * alignment: 直接缓冲区的对齐单位
+ * dir: 映射的临时文件所在目录, 分配直接缓冲区时为null
+ * CHUNK_SIZE: 每块内存的最大字节数
+ * HUGE_PAGE_SIZE: 映射长度向上取为大页大小的倍数
+ */
+
+
+public class FrameArena {
+
+    private static final long CHUNK_SIZE = 1L << 30;
+    private static final long HUGE_PAGE_SIZE = 2L << 20;
+
+    private ByteBuffer[] chunks;
+    private int framesPerChunk;
+    private int frames;
+    private int blocksize;
+    private int alignment;
+    private File dir;
+
+    private FrameArena(int frames, int blocksize, int alignment, File dir) {
+        this.frames = frames;
+        this.blocksize = blocksize;
+        this.alignment = alignment;
+        this.dir = dir;
+        framesPerChunk = (int) Math.max(1, CHUNK_SIZE / blocksize);
+        chunks = new ByteBuffer[(frames + framesPerChunk - 1) / framesPerChunk];
+    }
+
+    /**
+     * 分配容纳frames个页的直接缓冲区
+     */
+    public static FrameArena allocate(int frames, FileMgr fm) {
+        return allocate(frames, fm.blockSize(), fm.alignment());
+    }
+
+    private static FrameArena allocate(int frames, int blocksize, int alignment) {
+        FrameArena arena = new FrameArena(frames, blocksize, alignment, null);
+        for (int i = 0; i < arena.chunks.length; i++) {
+            arena.chunks[i] = ByteBuffer.allocateDirect(arena.chunkBytes(i) + alignment - 1).alignedSlice(alignment);
+        }
+        return arena;
+    }
+
+    /**
+     * 通过映射目录dir中的临时文件得到容纳frames个页的内存，内存在首次访问时才分配
+     * @param dir 临时文件所在目录, 为hugetlbfs的挂载点时使用大页
+     */
+    public static FrameArena map(int frames, FileMgr fm, File dir) {
+        return map(frames, fm.blockSize(), fm.alignment(), dir);
+    }
+
+    private static FrameArena map(int frames, int blocksize, int alignment, File dir) {
+        FrameArena arena = new FrameArena(frames, blocksize, alignment, dir);
+        File file = new File(dir, "dawndb-arena-" + ProcessHandle.current().pid() + "-" + System.nanoTime());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel fc = raf.getChannel();
+            long pos = 0;
+            long[] lengths = new long[arena.chunks.length];
+            for (int i = 0; i < lengths.length; i++) {
+                lengths[i] = (arena.chunkBytes(i) + HUGE_PAGE_SIZE - 1) / HUGE_PAGE_SIZE * HUGE_PAGE_SIZE;
+                pos += lengths[i];
+            }
+            raf.setLength(pos);
+            pos = 0;
+            for (int i = 0; i < lengths.length; i++) {
+                arena.chunks[i] = fc.map(FileChannel.MapMode.PRIVATE, pos, lengths[i]);
+                pos += lengths[i];
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("cannot map buffer arena in " + dir);
+        } finally {
+            file.delete();
+        }
+        return arena;
+    }
+
+    /**
+     * 以相同方式(分配或映射在同一目录)得到的另一块容纳frames个页的内存, 用于扩大缓冲池
+     */
+    FrameArena sibling(int frames) {
+        return (dir == null) ? allocate(frames, blocksize, alignment) : map(frames, blocksize, alignment, dir);
+    }
+
+    /**
+     * 只记录分配方式而不含内存的FrameArena, 持有它不会使本块内存无法释放
+     */
+    FrameArena template() {
+        return new FrameArena(0, blocksize, alignment, dir);
+    }
+
+    public int frames() {
+        return frames;
+    }
+
+    /**
+     * 占用的内存字节数(不含映射长度的取整)
+     */
+    public long bytes() {
+        return (long) frames * blocksize;
+    }
+
+    /**
+     * 第frame个页, 每次调用返回一个新的视图
+     */
+    public Page page(int frame) {
+        ByteBuffer chunk = chunks[frame / framesPerChunk];
+        return new Page(chunk.slice((frame % framesPerChunk) * blocksize, blocksize));
+    }
+
+    private int chunkBytes(int chunk) {
+        int n = (chunk < chunks.length - 1) ? framesPerChunk : frames - chunk * framesPerChunk;
+        return n * blocksize;
+    }
+}
@@ -0,0 +1,253 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+
+import java.util.Arrays;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 19:30
+ * @Version: 1.0
+ * @Description:
+ * LRU-K替换策略。淘汰倒数第K次访问最早的缓冲区；访问不足K次的缓冲区视为无穷远，最先被淘汰，
+ * 它们之间按最近一次访问的先后淘汰。因此只被扫描一次的块不会挤掉被反复访问的目录表块。
+ * 被淘汰块的访问历史保留一段时间(不超过缓冲区个数)，块再次被读入时恢复。
+ * 访问时间为逻辑时钟，每次固定加1。
+ * 状态都保存在基本类型数组中：访问历史是一个long数组，未被固定的缓冲区是按淘汰顺序排列的二叉堆，
+ * 固定、取消固定时不创建对象。
+ *
+ * k: K
+ * clock: 逻辑时钟
+ * history: 各缓冲区最近K次访问的时间, 第frame个缓冲区占[frame*k, frame*k+k), 其中第一个为最近一次, 0表示无
+ * blocks: 各缓冲区当前的块
+ * pinned: 各缓冲区是否被固定
+ * heap/heapSize: 未被固定的缓冲区组成的二叉堆, 堆顶最先被淘汰; 缓冲区被固定时移出, 因此其中各项的访问历史不变
+ * position: 各缓冲区在堆中的下标, 不在堆中时为-1
+ * retained: 被淘汰块的访问历史, 最多记录缓冲区个数个
+ */
+
+
+public class LruKPolicy implements ReplacementPolicy {
+
+    private int k;
+    private long clock;
+    private long[] history;
+    private BlockId[] blocks;
+    private boolean[] pinned;
+    private int[] heap;
+    private int heapSize;
+    private int[] position;
+    private EvictedBlocks retained;
+
+    public LruKPolicy(int k) {
+        this.k = Math.max(1, k);
+    }
+
+    @Override
+    public void init(int numbuffs) {
+        history = new long[numbuffs * k];
+        blocks = new BlockId[numbuffs];
+        pinned = new boolean[numbuffs];
+        heap = new int[numbuffs];
+        heapSize = 0;
+        position = new int[numbuffs];
+        Arrays.fill(position, -1);
+        retained = new EvictedBlocks(numbuffs, k);
+    }
+
+    /**
+     * 被移除的缓冲区的访问历史移入retained，新增缓冲区的访问历史为空
+     */
+    @Override
+    public void resize(int numbuffs) {
+        for (int frame = numbuffs; frame < blocks.length; frame++) {
+            if (position[frame] >= 0) {
+                remove(frame);
+            }
+            if (blocks[frame] != null) {
+                retained.put(blocks[frame], history, frame * k);
+            }
+        }
+        int old = blocks.length;
+        history = Arrays.copyOf(history, numbuffs * k);
+        blocks = Arrays.copyOf(blocks, numbuffs);
+        pinned = Arrays.copyOf(pinned, numbuffs);
+        heap = Arrays.copyOf(heap, numbuffs);
+        position = Arrays.copyOf(position, numbuffs);
+        if (numbuffs > old) {
+            Arrays.fill(position, old, numbuffs, -1);
+        }
+        retained.setCapacity(numbuffs);
+    }
+
+    @Override
+    public void pinned(int frame, BlockId blk, boolean hit) {
+        if (!pinned[frame]) {
+            if (position[frame] >= 0) {
+                remove(frame);
+            }
+            pinned[frame] = true;
+        }
+        int base = frame * k;
+        if (!hit) {
+            if (blocks[frame] != null) {
+                retained.put(blocks[frame], history, base);
+            }
+            if (!retained.remove(blk, history, base)) {
+                Arrays.fill(history, base, base + k, 0);
+            }
+            blocks[frame] = blk;
+        }
+        System.arraycopy(history, base, history, base + 1, k - 1);
+        history[base] = ++clock;
+    }
+
+    @Override
+    public void unpinned(int frame) {
+        pinned[frame] = false;
+        if (position[frame] < 0) {
+            heap[heapSize] = frame;
+            position[frame] = heapSize++;
+            siftUp(position[frame]);
+        }
+    }
+
+    @Override
+    public int victim() {
+        return (heapSize == 0) ? -1 : heap[0];
+    }
+
+    /**
+     * 不改变堆：从堆顶开始，每次从候选中取出最先被淘汰的，再把它在堆中的两个子节点加入候选。
+     * 候选本身也是按淘汰顺序排列的二叉堆，存放堆中的下标
+     */
+    @Override
+    public int[] nextVictims(int max) {
+        int[] frames = new int[Math.min(max, heapSize)];
+        if (frames.length == 0) {
+            return frames;
+        }
+        int[] candidates = new int[frames.length + 1];
+        int count = 0;
+        candidates[count++] = 0;
+        for (int n = 0; n < frames.length; n++) {
+            int i = candidates[0];
+            frames[n] = heap[i];
+            candidates[0] = candidates[--count];
+            siftDownCandidates(candidates, count, 0);
+            for (int child = 2 * i + 1; child <= 2 * i + 2 && child < heapSize; child++) {
+                if (count < candidates.length) {
+                    candidates[count] = child;
+                    siftUpCandidates(candidates, count++);
+                }
+            }
+        }
+        return frames;
+    }
+
+    @Override
+    public String name() {
+        return "lru-" + k;
+    }
+
+    /**
+     * 缓冲区a是否先于b被淘汰：倒数第K次访问较早的先被淘汰，相同时(如都不足K次)最近一次访问较早的先被淘汰
+     */
+    private boolean before(int a, int b) {
+        long ka = history[a * k + k - 1];
+        long kb = history[b * k + k - 1];
+        if (ka != kb) {
+            return ka < kb;
+        }
+        long la = history[a * k];
+        long lb = history[b * k];
+        if (la != lb) {
+            return la < lb;
+        }
+        return a < b;
+    }
+
+    private void remove(int frame) {
+        int i = position[frame];
+        position[frame] = -1;
+        int last = heap[--heapSize];
+        if (i == heapSize) {
+            return;
+        }
+        heap[i] = last;
+        position[last] = i;
+        siftDown(i);
+        siftUp(position[last]);
+    }
+
+    private void siftUp(int i) {
+        int frame = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!before(frame, heap[parent])) {
+                break;
+            }
+            heap[i] = heap[parent];
+            position[heap[i]] = i;
+            i = parent;
+        }
+        heap[i] = frame;
+        position[frame] = i;
+    }
+
+    private void siftDown(int i) {
+        int frame = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], frame)) {
+                break;
+            }
+            heap[i] = heap[child];
+            position[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = frame;
+        position[frame] = i;
+    }
+
+    private void siftUpCandidates(int[] candidates, int i) {
+        int c = candidates[i];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!before(heap[c], heap[candidates[parent]])) {
+                break;
+            }
+            candidates[i] = candidates[parent];
+            i = parent;
+        }
+        candidates[i] = c;
+    }
+
+    private void siftDownCandidates(int[] candidates, int count, int i) {
+        if (count == 0) {
+            return;
+        }
+        int c = candidates[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= count) {
+                break;
+            }
+            if (child + 1 < count && before(heap[candidates[child + 1]], heap[candidates[child]])) {
+                child++;
+            }
+            if (!before(heap[candidates[child]], heap[c])) {
+                break;
+            }
+            candidates[i] = candidates[child];
+            i = child;
+        }
+        candidates[i] = c;
+    }
+}
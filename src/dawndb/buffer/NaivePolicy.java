@@ -0,0 +1,72 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+
+import java.util.Arrays;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 19:15
+ * @Version: 1.0
+ * @Description:
+ * 最初的替换方式：按缓冲池中的顺序选择第一个未被固定的缓冲区，不考虑访问历史。
+ * 保留用于对比。
+ *
+ * pinned: 各缓冲区是否被固定
+ */
+
+
+public class NaivePolicy implements ReplacementPolicy {
+
+    private boolean[] pinned;
+
+    @Override
+    public void init(int numbuffs) {
+        pinned = new boolean[numbuffs];
+    }
+
+    /**
+     * 新增的缓冲区在空闲链表中，空闲链表为空时才会调用victim，因此无需区分未分配的缓冲区
+     */
+    @Override
+    public void resize(int numbuffs) {
+        pinned = Arrays.copyOf(pinned, numbuffs);
+    }
+
+    @Override
+    public void pinned(int frame, BlockId blk, boolean hit) {
+        pinned[frame] = true;
+    }
+
+    @Override
+    public void unpinned(int frame) {
+        pinned[frame] = false;
+    }
+
+    @Override
+    public int victim() {
+        for (int frame = 0; frame < pinned.length; frame++) {
+            if (!pinned[frame]) {
+                return frame;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int[] nextVictims(int max) {
+        int[] frames = new int[max];
+        int n = 0;
+        for (int frame = 0; frame < pinned.length && n < max; frame++) {
+            if (!pinned[frame]) {
+                frames[n++] = frame;
+            }
+        }
+        return Arrays.copyOf(frames, n);
+    }
+
+    @Override
+    public String name() {
+        return "naive";
+    }
+}
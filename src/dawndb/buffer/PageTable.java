@@ -0,0 +1,199 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 18:20
+ * @Version: 1.0
+ * @Description:
+ * 页表，记录每个块被分配到的缓冲区。
+ * 采用线性探测的开放寻址哈希表，键为(文件编号, 块号)组成的long，
+ * 查找时不创建任何对象；删除时将后续表项前移，不使用墓碑。
+ * 表的大小不小于缓冲区个数的两倍，只在缓冲池扩大时扩容。
+ * 页表本身不加锁，由缓冲区管理器在其锁内访问。
+ *
+ * files: 页表中有块的文件, 文件名到文件编号及其块数的映射。编号在文件的第一个块放入页表时分配，
+ * 最后一个块删除时回收，因此大小受缓冲区个数限制，不随用完即删的临时文件增长
+ * freeIds: 回收的文件编号, 优先重新分配
+ * keys: 各槽位的键, EMPTY表示空槽
+ * values: 各槽位对应的缓冲区
+ * mask: 槽位数-1
+ */
+
+
+class PageTable {
+
+    private static final long EMPTY = -1L;
+
+    private Map<String, FileEntry> files = new HashMap<>();
+    private Deque<Integer> freeIds = new ArrayDeque<>();
+    private int nextFileId;
+    private long[] keys;
+    private Buffer[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * @param capacity 最多容纳的块数, 即缓冲区个数
+     */
+    PageTable(int capacity) {
+        allocate(capacity);
+    }
+
+    /**
+     * 缓冲池扩大到capacity个缓冲区时调用，表的大小不足缓冲区个数的两倍时扩容并重新插入各表项
+     */
+    void ensureCapacity(int capacity) {
+        if (keys.length >= 2L * capacity) {
+            return;
+        }
+        long[] oldKeys = keys;
+        Buffer[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != EMPTY) {
+                int i = slot(oldKeys[j]);
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(capacity, 1)) << 2;
+        keys = new long[slots];
+        Arrays.fill(keys, EMPTY);
+        values = new Buffer[slots];
+        mask = slots - 1;
+    }
+
+    /**
+     * 返回分配给块blk的缓冲区，块不在缓冲池中时返回null
+     */
+    Buffer get(BlockId blk) {
+        return get(blk.filename(), blk.blknum());
+    }
+
+    /**
+     * 返回分配给filename文件块blknum的缓冲区，块不在缓冲池中时返回null
+     */
+    Buffer get(String filename, int blknum) {
+        FileEntry file = files.get(filename);
+        if (file == null) {
+            return null;
+        }
+        long key = key(file.id, blknum);
+        for (int i = slot(key); keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 记录块blk被分配到缓冲区buff
+     */
+    void put(BlockId blk, Buffer buff) {
+        FileEntry file = files.get(blk.filename());
+        if (file == null) {
+            file = new FileEntry(freeIds.isEmpty() ? nextFileId++ : freeIds.pop());
+            files.put(blk.filename(), file);
+        }
+        long key = key(file.id, blk.blknum());
+        int i = slot(key);
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == EMPTY) {
+            size++;
+            file.blocks++;
+        }
+        keys[i] = key;
+        values[i] = buff;
+    }
+
+    /**
+     * 删除块blk的表项，之后同一探测序列中的表项前移填补空位
+     */
+    void remove(BlockId blk) {
+        FileEntry file = files.get(blk.filename());
+        if (file == null) {
+            return;
+        }
+        long key = key(file.id, blk.blknum());
+        int i = slot(key);
+        while (keys[i] != key) {
+            if (keys[i] == EMPTY) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        size--;
+        if (--file.blocks == 0) {
+            files.remove(blk.filename());
+            freeIds.push(file.id);
+        }
+        int j = i;
+        while (true) {
+            keys[i] = EMPTY;
+            values[i] = null;
+            while (true) {
+                j = (j + 1) & mask;
+                if (keys[j] == EMPTY) {
+                    return;
+                }
+                int home = slot(keys[j]);
+                // home在(i, j]之间时表项j无需移动
+                boolean stay = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+                if (!stay) {
+                    break;
+                }
+            }
+            keys[i] = keys[j];
+            values[i] = values[j];
+            i = j;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 页表中有块的文件数
+     */
+    int files() {
+        return files.size();
+    }
+
+    private static long key(int fileId, int blknum) {
+        return (long) fileId << 32 | (blknum & 0xFFFFFFFFL);
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    /**
+     * 文件编号及该文件在页表中的块数
+     */
+    private static class FileEntry {
+        int id;
+        int blocks;
+
+        FileEntry(int id) {
+            this.id = id;
+        }
+    }
+}
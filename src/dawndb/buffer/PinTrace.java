@@ -0,0 +1,139 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+import dawndb.file.Durability;
+import dawndb.file.FileMgr;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 20:00
+ * @Version: 1.0
+ * @Description:
+ * 固定/取消固定操作的记录与回放，用于离线比较替换策略。
+ * 通过{@link BufferMgr#setTrace}开始记录，每个操作一行："P 文件名 块号"或"U 文件名 块号"。
+ * 回放时按原顺序对使用指定替换策略、只有一个分区的缓冲区管理器执行这些操作，
+ * 块从临时目录中读取(均为空块)，因此只反映命中率而与数据内容无关。
+ *
+ * out: 记录的输出
+ */
+
+
+public class PinTrace implements AutoCloseable {
+
+    private PrintWriter out;
+
+    /**
+     * 创建记录到file的跟踪
+     */
+    public PinTrace(File file) throws IOException {
+        out = new PrintWriter(new FileWriter(file));
+    }
+
+    void pin(BlockId blk) {
+        out.println("P " + blk.filename() + " " + blk.blknum());
+    }
+
+    void unpin(BlockId blk) {
+        out.println("U " + blk.filename() + " " + blk.blknum());
+    }
+
+    @Override
+    public void close() {
+        out.close();
+    }
+
+    /**
+     * 一次固定(pin为true)或取消固定操作
+     */
+    public static class Event {
+
+        private boolean pin;
+        private BlockId blk;
+
+        public Event(boolean pin, BlockId blk) {
+            this.pin = pin;
+            this.blk = blk;
+        }
+
+        public boolean isPin() {
+            return pin;
+        }
+
+        public BlockId block() {
+            return blk;
+        }
+    }
+
+    /**
+     * 读取记录的操作
+     */
+    public static List<Event> read(File file) throws IOException {
+        List<Event> events = new ArrayList<>();
+        Map<String, String> names = new HashMap<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] f = line.split(" ");
+                if (f.length != 3) {
+                    continue;
+                }
+                String filename = names.computeIfAbsent(f[1], s -> s);
+                events.add(new Event(f[0].equals("P"), new BlockId(filename, Integer.parseInt(f[2]))));
+            }
+        }
+        return events;
+    }
+
+    /**
+     * 回放中同时被固定的块数的最大值，回放使用的缓冲区个数不能小于它
+     */
+    public static int maxPinned(List<Event> events) {
+        int pinned = 0;
+        int max = 0;
+        for (Event e : events) {
+            pinned += e.isPin() ? 1 : -1;
+            max = Math.max(max, pinned);
+        }
+        return max;
+    }
+
+    /**
+     * 用numbuffs个缓冲区和替换策略policy回放events
+     * @param dir 回放使用的临时目录
+     * @return 回放使用的缓冲区管理器，可从中读取命中次数
+     */
+    public static BufferMgr replay(List<Event> events, int numbuffs, ReplacementPolicy policy, File dir) {
+        if (maxPinned(events) > numbuffs) {
+            throw new IllegalArgumentException("trace pins up to " + maxPinned(events)
+                    + " blocks at once, more than " + numbuffs + " buffers");
+        }
+        FileMgr fm = new FileMgr(dir, 400);
+        fm.setDurability(Durability.NONE);
+        BufferMgr bm = new BufferMgr(fm, null, numbuffs, 1, () -> policy);
+        Map<BlockId, Deque<Buffer>> pinned = new HashMap<>();
+        for (Event e : events) {
+            if (e.isPin()) {
+                pinned.computeIfAbsent(e.block(), b -> new ArrayDeque<>()).push(bm.pin(e.block()));
+            } else {
+                Deque<Buffer> buffs = pinned.get(e.block());
+                if (buffs != null && !buffs.isEmpty()) {
+                    bm.unpin(buffs.pop());
+                }
+            }
+        }
+        return bm;
+    }
+}
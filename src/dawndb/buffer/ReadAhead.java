@@ -0,0 +1,226 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+import dawndb.file.FileMgr;
+import dawndb.file.Page;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 22:10
+ * @Version: 1.0
+ * @Description:
+ * 顺序预读。按文件记录最近固定的块号，连续固定了THRESHOLD个相邻的块后认为是顺序扫描，
+ * 由预读线程把之后的window个块读入未被固定的缓冲区；扫描消耗掉一半预读的块后再预读下一段。
+ * 预读的块中连续且都需要读入的部分使用一次分散读(见FileMgr.readBatch)。
+ * 读入期间缓冲区被固定且已加入页表，固定该块的线程会等待读入完成而不是再读一次。
+ *
+ * mgr: 所属的缓冲区管理器, 用于找到块所属的分区
+ * fm: 文件管理器
+ * window: 每次预读的块数
+ * streams: 每个文件的访问模式, 超过MAX_STREAMS个时先丢弃不在顺序扫描中的文件, 仍然过多时全部丢弃，
+ * 因此不随用完即删的临时文件增长
+ * requests: 待预读的请求, 已满时丢弃新的请求
+ * running: 为false时预读线程在当前请求结束后退出。停止时不中断预读线程：
+ * 中断正在读的线程会关闭共享的文件通道(ClosedByInterruptException)，之后所有线程对该文件的I/O都会失败
+ * THRESHOLD: 判定为顺序访问需要的连续块数
+ * MAX_STREAMS: 记录访问模式的最多文件数
+ * STOP: 停止时放入队列的空请求, 唤醒在队列上等待的预读线程
+ */
+
+
+class ReadAhead implements Runnable {
+
+    private BufferMgr mgr;
+    private FileMgr fm;
+    private int window;
+    private Map<String, Stream> streams = new ConcurrentHashMap<>();
+    private BlockingQueue<Request> requests = new ArrayBlockingQueue<>(64);
+    private volatile boolean running = true;
+    private Thread thread;
+    private static final int THRESHOLD = 4;
+    private static final int MAX_STREAMS = 256;
+    private static final Request STOP = new Request(null, 0);
+
+    ReadAhead(BufferMgr mgr, FileMgr fm, int window) {
+        this.mgr = mgr;
+        this.fm = fm;
+        this.window = Math.max(1, window);
+    }
+
+    void start() {
+        thread = new Thread(this, "dawndb-readahead");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 停止预读线程并等待当前请求结束，未处理的请求被丢弃。
+     * 队列为空时放入STOP唤醒预读线程；队列已满时预读线程不会等待，取出下一个请求后即退出
+     */
+    void stop() {
+        running = false;
+        requests.offer(STOP);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 固定块blk之前调用，检测顺序访问并提交预读请求
+     */
+    void accessed(BlockId blk) {
+        Stream s = streams.get(blk.filename());
+        if (s == null) {
+            if (streams.size() >= MAX_STREAMS) {
+                trim();
+            }
+            s = streams.computeIfAbsent(blk.filename(), f -> new Stream());
+        }
+        int n = blk.blknum();
+        int from;
+        int to;
+        synchronized (s) {
+            if (n == s.last) {
+                return;
+            }
+            if (n == s.last + 1) {
+                s.run++;
+            } else {
+                s.run = 1;
+                s.prefetchedTo = n + 1;
+            }
+            s.last = n;
+            if (s.run < THRESHOLD || n + window / 2 < s.prefetchedTo) {
+                return;
+            }
+            from = Math.max(s.prefetchedTo, n + 1);
+            to = n + 1 + window;
+            s.prefetchedTo = to;
+        }
+        requests.offer(new Request(new BlockId(blk.filename(), from), to - from));
+    }
+
+    /**
+     * 记录的文件过多时，丢弃不在顺序扫描中的文件，仍然过多时全部丢弃。
+     * 被丢弃的文件再次被访问时重新开始检测，最多少预读一次
+     */
+    private void trim() {
+        streams.values().removeIf(s -> !s.sequential());
+        if (streams.size() >= MAX_STREAMS) {
+            streams.clear();
+        }
+    }
+
+    /**
+     * 记录访问模式的文件数
+     */
+    int streams() {
+        return streams.size();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            Request r;
+            try {
+                r = requests.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (!running) {
+                break;
+            }
+            try {
+                prefetch(r.first, r.count);
+            } catch (RuntimeException e) {
+                System.out.println("read ahead: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 预读从first开始的count个块中不超过文件末尾、且不在缓冲池中的块
+     */
+    private void prefetch(BlockId first, int count) {
+        String filename = first.filename();
+        int end = Math.min(first.blknum() + count, fm.length(filename));
+        List<Buffer> run = new ArrayList<>();
+        int runStart = first.blknum();
+        for (int blknum = first.blknum(); blknum < end && running; blknum++) {
+            BlockId blk = new BlockId(filename, blknum);
+            Buffer buff = mgr.partition(blk).reserve(blk, false);
+            if (buff == null) {
+                load(mgr, fm, filename, runStart, run);
+                runStart = blknum + 1;
+            } else {
+                run.add(buff);
+            }
+        }
+        load(mgr, fm, filename, runStart, run);
+    }
+
+    /**
+     * 用一次批量读将从runStart开始的连续块读入预留的缓冲区，然后取消固定。预热缓冲池时也使用
+     */
+    static void load(BufferMgr mgr, FileMgr fm, String filename, int runStart, List<Buffer> run) {
+        if (run.isEmpty()) {
+            return;
+        }
+        List<Page> pages = new ArrayList<>(run.size());
+        for (Buffer buff : run) {
+            pages.add(buff.contents());
+        }
+        boolean ok = false;
+        try {
+            fm.readBatch(new BlockId(filename, runStart), pages);
+            ok = true;
+        } finally {
+            for (Buffer buff : run) {
+                mgr.partition(buff.block()).loaded(buff, ok);
+            }
+            run.clear();
+        }
+    }
+
+    /**
+     * 一个文件的访问模式
+     * last: 最近固定的块号
+     * run: 以last结尾的连续块数
+     * prefetchedTo: 已提交预读的块号上界(不含)
+     */
+    private static class Stream {
+        int last = -2;
+        int run;
+        int prefetchedTo;
+
+        synchronized boolean sequential() {
+            return run >= THRESHOLD;
+        }
+    }
+
+    private static class Request {
+        BlockId first;
+        int count;
+
+        Request(BlockId first, int count) {
+            this.first = first;
+            this.count = count;
+        }
+    }
+}
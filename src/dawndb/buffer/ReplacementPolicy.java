@@ -0,0 +1,75 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 19:10
+ * @Version: 1.0
+ * @Description:
+ * 缓冲区替换策略，决定缓冲池已满时淘汰哪个未被固定的缓冲区。
+ * 缓冲区以其在缓冲池中的下标(frame)标识；所有方法都在缓冲区管理器的锁内调用。
+ * 缓冲区管理器总是先使用尚未分配过块的缓冲区，之后才通过{@link #victim()}选择淘汰对象。
+ */
+
+
+public interface ReplacementPolicy {
+
+    /**
+     * 缓冲区管理器创建时调用
+     * @param numbuffs 缓冲区个数
+     */
+    void init(int numbuffs);
+
+    /**
+     * 缓冲池大小改变时调用。新增的缓冲区尚未分配块，被固定前不会被选中淘汰；
+     * 下标不小于numbuffs的缓冲区被移除，此后策略不再记录它们
+     * @param numbuffs 新的缓冲区个数
+     */
+    void resize(int numbuffs);
+
+    /**
+     * 块blk被固定到缓冲区frame
+     * @param hit 块已在缓冲区中为true; 为false时块刚被读入该缓冲区，原来的块已被淘汰
+     */
+    void pinned(int frame, BlockId blk, boolean hit);
+
+    /**
+     * 缓冲区frame的引用数降为0，可以被淘汰
+     */
+    void unpinned(int frame);
+
+    /**
+     * 选择一个未被固定的缓冲区淘汰
+     * @return 缓冲区下标, 没有可淘汰的缓冲区时返回-1
+     */
+    int victim();
+
+    /**
+     * 按预计的淘汰顺序返回至多max个未被固定的缓冲区，不改变策略的状态。
+     * 后台写线程据此提前写回即将被淘汰的脏缓冲区
+     */
+    int[] nextVictims(int max);
+
+    String name();
+
+    /**
+     * 按名称创建替换策略：naive、clock、lru-K(如lru-2)、2q
+     */
+    static ReplacementPolicy forName(String name) {
+        String n = name.toLowerCase();
+        if (n.equals("naive")) {
+            return new NaivePolicy();
+        }
+        if (n.equals("clock")) {
+            return new ClockPolicy();
+        }
+        if (n.equals("2q")) {
+            return new TwoQPolicy();
+        }
+        if (n.startsWith("lru-")) {
+            return new LruKPolicy(Integer.parseInt(n.substring(4)));
+        }
+        throw new IllegalArgumentException("unknown replacement policy " + name);
+    }
+}
@@ -0,0 +1,177 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 00:40
+ * @Version: 1.0
+ * @Description:
+ * 缓冲池驻留表：缓冲池中的块按最近使用的先后排列，定期保存到一个小文件，重启后据此预热缓冲池(见WarmUp)。
+ * 文件格式: MAGIC, 文件名个数, 各文件名, 块数, 各块(文件名下标, 块号), 以上内容的CRC32。
+ * 先写入临时文件并刷盘，再原子地重命名为目标文件，崩溃时只会留下上一次完整的驻留表。
+ *
+ * file: 驻留表文件
+ * snapshot: 取得缓冲池当前的驻留块
+ * interval: 两次保存之间的间隔(毫秒)
+ * MAGIC: 文件开头的标识
+ */
+
+
+class ResidencyMap implements Runnable {
+
+    private static final int MAGIC = 0x44425245;
+
+    private File file;
+    private Supplier<List<BlockId>> snapshot;
+    private long interval;
+    private volatile boolean running = true;
+    private Thread thread;
+
+    ResidencyMap(File file, Supplier<List<BlockId>> snapshot, long interval) {
+        this.file = file;
+        this.snapshot = snapshot;
+        this.interval = Math.max(1, interval);
+    }
+
+    void start() {
+        thread = new Thread(this, "dawndb-residency");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 停止保存线程，然后最后保存一次
+     */
+    void stop() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        save(snapshot.get(), file);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            try {
+                save(snapshot.get(), file);
+            } catch (RuntimeException e) {
+                System.out.println("residency map: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 将blocks按顺序保存到file
+     */
+    static void save(List<BlockId> blocks, File file) {
+        File tmp = new File(file.getPath() + ".tmp");
+        Map<String, Integer> names = new HashMap<>();
+        List<String> filenames = new ArrayList<>();
+        for (BlockId blk : blocks) {
+            if (names.putIfAbsent(blk.filename(), names.size()) == null) {
+                filenames.add(blk.filename());
+            }
+        }
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            CheckedOutputStream cos = new CheckedOutputStream(new BufferedOutputStream(fos), new CRC32());
+            DataOutputStream out = new DataOutputStream(cos);
+            out.writeInt(MAGIC);
+            out.writeInt(filenames.size());
+            for (String filename : filenames) {
+                out.writeUTF(filename);
+            }
+            out.writeInt(blocks.size());
+            for (BlockId blk : blocks) {
+                out.writeInt(names.get(blk.filename()));
+                out.writeInt(blk.blknum());
+            }
+            out.writeLong(cos.getChecksum().getValue());
+            out.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            tmp.delete();
+            throw new RuntimeException("cannot save residency map " + file);
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("cannot save residency map " + file);
+        }
+    }
+
+    /**
+     * 读取file中保存的块，文件不存在时返回空列表
+     * @throws IOException 文件已损坏或被截短
+     */
+    static List<BlockId> load(File file) throws IOException {
+        List<BlockId> blocks = new ArrayList<>();
+        if (!file.exists()) {
+            return blocks;
+        }
+        try (CheckedInputStream cis = new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file)), new CRC32())) {
+            DataInputStream in = new DataInputStream(cis);
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a residency map");
+            }
+            int count = in.readInt();
+            if (count < 0 || count > file.length()) {
+                throw new IOException(file + " is corrupted");
+            }
+            String[] filenames = new String[count];
+            for (int i = 0; i < filenames.length; i++) {
+                filenames[i] = in.readUTF();
+            }
+            int n = in.readInt();
+            if (n < 0 || n > file.length() / 8) {
+                throw new IOException(file + " is corrupted");
+            }
+            for (int i = 0; i < n; i++) {
+                int name = in.readInt();
+                int blknum = in.readInt();
+                if (name < 0 || name >= filenames.length) {
+                    throw new IOException(file + " is corrupted");
+                }
+                blocks.add(new BlockId(filenames[name], blknum));
+            }
+            long checksum = cis.getChecksum().getValue();
+            if (in.readLong() != checksum) {
+                throw new IOException(file + " is corrupted");
+            }
+        } catch (EOFException e) {
+            throw new IOException(file + " is truncated");
+        }
+        return blocks;
+    }
+}
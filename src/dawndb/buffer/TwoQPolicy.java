@@ -0,0 +1,172 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+
+import java.util.Arrays;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 19:45
+ * @Version: 1.0
+ * @Description:
+ * 2Q替换策略。首次读入的块进入先进先出队列A1in；从A1in淘汰的块只记录块号，放入A1out；
+ * 读入时块号在A1out中的块(短期内被再次访问)进入LRU队列Am。
+ * A1in超过Kin(缓冲区个数的1/4)时从A1in淘汰，否则从Am淘汰最近最少使用的缓冲区，
+ * 因此一次性扫描的块只在A1in中停留，不会挤掉Am中的热点块。
+ * 队列用数组实现为双向链表，下标为缓冲区编号；A1out同样用数组实现(见{@link EvictedBlocks})，固定时不创建对象。
+ *
+ * kin/kout: A1in的目标大小、A1out最多记录的块数
+ * queue: 各缓冲区所在的队列
+ * prev/next: 队列中的前后缓冲区, -1表示无
+ * head/tail/size: 各队列的头(最早)、尾(最新)及大小, 下标为队列编号
+ * blocks: 各缓冲区当前的块
+ * pinned: 各缓冲区是否被固定
+ * a1out: 从A1in淘汰的块, 最多记录kout个
+ */
+
+
+public class TwoQPolicy implements ReplacementPolicy {
+
+    private static final int NONE = 0;
+    private static final int A1IN = 1;
+    private static final int AM = 2;
+
+    private int kin;
+    private int kout;
+    private int[] queue;
+    private int[] prev;
+    private int[] next;
+    private int[] head = {-1, -1, -1};
+    private int[] tail = {-1, -1, -1};
+    private int[] size = new int[3];
+    private BlockId[] blocks;
+    private boolean[] pinned;
+    private EvictedBlocks a1out;
+
+    @Override
+    public void init(int numbuffs) {
+        kin = Math.max(1, numbuffs / 4);
+        kout = Math.max(1, numbuffs / 2);
+        queue = new int[numbuffs];
+        prev = new int[numbuffs];
+        next = new int[numbuffs];
+        blocks = new BlockId[numbuffs];
+        pinned = new boolean[numbuffs];
+        a1out = new EvictedBlocks(kout, 0);
+    }
+
+    /**
+     * 被移除的缓冲区移出所在队列，队列的目标大小按新的缓冲区个数重新计算
+     */
+    @Override
+    public void resize(int numbuffs) {
+        for (int frame = numbuffs; frame < queue.length; frame++) {
+            if (queue[frame] != NONE) {
+                unlink(frame);
+            }
+        }
+        kin = Math.max(1, numbuffs / 4);
+        kout = Math.max(1, numbuffs / 2);
+        a1out.setCapacity(kout);
+        queue = Arrays.copyOf(queue, numbuffs);
+        prev = Arrays.copyOf(prev, numbuffs);
+        next = Arrays.copyOf(next, numbuffs);
+        blocks = Arrays.copyOf(blocks, numbuffs);
+        pinned = Arrays.copyOf(pinned, numbuffs);
+    }
+
+    @Override
+    public void pinned(int frame, BlockId blk, boolean hit) {
+        pinned[frame] = true;
+        if (hit) {
+            if (queue[frame] == AM) {
+                unlink(frame);
+                append(AM, frame);
+            }
+            return;
+        }
+        if (queue[frame] == A1IN) {
+            a1out.put(blocks[frame], null, 0);
+        }
+        if (queue[frame] != NONE) {
+            unlink(frame);
+        }
+        append(a1out.remove(blk, null, 0) ? AM : A1IN, frame);
+        blocks[frame] = blk;
+    }
+
+    @Override
+    public void unpinned(int frame) {
+        pinned[frame] = false;
+    }
+
+    @Override
+    public int victim() {
+        if (size[A1IN] > kin) {
+            int frame = firstUnpinned(A1IN);
+            if (frame >= 0) {
+                return frame;
+            }
+        }
+        int frame = firstUnpinned(AM);
+        return (frame >= 0) ? frame : firstUnpinned(A1IN);
+    }
+
+    @Override
+    public int[] nextVictims(int max) {
+        int[] frames = new int[Math.min(max, pinned.length)];
+        int n = 0;
+        int first = (size[A1IN] > kin) ? A1IN : AM;
+        for (int q : new int[] {first, A1IN + AM - first}) {
+            for (int frame = head[q]; frame >= 0 && n < frames.length; frame = next[frame]) {
+                if (!pinned[frame]) {
+                    frames[n++] = frame;
+                }
+            }
+        }
+        return Arrays.copyOf(frames, n);
+    }
+
+    @Override
+    public String name() {
+        return "2q";
+    }
+
+    private int firstUnpinned(int q) {
+        for (int frame = head[q]; frame >= 0; frame = next[frame]) {
+            if (!pinned[frame]) {
+                return frame;
+            }
+        }
+        return -1;
+    }
+
+    private void append(int q, int frame) {
+        queue[frame] = q;
+        prev[frame] = tail[q];
+        next[frame] = -1;
+        if (tail[q] >= 0) {
+            next[tail[q]] = frame;
+        } else {
+            head[q] = frame;
+        }
+        tail[q] = frame;
+        size[q]++;
+    }
+
+    private void unlink(int frame) {
+        int q = queue[frame];
+        if (prev[frame] >= 0) {
+            next[prev[frame]] = next[frame];
+        } else {
+            head[q] = next[frame];
+        }
+        if (next[frame] >= 0) {
+            prev[next[frame]] = prev[frame];
+        } else {
+            tail[q] = prev[frame];
+        }
+        queue[frame] = NONE;
+        size[q]--;
+    }
+}
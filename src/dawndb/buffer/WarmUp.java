@@ -0,0 +1,121 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+import dawndb.file.FileMgr;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 00:50
+ * @Version: 1.0
+ * @Description:
+ * 缓冲池预热。重启后由预热线程把驻留表(见ResidencyMap)中的块读回缓冲池，可以在开始服务之前等待预热完成，
+ * 也可以一边服务一边预热。
+ * 驻留表中最近使用的块在前，缓冲池放不下时只读入前面的块；这些块再按文件、块号排序，
+ * 连续的块用一次分散读读入(每次至多MAX_RUN个)，把随机读变成大的顺序读。
+ * 预热只使用尚未分配块的缓冲区，不会淘汰前台事务已读入的块；块已在缓冲池中或有线程在等待缓冲区时跳过该块。
+ * 已删除的文件、已截短的文件末尾之后的块被忽略。
+ *
+ * mgr: 所属的缓冲区管理器
+ * fm: 文件管理器
+ * blocks: 驻留表中的块
+ * loaded: 读入的块数
+ * MAX_RUN: 一次读入的最多块数
+ */
+
+
+class WarmUp implements Runnable {
+
+    private static final int MAX_RUN = 64;
+
+    private BufferMgr mgr;
+    private FileMgr fm;
+    private List<BlockId> blocks;
+    private volatile int loaded;
+    private volatile boolean running = true;
+    private Thread thread;
+
+    WarmUp(BufferMgr mgr, FileMgr fm, List<BlockId> blocks) {
+        this.mgr = mgr;
+        this.fm = fm;
+        this.blocks = blocks;
+    }
+
+    void start() {
+        thread = new Thread(this, "dawndb-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 停止预热并等待当前的读入结束
+     */
+    void stop() {
+        running = false;
+        await();
+    }
+
+    /**
+     * 等待预热完成
+     */
+    void await() {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    int loaded() {
+        return loaded;
+    }
+
+    @Override
+    public void run() {
+        try {
+            List<BlockId> hottest = new ArrayList<>(blocks.subList(0, Math.min(blocks.size(), mgr.size())));
+            hottest.sort(Comparator.comparing(BlockId::filename).thenComparingInt(BlockId::blknum));
+            String filename = null;
+            int length = 0;
+            List<Buffer> run = new ArrayList<>();
+            int runStart = 0;
+            for (BlockId blk : hottest) {
+                if (!running) {
+                    break;
+                }
+                if (!blk.filename().equals(filename)) {
+                    flush(filename, runStart, run);
+                    filename = blk.filename();
+                    length = fm.exists(filename) ? fm.length(filename) : 0;
+                }
+                if (blk.blknum() >= length) {
+                    continue;
+                }
+                if (!run.isEmpty() && (blk.blknum() != runStart + run.size() || run.size() == MAX_RUN)) {
+                    flush(filename, runStart, run);
+                }
+                Buffer buff = mgr.partition(blk).reserve(blk, true);
+                if (buff == null) {
+                    flush(filename, runStart, run);
+                } else {
+                    if (run.isEmpty()) {
+                        runStart = blk.blknum();
+                    }
+                    run.add(buff);
+                }
+            }
+            flush(filename, runStart, run);
+        } catch (RuntimeException e) {
+            System.out.println("warm up: " + e.getMessage());
+        }
+    }
+
+    private void flush(String filename, int runStart, List<Buffer> run) {
+        int n = run.size();
+        ReadAhead.load(mgr, fm, filename, runStart, run);
+        loaded += n;
+    }
+}
@@ -40,6 +40,6 @@ public class BlockId {
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return 31 * filename.hashCode() + blknum;
     }
 }
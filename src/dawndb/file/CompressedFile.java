@@ -0,0 +1,293 @@
+package dawndb.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 17:30
+ * @Version: 1.0
+ * @Description:
+ * 压缩格式的文件。每个逻辑块用{@link LZCodec}单独压缩，依次追加到数据文件中；
+ * 块号到数据文件中位置的映射保存在同名的.zmap文件中，读取时按映射找到压缩数据并解压到页中。
+ * 改写块时新的压缩数据同样追加到数据文件末尾，旧数据成为空洞，由{@link FileMgr#compress}重写文件时回收。
+ *
+ * .zmap文件格式：魔数(4字节) 代数(4字节) 然后每块一项：偏移(8字节) 长度(4字节)
+ * 长度为0表示全0的块(追加而未写入的块)，长度等于块大小表示未压缩的块(压缩后不能变小)。
+ * 数据文件名为"文件名.z代数"，每次重写文件代数加1，重命名.zmap文件即切换到新的数据文件，
+ * 因此重写过程中崩溃不会破坏文件。
+ *
+ * mapFile: 块映射文件
+ * generation: 代数, 决定数据文件名
+ * offsets/lengths: 块映射
+ * end: 数据文件末尾, 新的压缩数据写在此处
+ * dirtyFrom: 块映射中自上次保存以来第一个修改过的项, 此后的项在刷盘时写入mapFile
+ * mapExists: mapFile是否已存在(已写入文件头)
+ * scratch: 线程私有的压缩缓冲区与哈希表
+ */
+
+
+class CompressedFile extends FileExtent {
+
+    static final String MAP_SUFFIX = ".zmap";
+    private static final String DATA_SUFFIX = ".z";
+    private static final int MAGIC = 0x445A4D50;
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 12;
+
+    private FileChannel fc;
+    private File mapFile;
+    private int blocksize;
+    private int generation;
+    private long[] offsets;
+    private int[] lengths;
+    private long end;
+    private int dirtyFrom;
+    private boolean mapExists;
+    private ThreadLocal<Scratch> scratch;
+
+    /**
+     * 打开压缩文件，mapFile不存在时创建一个空文件
+     * @param size 大小表中已有的逻辑块数, 文件首次打开时为null
+     */
+    CompressedFile(File mapFile, FileChannel fc, int blocksize, int generation, AtomicInteger size)
+            throws IOException {
+        super(size == null ? new AtomicInteger() : size);
+        this.fc = fc;
+        this.mapFile = mapFile;
+        this.blocksize = blocksize;
+        this.generation = generation;
+        scratch = ThreadLocal.withInitial(() -> new Scratch(blocksize));
+        end = fc.size();
+        int blocks = 0;
+        mapExists = mapFile.exists();
+        if (mapExists) {
+            try (FileChannel map = FileChannel.open(mapFile.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer bb = ByteBuffer.allocate((int) map.size());
+                while (bb.hasRemaining()) {
+                    if (map.read(bb, bb.position()) < 0) {
+                        break;
+                    }
+                }
+                blocks = (bb.position() - HEADER_SIZE) / ENTRY_SIZE;
+                offsets = new long[Math.max(blocks, 16)];
+                lengths = new int[offsets.length];
+                for (int i = 0; i < blocks; i++) {
+                    offsets[i] = bb.getLong(HEADER_SIZE + i * ENTRY_SIZE);
+                    lengths[i] = bb.getInt(HEADER_SIZE + i * ENTRY_SIZE + Long.BYTES);
+                }
+            }
+        } else {
+            offsets = new long[16];
+            lengths = new int[16];
+        }
+        if (size == null) {
+            size().set(blocks);
+        }
+        dirtyFrom = blocks;
+    }
+
+    /**
+     * 返回file的块映射文件
+     */
+    static File mapFile(File file) {
+        return new File(file.getPath() + MAP_SUFFIX);
+    }
+
+    /**
+     * 返回file第generation代的数据文件
+     */
+    static File dataFile(File file, int generation) {
+        return new File(file.getPath() + DATA_SUFFIX + generation);
+    }
+
+    /**
+     * 读取file当前的代数，file不是压缩文件时返回0
+     */
+    static int generation(File file) throws IOException {
+        File map = mapFile(file);
+        if (!map.exists()) {
+            return 0;
+        }
+        ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel fc = FileChannel.open(map.toPath(), StandardOpenOption.READ)) {
+            while (bb.hasRemaining()) {
+                if (fc.read(bb, bb.position()) < 0) {
+                    break;
+                }
+            }
+        }
+        if (bb.position() < HEADER_SIZE || bb.getInt(0) != MAGIC) {
+            throw new IOException("bad block map " + map);
+        }
+        return bb.getInt(Integer.BYTES);
+    }
+
+    /**
+     * 删除重写文件后不再使用的文件：原来的未压缩文件及其逻辑块数文件、上一代的数据文件。
+     * 打开压缩文件时也会调用，以清理重写期间崩溃遗留的文件
+     */
+    static void removeStale(File file, int generation) {
+        file.delete();
+        new File(file.getPath() + EOF_SUFFIX).delete();
+        dataFile(file, generation - 1).delete();
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    /**
+     * 将块blknum解压到dst中，块不存在时以0填充
+     * @return 从数据文件读取的字节数
+     */
+    int read(int blknum, ByteBuffer dst) throws IOException {
+        long offset;
+        int len;
+        synchronized (this) {
+            boolean present = blknum < length();
+            offset = present ? offsets[blknum] : 0;
+            len = present ? lengths[blknum] : 0;
+        }
+        if (len == 0) {
+            for (int i = 0; i < blocksize; i++) {
+                dst.put(i, (byte) 0);
+            }
+            return 0;
+        }
+        Scratch s = scratch.get();
+        ByteBuffer bb = ByteBuffer.wrap(s.in, 0, len);
+        while (bb.hasRemaining()) {
+            if (fc.read(bb, offset + bb.position()) < 0) {
+                throw new IOException("block " + blknum + " is truncated");
+            }
+        }
+        if (len == blocksize) {
+            dst.put(0, s.in, 0, blocksize);
+        } else {
+            LZCodec.decompress(s.in, len, s.out, blocksize);
+            dst.put(0, s.out, 0, blocksize);
+        }
+        return len;
+    }
+
+    /**
+     * 压缩src并追加到数据文件末尾，再将块blknum指向新的数据
+     * @return 写入数据文件的字节数
+     */
+    int write(int blknum, ByteBuffer src) throws IOException {
+        Scratch s = scratch.get();
+        src.get(0, s.in, 0, blocksize);
+        int len = LZCodec.compress(s.in, blocksize, s.out, blocksize - 1, s.table);
+        ByteBuffer bb = (len < 0) ? ByteBuffer.wrap(s.in, 0, blocksize) : ByteBuffer.wrap(s.out, 0, len);
+        len = bb.remaining();
+        synchronized (this) {
+            long pos = end;
+            while (bb.hasRemaining()) {
+                fc.write(bb, pos + bb.position());
+            }
+            end += len;
+            ensureCapacity(blknum + 1);
+            offsets[blknum] = pos;
+            lengths[blknum] = len;
+            dirtyFrom = Math.min(dirtyFrom, blknum);
+            size().accumulateAndGet(blknum + 1, Math::max);
+        }
+        return len;
+    }
+
+    /**
+     * 追加一个全0的块，不占用数据文件的空间
+     */
+    @Override
+    synchronized int append(int extentBlocks, boolean sync) {
+        int blknum = length();
+        ensureCapacity(blknum + 1);
+        offsets[blknum] = 0;
+        lengths[blknum] = 0;
+        dirtyFrom = Math.min(dirtyFrom, blknum);
+        size().incrementAndGet();
+        return blknum;
+    }
+
+    @Override
+    synchronized void extendTo(int blocks) {
+        ensureCapacity(blocks);
+        int old = length();
+        if (blocks > old) {
+            dirtyFrom = Math.min(dirtyFrom, old);
+            size().set(blocks);
+        }
+    }
+
+    /**
+     * 将块映射的变化写入mapFile。映射指向的压缩数据须先于映射持久化
+     * @param sync 是否刷盘
+     */
+    @Override
+    synchronized void persist(boolean sync) throws IOException {
+        int blocks = length();
+        if (dirtyFrom >= blocks && mapExists) {
+            return;
+        }
+        if (sync) {
+            fc.force(false);
+        }
+        int from = Math.min(dirtyFrom, blocks);
+        ByteBuffer bb = ByteBuffer.allocate((blocks - from) * ENTRY_SIZE);
+        for (int i = from; i < blocks; i++) {
+            bb.putLong(offsets[i]).putInt(lengths[i]);
+        }
+        bb.flip();
+        try (FileChannel map = FileChannel.open(mapFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            if (!mapExists) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(generation).flip();
+                while (header.hasRemaining()) {
+                    map.write(header, header.position());
+                }
+            }
+            long pos = HEADER_SIZE + (long) from * ENTRY_SIZE;
+            while (bb.hasRemaining()) {
+                map.write(bb, pos + bb.position());
+            }
+            if (sync) {
+                map.force(false);
+            }
+        }
+        mapExists = true;
+        dirtyFrom = blocks;
+    }
+
+    /**
+     * 删除块映射文件
+     */
+    @Override
+    void delete() {
+        mapFile.delete();
+    }
+
+    private void ensureCapacity(int blocks) {
+        if (blocks > offsets.length) {
+            int capacity = Math.max(blocks, offsets.length * 2);
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+    }
+
+    private static class Scratch {
+        byte[] in;
+        byte[] out;
+        int[] table = new int[1 << LZCodec.HASH_BITS];
+
+        Scratch(int blocksize) {
+            in = new byte[blocksize];
+            out = new byte[blocksize];
+        }
+    }
+}
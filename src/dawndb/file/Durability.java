@@ -0,0 +1,18 @@
+package dawndb.file;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 11:10
+ * @Version: 1.0
+ * @Description:
+ * 文件管理器的持久化级别，决定写入的块何时被强制刷到磁盘。
+ * STRICT: 每次写块、追加块后立即刷盘(等价于原先以"rws"方式打开文件)
+ * COMMIT_ONLY: 只在显式的刷盘点(日志刷新、事务提交)调用force时刷盘
+ * NONE: 从不刷盘，仅用于测试
+ */
+
+public enum Durability {
+    STRICT,
+    COMMIT_ONLY,
+    NONE
+}
@@ -0,0 +1,160 @@
+package dawndb.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 13:40
+ * @Version: 1.0
+ * @Description:
+ * 按区(extent)增长的文件。文件一次预分配若干块，追加块通常只需增加内存中的逻辑块数。
+ * 逻辑块数保存在同名的.eof文件中，在刷盘及预分配新区前写入；打开文件时，从保存的逻辑块数起
+ * 检查预分配部分，最后一个非零块之后的块视为未使用。
+ *
+ * fc: 数据文件通道
+ * eofFile: 记录逻辑块数的文件
+ * allocated: 文件已分配(物理)的块数
+ * logical: 文件逻辑块数, 即FileMgr大小表中该文件的表项, 读取时无需加锁
+ * persisted: eofFile中保存的逻辑块数, -1表示eofFile不存在
+ */
+
+
+class FileExtent {
+
+    static final String EOF_SUFFIX = ".eof";
+
+    private FileChannel fc;
+    private File eofFile;
+    private int blocksize;
+    private int allocated;
+    private AtomicInteger logical;
+    private int persisted = -1;
+
+    /**
+     * 打开文件时根据eofFile恢复逻辑块数。
+     * 保存的逻辑块数之后可能还有已写入但未刷盘的块，它们不全为0，需计入逻辑块数
+     * @param size 大小表中已有的逻辑块数, 文件首次打开时为null
+     */
+    FileExtent(File file, FileChannel fc, int blocksize, AtomicInteger size) throws IOException {
+        this.fc = fc;
+        this.blocksize = blocksize;
+        eofFile = new File(file.getPath() + EOF_SUFFIX);
+        allocated = (int) (fc.size() / blocksize);
+        int blocks = allocated;
+        if (eofFile.length() >= Integer.BYTES) {
+            ByteBuffer bb = ByteBuffer.allocate(Integer.BYTES);
+            try (FileChannel eof = FileChannel.open(eofFile.toPath(), StandardOpenOption.READ)) {
+                eof.read(bb, 0);
+            }
+            persisted = Math.min(bb.getInt(0), allocated);
+            if (size == null) {
+                blocks = lastNonZeroBlock(persisted) + 1;
+            }
+        }
+        logical = (size == null) ? new AtomicInteger(blocks) : size;
+    }
+
+    /**
+     * 供不按区分配空间的子类使用, 只维护逻辑块数
+     */
+    FileExtent(AtomicInteger size) {
+        logical = size;
+    }
+
+    /**
+     * 返回从from开始的已分配块中最后一个不全为0的块号，均为0时返回from-1
+     */
+    private int lastNonZeroBlock(int from) throws IOException {
+        ByteBuffer bb = ByteBuffer.allocate(blocksize);
+        for (int blknum = allocated - 1; blknum >= from; blknum--) {
+            bb.clear();
+            long pos = (long) blknum * blocksize;
+            while (bb.hasRemaining()) {
+                if (fc.read(bb, pos + bb.position()) < 0) {
+                    break;
+                }
+            }
+            for (int i = 0; i < bb.position(); i++) {
+                if (bb.get(i) != 0) {
+                    return blknum;
+                }
+            }
+        }
+        return from - 1;
+    }
+
+    /**
+     * 返回大小表中该文件的表项
+     */
+    AtomicInteger size() {
+        return logical;
+    }
+
+    int length() {
+        return logical.get();
+    }
+
+    /**
+     * 追加一个块并返回其块号。
+     * 已分配的块用完时，一次预分配extentBlocks个以0填充的块；
+     * 预分配前先保存逻辑块数，保证崩溃后预分配的块不会被当作文件内容
+     */
+    synchronized int append(int extentBlocks, boolean sync) throws IOException {
+        if (logical.get() >= allocated) {
+            int grow = Math.max(1, extentBlocks);
+            if (grow > 1) {
+                persist(sync);
+            }
+            ByteBuffer zeros = ByteBuffer.allocate(grow * blocksize);
+            long pos = (long) allocated * blocksize;
+            while (zeros.hasRemaining()) {
+                fc.write(zeros, pos + zeros.position());
+            }
+            allocated += grow;
+        }
+        return logical.getAndIncrement();
+    }
+
+    /**
+     * 直接写入文件末尾之后的块时，逻辑块数随之增长
+     */
+    synchronized void extendTo(int blocks) {
+        logical.accumulateAndGet(blocks, Math::max);
+        allocated = Math.max(allocated, blocks);
+    }
+
+    /**
+     * 逻辑块数有变化时写入eofFile
+     * @param sync 是否将eofFile刷盘
+     */
+    synchronized void persist(boolean sync) throws IOException {
+        int blocks = logical.get();
+        if (persisted == blocks) {
+            return;
+        }
+        ByteBuffer bb = ByteBuffer.allocate(Integer.BYTES);
+        bb.putInt(0, blocks);
+        try (FileChannel eof = FileChannel.open(eofFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            while (bb.hasRemaining()) {
+                eof.write(bb, bb.position());
+            }
+            if (sync) {
+                eof.force(false);
+            }
+        }
+        persisted = blocks;
+    }
+
+    /**
+     * 删除逻辑块数文件
+     */
+    void delete() {
+        eofFile.delete();
+    }
+}
@@ -0,0 +1,174 @@
+package dawndb.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 15:05
+ * @Version: 1.0
+ * @Description:
+ * 打开的文件句柄，由{@link FileHandleCache}管理。
+ * 每次读写前增加引用计数，结束后减少；只有引用计数为0的句柄才能被关闭，
+ * 因此正在进行的I/O不会失去文件通道。
+ *
+ * filename: 文件名
+ * file: 文件
+ * fc: 文件通道
+ * extent: 区分配信息, 压缩文件为其块映射
+ * mapped: 内存映射(仅MMAP模式, 首次使用时创建)
+ * refs: 引用计数, -1表示已关闭
+ * lastUsed: 最近一次被引用的时间, 用于LRU淘汰
+ * dirty: 自上次刷盘以来是否有写入, 在写入完成后设置
+ * deleteOnRelease: 文件是否已删除, 引用计数降为0时关闭
+ */
+
+
+class FileHandle {
+
+    private String filename;
+    private File file;
+    private FileChannel fc;
+    private FileExtent extent;
+    private MappedFile mapped;
+    private AtomicInteger refs = new AtomicInteger();
+    private volatile long lastUsed;
+    private volatile boolean dirty;
+    private volatile boolean deleteOnRelease;
+
+    FileHandle(String filename, File file, FileChannel fc, FileExtent extent) {
+        this.filename = filename;
+        this.file = file;
+        this.fc = fc;
+        this.extent = extent;
+    }
+
+    String filename() {
+        return filename;
+    }
+
+    FileChannel channel() {
+        return fc;
+    }
+
+    FileExtent extent() {
+        return extent;
+    }
+
+    /**
+     * 压缩文件返回其块映射, 否则返回null
+     */
+    CompressedFile compressed() {
+        return extent instanceof CompressedFile ? (CompressedFile) extent : null;
+    }
+
+    /**
+     * 返回文件的内存映射，首次调用时创建
+     */
+    synchronized MappedFile mapped(int blocksize) {
+        if (mapped == null) {
+            mapped = new MappedFile(fc, blocksize);
+        }
+        return mapped;
+    }
+
+    /**
+     * 返回已创建的内存映射, 未创建时返回null
+     */
+    synchronized MappedFile mappedIfPresent() {
+        return mapped;
+    }
+
+    /**
+     * 增加引用计数
+     * @return 句柄已关闭时返回false
+     */
+    boolean retain() {
+        while (true) {
+            int r = refs.get();
+            if (r < 0) {
+                return false;
+            }
+            if (refs.compareAndSet(r, r + 1)) {
+                lastUsed = System.nanoTime();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 减少引用计数
+     * @return 减少后的引用计数
+     */
+    int release() {
+        return refs.decrementAndGet();
+    }
+
+    int refs() {
+        return refs.get();
+    }
+
+    long lastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * 引用计数为0时将句柄标记为已关闭，此后不能再被引用
+     */
+    boolean tryClose() {
+        return refs.compareAndSet(0, -1);
+    }
+
+    void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * 刷盘前调用，返回并清除写入标记；刷盘期间的新写入会重新设置该标记
+     */
+    boolean clearDirty() {
+        boolean d = dirty;
+        dirty = false;
+        return d;
+    }
+
+    boolean deleteOnRelease() {
+        return deleteOnRelease;
+    }
+
+    void setDeleteOnRelease() {
+        deleteOnRelease = true;
+    }
+
+    /**
+     * 关闭文件通道。有未刷盘的写入时先刷盘，并保存逻辑块数；
+     * 已删除的文件直接关闭, 以免重新创建同名文件的逻辑块数文件
+     * @param sync 是否刷盘
+     */
+    void close(boolean sync) throws IOException {
+        if (deleteOnRelease) {
+            fc.close();
+            return;
+        }
+        if (clearDirty() && sync) {
+            try {
+                fc.force(false);
+            } catch (IOException e) {
+                markDirty();
+                throw e;
+            }
+        }
+        extent.persist(sync);
+        fc.close();
+    }
+
+    /**
+     * 删除已关闭的文件及其逻辑块数文件
+     */
+    void delete() {
+        file.delete();
+        extent.delete();
+    }
+}
@@ -0,0 +1,161 @@
+package dawndb.file;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 15:20
+ * @Version: 1.0
+ * @Description:
+ * 容量有限的文件句柄缓存。
+ * 命中时只需无锁地增加句柄的引用计数；未命中时加锁打开文件，
+ * 若打开的文件数超过容量，则关闭最近最少使用且未被引用的句柄。
+ * 所有句柄都被引用时允许暂时超过容量。
+ *
+ * fm: 文件管理器, 负责打开和关闭句柄
+ * handles: 打开的句柄
+ * capacity: 最多打开的文件数
+ * hits/misses/evictions: 命中、未命中、淘汰次数
+ */
+
+
+class FileHandleCache {
+
+    private FileMgr fm;
+    private Map<String, FileHandle> handles = new ConcurrentHashMap<>();
+    private volatile int capacity;
+    private LongAdder hits = new LongAdder();
+    private LongAdder misses = new LongAdder();
+    private LongAdder evictions = new LongAdder();
+
+    FileHandleCache(FileMgr fm, int capacity) {
+        this.fm = fm;
+        this.capacity = capacity;
+    }
+
+    /**
+     * 获得filename的句柄并增加其引用计数，使用完毕后须调用{@link #release}
+     */
+    FileHandle acquire(String filename) throws IOException {
+        FileHandle h = handles.get(filename);
+        if (h != null && h.retain()) {
+            hits.increment();
+            return h;
+        }
+        synchronized (this) {
+            h = handles.get(filename);
+            if (h != null && h.retain()) {
+                hits.increment();
+                return h;
+            }
+            misses.increment();
+            h = fm.openHandle(filename);
+            h.retain();
+            handles.put(filename, h);
+            evict();
+            return h;
+        }
+    }
+
+    /**
+     * 减少句柄的引用计数，已删除文件的句柄在不再被引用时关闭
+     */
+    void release(FileHandle h) throws IOException {
+        if (h.release() == 0 && h.deleteOnRelease()) {
+            synchronized (this) {
+                if (h.tryClose()) {
+                    fm.closeHandle(h);
+                }
+            }
+        }
+    }
+
+    /**
+     * 返回已打开的句柄，不增加引用计数
+     */
+    FileHandle get(String filename) {
+        return handles.get(filename);
+    }
+
+    List<String> openFiles() {
+        return new ArrayList<>(handles.keySet());
+    }
+
+    /**
+     * 关闭filename，文件正被使用时不做任何事
+     */
+    synchronized void close(String filename) throws IOException {
+        FileHandle h = handles.get(filename);
+        if (h != null && h.tryClose()) {
+            handles.remove(filename);
+            fm.closeHandle(h);
+        }
+    }
+
+    /**
+     * 删除filename。文件正被使用时立即从缓存中移除并删除文件，此后同名文件的访问打开一个新文件；
+     * 进行中的I/O仍使用已删除文件的通道，该句柄在最后一次释放时关闭
+     * @return 文件未打开时返回false, 由调用者直接删除
+     */
+    synchronized boolean delete(String filename) throws IOException {
+        FileHandle h = handles.remove(filename);
+        if (h == null) {
+            return false;
+        }
+        h.setDeleteOnRelease();
+        if (h.tryClose()) {
+            fm.closeHandle(h);
+        }
+        h.delete();
+        return true;
+    }
+
+    /**
+     * 打开的文件数超过容量时，关闭最近最少使用且未被引用的句柄
+     */
+    private void evict() throws IOException {
+        while (handles.size() > capacity) {
+            FileHandle victim = null;
+            for (FileHandle h : handles.values()) {
+                if (h.refs() == 0 && (victim == null || h.lastUsed() < victim.lastUsed())) {
+                    victim = h;
+                }
+            }
+            if (victim == null || !victim.tryClose()) {
+                return;
+            }
+            handles.remove(victim.filename());
+            evictions.increment();
+            fm.closeHandle(victim);
+        }
+    }
+
+    void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int size() {
+        return handles.size();
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+}
@@ -2,9 +2,27 @@ package dawndb.file;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.HashMap;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import com.sun.nio.file.ExtendedOpenOption;
 
 /**
  * @Author: WangChen
@@ -16,23 +34,50 @@ import java.util.Map;
  * dbDirectory数据库工作目录文件指针
  * blocksize逻辑物理块的大小
  * isNew数据库是否存在
- * openFiles打开文件列表
+ * handles打开文件的句柄缓存(容量有限, 读写使用定位I/O, 不同文件、同一文件的不同块可并行访问)
+ * mode块访问方式, DIRECT不可用时为退回后的实际方式
+ * alignment直接I/O要求的缓冲区地址及读写位置的对齐单位(文件系统块大小)
+ * bounce未对齐页面进行直接I/O时使用的线程私有中转缓冲区
+ * durability持久化级别，文件不再以同步方式打开，由force决定何时刷盘
+ * sizes大小表, 各文件的逻辑块数, 文件首次打开时初始化, 追加块时更新, 读取时无需加锁和系统调用
+ * extentBlocks文件每次增长预分配的块数
+ * 文件可以通过compress转换为压缩格式(见CompressedFile), 之后的读写对调用者透明
+ * stats各文件的I/O统计, 文件删除后保留; statsEnabled为false时不记录
  */
 
 
 public class FileMgr {
 
+    public static final int DEFAULT_EXTENT_BLOCKS = 64;
+    public static final int DEFAULT_MAX_OPEN_FILES = 256;
+
     private File dbDirectory;
     private int blocksize;
     private boolean isNew;
-    private Map<String, RandomAccessFile> openFiles = new HashMap<>();
+    private FileHandleCache handles = new FileHandleCache(this, DEFAULT_MAX_OPEN_FILES);
+    private StorageMode mode;
+    private int alignment = 1;
+    private ThreadLocal<ByteBuffer> bounce = ThreadLocal.withInitial(() -> newPage().contents());
+    private volatile Durability durability = Durability.COMMIT_ONLY;
+    private Map<String, AtomicInteger> sizes = new ConcurrentHashMap<>();
+    private volatile int extentBlocks = DEFAULT_EXTENT_BLOCKS;
+    private Map<String, FileStats> stats = new ConcurrentHashMap<>();
+    private volatile boolean statsEnabled = true;
 
     /**
      * 创建数据库操作对象
      */
     public FileMgr(File dbDirectory, int blocksize) {
+        this(dbDirectory, blocksize, StorageMode.STANDARD);
+    }
+
+    /**
+     * 创建以指定方式访问磁盘块的数据库操作对象
+     */
+    public FileMgr(File dbDirectory, int blocksize, StorageMode mode) {
         this.dbDirectory = dbDirectory;
         this.blocksize = blocksize;
+        this.mode = mode;
         isNew = !dbDirectory.exists();
 
         // 若数据库不存在，则创建数据库
@@ -46,85 +91,704 @@ public class FileMgr {
                 new File(dbDirectory, filename).delete();
             }
         }
+
+        if (mode == StorageMode.DIRECT) {
+            initDirectIO();
+        }
+    }
+
+    /**
+     * 检查块大小是否为文件系统块大小的整数倍，并试探文件系统是否支持直接I/O，
+     * 不支持时退回STANDARD方式
+     */
+    private void initDirectIO() {
+        int fsBlockSize;
+        try {
+            fsBlockSize = (int) Files.getFileStore(dbDirectory.toPath()).getBlockSize();
+        } catch (IOException | UnsupportedOperationException e) {
+            fsBlockSize = -1;
+        }
+        if (fsBlockSize > 0 && blocksize % fsBlockSize != 0) {
+            throw new IllegalArgumentException("block size " + blocksize
+                    + " is not a multiple of file system block size " + fsBlockSize);
+        }
+        File probe = new File(dbDirectory, "temp.directio");
+        try (FileChannel fc = FileChannel.open(probe.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, ExtendedOpenOption.DIRECT)) {
+            if (fsBlockSize <= 0) {
+                throw new UnsupportedOperationException("unknown file system block size");
+            }
+            alignment = fsBlockSize;
+            fc.write(newPage().contents(), 0);
+        } catch (IOException | UnsupportedOperationException e) {
+            mode = StorageMode.STANDARD;
+            alignment = 1;
+            System.out.println("direct I/O is not supported in " + dbDirectory + ", using buffered I/O");
+        } finally {
+            probe.delete();
+        }
+    }
+
+    /**
+     * 创建一个适合当前访问方式的页, 直接I/O时页的地址按文件系统块对齐
+     */
+    public Page newPage() {
+        return mode == StorageMode.DIRECT ? new Page(blocksize, alignment) : new Page(blocksize);
     }
 
     /**
      * 将块blk标识的数据块内的数据存入p中
+     * 超出文件末尾的部分以0填充
      */
-    public synchronized void read(BlockId blk, Page p) {
+    public void read(BlockId blk, Page p) {
+        FileHandle h = null;
+        long begin = statsEnabled ? System.nanoTime() : 0;
+        int bytes = blocksize;
         try {
-            RandomAccessFile f = getFile(blk.filename());
-            f.seek(blk.blknum() * blocksize);
-            f.getChannel().read(p.contents());
+            h = handles.acquire(blk.filename());
+            ByteBuffer dst = p.contents();
+            CompressedFile cf = h.compressed();
+            if (cf != null) {
+                bytes = cf.read(blk.blknum(), dst);
+                return;
+            }
+            if (mode == StorageMode.MMAP && h.mapped(blocksize).read(blk.blknum(), dst)) {
+                return;
+            }
+            FileChannel fc = h.channel();
+            ByteBuffer bb = needsBounce(dst) ? bounce.get().clear() : dst;
+            long pos = (long) blk.blknum() * blocksize;
+            while (bb.hasRemaining()) {
+                // 直接I/O只在文件末尾读不满一块, 此后的读取位置不再对齐, 不能继续读
+                if (fc.read(bb, pos + bb.position()) < 0 || mode == StorageMode.DIRECT) {
+                    break;
+                }
+            }
+            while (bb.hasRemaining()) {
+                bb.put((byte) 0);
+            }
+            if (bb != dst) {
+                dst.put(0, bb, 0, blocksize);
+            }
         } catch (IOException e) {
             throw new RuntimeException("cannot read block " + blk);
+        } finally {
+            release(h);
+            if (begin != 0) {
+                stats(blk.filename()).recordRead(bytes, System.nanoTime() - begin);
+            }
+        }
+    }
+
+    /**
+     * 从块first开始，将连续的pages.size()个块依次读入pages，超出文件末尾的部分以0填充。
+     * 普通文件使用一次分散读，压缩文件和映射的文件逐块读
+     */
+    public void readBatch(BlockId first, List<Page> pages) {
+        if (pages.isEmpty()) {
+            return;
+        }
+        FileHandle h = null;
+        long begin = statsEnabled ? System.nanoTime() : 0;
+        try {
+            h = handles.acquire(first.filename());
+            ByteBuffer[] dsts = new ByteBuffer[pages.size()];
+            boolean scatter = h.compressed() == null && mode != StorageMode.MMAP;
+            for (int i = 0; i < dsts.length; i++) {
+                dsts[i] = pages.get(i).contents();
+                scatter &= !needsBounce(dsts[i]);
+            }
+            if (!scatter) {
+                for (int i = 0; i < dsts.length; i++) {
+                    read(new BlockId(first.filename(), first.blknum() + i), pages.get(i));
+                }
+                return;
+            }
+            FileChannel fc = h.channel();
+            long remaining = (long) dsts.length * blocksize;
+            synchronized (fc) {
+                fc.position((long) first.blknum() * blocksize);
+                while (remaining > 0) {
+                    long n = fc.read(dsts);
+                    if (n < 0 || mode == StorageMode.DIRECT) {
+                        break;
+                    }
+                    remaining -= n;
+                }
+            }
+            for (ByteBuffer bb : dsts) {
+                while (bb.hasRemaining()) {
+                    bb.put((byte) 0);
+                }
+            }
+            if (begin != 0) {
+                stats(first.filename()).recordRead(dsts.length, (long) dsts.length * blocksize,
+                        System.nanoTime() - begin);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("cannot read blocks of " + first.filename() + " from " + first.blknum());
+        } finally {
+            release(h);
         }
     }
 
     /**
      * 将数据块p内的数据存入块blk
      */
-    public synchronized void write(BlockId blk, Page p) {
+    public void write(BlockId blk, Page p) {
+        FileHandle h = null;
+        long begin = statsEnabled ? System.nanoTime() : 0;
+        int bytes = blocksize;
         try {
-            RandomAccessFile f = getFile(blk.filename());
-            f.seek(blk.blknum() * blocksize);
-            f.getChannel().write(p.contents());
+            h = handles.acquire(blk.filename());
+            ByteBuffer bb = p.contents();
+            CompressedFile cf = h.compressed();
+            if (cf != null) {
+                bytes = cf.write(blk.blknum(), bb);
+                h.markDirty();
+                if (durability == Durability.STRICT) {
+                    force(blk.filename());
+                }
+                return;
+            }
+            FileExtent extent = h.extent();
+            if (blk.blknum() >= extent.length()) {
+                extent.extendTo(blk.blknum() + 1);
+            }
+            if (mode == StorageMode.MMAP && h.mapped(blocksize).write(blk.blknum(), bb)) {
+                h.markDirty();
+                if (durability == Durability.STRICT) {
+                    h.mapped(blocksize).force(blk.blknum());
+                }
+                return;
+            }
+            FileChannel fc = h.channel();
+            if (needsBounce(bb)) {
+                bb = bounce.get().clear().put(0, bb, 0, blocksize);
+            }
+            long pos = (long) blk.blknum() * blocksize;
+            while (bb.hasRemaining()) {
+                fc.write(bb, pos + bb.position());
+            }
+            h.markDirty();
+            if (durability == Durability.STRICT) {
+                fc.force(false);
+            }
         } catch (IOException e) {
             throw new RuntimeException("cannot write block " + blk);
+        } finally {
+            release(h);
+            if (begin != 0) {
+                stats(blk.filename()).recordWrite(1, bytes, System.nanoTime() - begin);
+            }
+        }
+    }
+
+    /**
+     * 批量将pages.get(i)写入blocks.get(i)。
+     * 块按文件名、块号排序，连续的块合并为一次聚集写；持久化级别不为NONE时，
+     * 每个涉及的文件在写完后刷盘一次，返回时所有块均已持久化
+     */
+    public void writeBatch(List<BlockId> blocks, List<Page> pages) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing((Integer i) -> blocks.get(i).filename())
+                .thenComparingInt(i -> blocks.get(i).blknum()));
+
+        int start = 0;
+        while (start < order.size()) {
+            String filename = blocks.get(order.get(start)).filename();
+            int end = start;
+            while (end < order.size() && blocks.get(order.get(end)).filename().equals(filename)) {
+                end++;
+            }
+            writeFileBatch(filename, order.subList(start, end), blocks, pages);
+            force(filename);
+            start = end;
         }
     }
 
+    /**
+     * 将同一文件中已排序的块写入磁盘，每段连续的块使用一次聚集写
+     */
+    private void writeFileBatch(String filename, List<Integer> order, List<BlockId> blocks, List<Page> pages) {
+        FileHandle h = null;
+        long begin = statsEnabled ? System.nanoTime() : 0;
+        long bytes = (long) order.size() * blocksize;
+        try {
+            h = handles.acquire(filename);
+            CompressedFile cf = h.compressed();
+            if (cf != null) {
+                bytes = 0;
+                for (int i : order) {
+                    bytes += cf.write(blocks.get(i).blknum(), pages.get(i).contents());
+                }
+                h.markDirty();
+                return;
+            }
+            h.extent().extendTo(blocks.get(order.get(order.size() - 1)).blknum() + 1);
+            if (mode == StorageMode.MMAP) {
+                MappedFile mf = h.mapped(blocksize);
+                for (int i : order) {
+                    ByteBuffer bb = pages.get(i).contents();
+                    if (!mf.write(blocks.get(i).blknum(), bb)) {
+                        writeRun(h.channel(), blocks.get(i).blknum(), new ByteBuffer[] {bb});
+                    }
+                }
+                h.markDirty();
+                return;
+            }
+            FileChannel fc = h.channel();
+            int runStart = 0;
+            while (runStart < order.size()) {
+                int runEnd = runStart + 1;
+                while (runEnd < order.size()
+                        && blocks.get(order.get(runEnd)).blknum() == blocks.get(order.get(runEnd - 1)).blknum() + 1) {
+                    runEnd++;
+                }
+                ByteBuffer[] srcs = new ByteBuffer[runEnd - runStart];
+                for (int j = runStart; j < runEnd; j++) {
+                    ByteBuffer bb = pages.get(order.get(j)).contents();
+                    if (needsBounce(bb)) {
+                        bb = newPage().contents().put(0, bb, 0, blocksize);
+                    }
+                    srcs[j - runStart] = bb;
+                }
+                writeRun(fc, blocks.get(order.get(runStart)).blknum(), srcs);
+                runStart = runEnd;
+            }
+            h.markDirty();
+        } catch (IOException e) {
+            throw new RuntimeException("cannot write blocks of " + filename);
+        } finally {
+            release(h);
+            if (begin != 0) {
+                stats(filename).recordWrite(order.size(), bytes, System.nanoTime() - begin);
+            }
+        }
+    }
+
+    /**
+     * 从块blknum开始，用一次聚集写写入连续的若干块。
+     * 聚集写、分散读依赖通道的当前位置，因此同一文件的这些操作互斥
+     */
+    private void writeRun(FileChannel fc, int blknum, ByteBuffer[] srcs) throws IOException {
+        long remaining = (long) srcs.length * blocksize;
+        synchronized (fc) {
+            fc.position((long) blknum * blocksize);
+            while (remaining > 0) {
+                remaining -= fc.write(srcs);
+            }
+        }
+    }
+
+    /**
+     * 直接I/O要求缓冲区地址对齐, 堆缓冲区由JDK经对齐的临时缓冲区中转,
+     * 未对齐的直接缓冲区则需要自行中转
+     */
+    private boolean needsBounce(ByteBuffer bb) {
+        return mode == StorageMode.DIRECT && bb.isDirect() && bb.alignmentOffset(0, alignment) != 0;
+    }
+
     /**
      * 为filename文件增加一块磁盘块
+     * 文件按区预分配，通常只需增加逻辑块数；同一文件的追加操作互斥，不同文件互不影响
      * @param filename
      * @return
      */
-    public synchronized BlockId append(String filename) {
-        int newBlkNum = length(filename);
-        BlockId blk = new BlockId(filename, newBlkNum);
-        byte[] b = new byte[blocksize];
+    public BlockId append(String filename) {
+        FileHandle h = null;
+        try {
+            h = handles.acquire(filename);
+            BlockId blk = new BlockId(filename, h.extent().append(extentBlocks, durability != Durability.NONE));
+            h.markDirty();
+            if (statsEnabled) {
+                stats(filename).recordAppend();
+            }
+            if (durability == Durability.STRICT) {
+                force(filename);
+            }
+            return blk;
+        } catch (IOException e) {
+            throw new RuntimeException("cannot append block to " + filename);
+        } finally {
+            release(h);
+        }
+    }
+
+    /**
+     * 将filename文件已写入的块及逻辑块数刷到磁盘
+     * 日志管理器刷新日志、事务提交时调用，持久化级别为NONE时只保存逻辑块数而不刷盘。
+     * 文件未打开时无需处理，句柄关闭时已将写入的内容刷盘
+     */
+    public void force(String filename) {
+        if (handles.get(filename) == null) {
+            return;
+        }
+        FileHandle h = null;
+        boolean dirty = false;
+        boolean forced = false;
+        try {
+            h = handles.acquire(filename);
+            dirty = h.clearDirty();
+            h.extent().persist(durability != Durability.NONE);
+            if (durability == Durability.NONE || !dirty) {
+                forced = true;
+                return;
+            }
+            long begin = statsEnabled ? System.nanoTime() : 0;
+            MappedFile mf = h.mappedIfPresent();
+            if (mf != null) {
+                mf.force();
+            }
+            h.channel().force(false);
+            forced = true;
+            if (begin != 0) {
+                stats(filename).recordForce(System.nanoTime() - begin);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("cannot force " + filename);
+        } finally {
+            // 刷盘失败时恢复写入标记，下次force仍会刷盘
+            if (dirty && !forced) {
+                h.markDirty();
+            }
+            release(h);
+        }
+    }
+
+    /**
+     * 将所有打开文件已写入的块刷到磁盘
+     */
+    public void forceAll() {
+        for (String filename : handles.openFiles()) {
+            force(filename);
+        }
+    }
+
+    /**
+     * 关闭filename文件，释放其文件描述符；文件正被使用时不做任何事
+     */
+    public void closeFile(String filename) {
+        try {
+            handles.close(filename);
+        } catch (IOException e) {
+            throw new RuntimeException("cannot close " + filename);
+        }
+    }
+
+    /**
+     * 删除filename文件(如用完的临时表)。文件正被使用时立即删除, 进行中的读写在最后一次使用结束后关闭其通道
+     */
+    public void deleteFile(String filename) {
         try {
-            RandomAccessFile f = getFile(blk.filename());
-            f.seek(blk.blknum() * blocksize);
-            f.write(b);
+            sizes.remove(filename);
+            if (!handles.delete(filename)) {
+                File f = new File(dbDirectory, filename);
+                int generation = CompressedFile.generation(f);
+                if (generation > 0) {
+                    CompressedFile.dataFile(f, generation).delete();
+                    CompressedFile.mapFile(f).delete();
+                }
+                f.delete();
+                new File(f.getPath() + FileExtent.EOF_SUFFIX).delete();
+            }
         } catch (IOException e) {
-            throw new RuntimeException("cannot append block" + blk);
+            throw new RuntimeException("cannot delete " + filename);
         }
-        return blk;
+    }
+
+    /**
+     * 将filename文件重写为压缩格式，已是压缩格式时重写以回收改写块留下的空洞。
+     * 适用于很少改写的冷数据表，调用时该文件不能被其他线程使用。
+     * 新文件写完并刷盘后，以重命名块映射文件作为切换点，之后删除旧文件
+     */
+    public void compress(String filename) {
+        File dbTable = new File(dbDirectory, filename);
+        File tmpMap = CompressedFile.mapFile(new File(dbDirectory, "temp.compress." + filename));
+        File data = null;
+        try {
+            int generation = CompressedFile.generation(dbTable) + 1;
+            data = CompressedFile.dataFile(dbTable, generation);
+            int blocks = length(filename);
+            tmpMap.delete();
+            try (FileChannel fc = FileChannel.open(data.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                CompressedFile cf = new CompressedFile(tmpMap, fc, blocksize, generation, null);
+                Page p = newPage();
+                for (int b = 0; b < blocks; b++) {
+                    read(new BlockId(filename, b), p);
+                    cf.write(b, p.contents());
+                }
+                cf.extendTo(blocks);
+                cf.persist(true);
+            }
+            force(filename);
+            handles.close(filename);
+            if (handles.get(filename) != null) {
+                throw new IllegalStateException(filename + " is in use");
+            }
+            Files.move(tmpMap.toPath(), CompressedFile.mapFile(dbTable).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            data = null;
+            CompressedFile.removeStale(dbTable, generation);
+        } catch (IOException e) {
+            throw new RuntimeException("cannot compress " + filename);
+        } finally {
+            if (data != null) {
+                tmpMap.delete();
+                data.delete();
+            }
+        }
+    }
+
+    /**
+     * filename文件是否为压缩格式
+     */
+    public boolean isCompressed(String filename) {
+        try {
+            return CompressedFile.generation(new File(dbDirectory, filename)) > 0;
+        } catch (IOException e) {
+            throw new RuntimeException("cannot access " + filename);
+        }
+    }
+
+    /**
+     * 设置最多同时打开的文件数
+     */
+    public void setMaxOpenFiles(int maxOpenFiles) {
+        handles.setCapacity(Math.max(1, maxOpenFiles));
+    }
+
+    public int maxOpenFiles() {
+        return handles.capacity();
+    }
+
+    /**
+     * 当前打开的文件数
+     */
+    public int openFileCount() {
+        return handles.size();
+    }
+
+    public long handleCacheHits() {
+        return handles.hits();
+    }
+
+    public long handleCacheMisses() {
+        return handles.misses();
+    }
+
+    public long handleCacheEvictions() {
+        return handles.evictions();
+    }
+
+    /**
+     * 各文件I/O统计的快照, 按文件名排序
+     */
+    public Map<String, FileStats.Snapshot> ioStats() {
+        Map<String, FileStats.Snapshot> result = new TreeMap<>();
+        for (Map.Entry<String, FileStats> e : stats.entrySet()) {
+            result.put(e.getKey(), e.getValue().snapshot());
+        }
+        return result;
+    }
+
+    /**
+     * filename文件I/O统计的快照, 文件从未被访问时返回null
+     */
+    public FileStats.Snapshot ioStats(String filename) {
+        FileStats s = stats.get(filename);
+        return s == null ? null : s.snapshot();
+    }
+
+    /**
+     * 清空所有文件的I/O统计
+     */
+    public void resetIoStats() {
+        stats.clear();
+    }
+
+    /**
+     * 开启或关闭I/O统计, 关闭时读写路径上不再读取时钟
+     */
+    public void setStatsEnabled(boolean statsEnabled) {
+        this.statsEnabled = statsEnabled;
+    }
+
+    public boolean statsEnabled() {
+        return statsEnabled;
+    }
+
+    /**
+     * 将统计信息注册到平台MBeanServer, 名称为dawndb:type=FileMgr,directory=数据库目录。
+     * 同一目录已注册时替换原有的注册
+     */
+    public ObjectName registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("dawndb:type=FileMgr,directory="
+                    + ObjectName.quote(dbDirectory.getAbsolutePath()));
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(new MXBeanImpl(), FileMgrMXBean.class, true), name);
+            return name;
+        } catch (JMException e) {
+            throw new RuntimeException("cannot register MBean for " + dbDirectory);
+        }
+    }
+
+    public Durability durability() {
+        return durability;
+    }
+
+    public void setDurability(Durability durability) {
+        this.durability = durability;
+    }
+
+    public int extentSize() {
+        return extentBlocks;
+    }
+
+    /**
+     * 设置文件每次增长时预分配的块数
+     */
+    public void setExtentSize(int extentBlocks) {
+        this.extentBlocks = Math.max(1, extentBlocks);
     }
 
     public boolean isNew() {
         return isNew;
     }
 
+    /**
+     * 直接I/O要求的缓冲区地址对齐单位, 不使用直接I/O时为1
+     */
+    public int alignment() {
+        return alignment;
+    }
+
     public int blockSize() {
         return blocksize;
     }
 
+    public StorageMode storageMode() {
+        return mode;
+    }
+
+    /**
+     * 文件filename是否存在，不会像{@link #length}那样创建文件
+     */
+    public boolean exists(String filename) {
+        File f = new File(dbDirectory, filename);
+        return sizes.containsKey(filename) || f.exists() || CompressedFile.mapFile(f).exists();
+    }
+
     /**
-     * 获取文件filename所占的物理块个数
+     * 获取文件filename的逻辑块数(不含预分配但未使用的块)
+     * 除首次访问文件外，只读取内存中的大小表
      */
     public int length(String filename) {
-        try {
-            RandomAccessFile f = getFile(filename);
-            return (int)(f.length() / blocksize);
+        AtomicInteger size = sizes.get(filename);
+        if (size != null) {
+            return size.get();
         }
-        catch (IOException e) {
+        FileHandle h = null;
+        try {
+            h = handles.acquire(filename);
+            return h.extent().length();
+        } catch (IOException e) {
             throw new RuntimeException("cannot access " + filename);
+        } finally {
+            release(h);
         }
     }
 
     /**
-     * 获得filename文件指针
+     * 打开filename文件，由句柄缓存在未命中时调用
      */
-    private RandomAccessFile getFile(String filename) throws IOException {
-        RandomAccessFile f = openFiles.get(filename);
-        if (f == null) {
-            File dbTable = new File(dbDirectory, filename);
-            f = new RandomAccessFile(dbTable, "rws");
-            openFiles.put(filename, f);
+    FileHandle openHandle(String filename) throws IOException {
+        File dbTable = new File(dbDirectory, filename);
+        int generation = CompressedFile.generation(dbTable);
+        if (generation > 0) {
+            CompressedFile.removeStale(dbTable, generation);
+            File data = CompressedFile.dataFile(dbTable, generation);
+            FileChannel fc = FileChannel.open(data.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            CompressedFile cf = new CompressedFile(CompressedFile.mapFile(dbTable), fc, blocksize,
+                    generation, sizes.get(filename));
+            sizes.putIfAbsent(filename, cf.size());
+            return new FileHandle(filename, data, fc, cf);
+        }
+        FileChannel fc = FileChannel.open(dbTable.toPath(), openOptions());
+        FileExtent extent = new FileExtent(dbTable, fc, blocksize, sizes.get(filename));
+        sizes.putIfAbsent(filename, extent.size());
+        return new FileHandle(filename, dbTable, fc, extent);
+    }
+
+    /**
+     * 关闭句柄，由句柄缓存在淘汰或删除文件时调用
+     */
+    void closeHandle(FileHandle h) throws IOException {
+        h.close(durability != Durability.NONE);
+    }
+
+    /**
+     * 获取filename文件的统计对象, 只在文件首次被访问时创建
+     */
+    private FileStats stats(String filename) {
+        FileStats s = stats.get(filename);
+        return s != null ? s : stats.computeIfAbsent(filename, FileStats::new);
+    }
+
+    private void release(FileHandle h) {
+        if (h == null) {
+            return;
+        }
+        try {
+            handles.release(h);
+        } catch (IOException e) {
+            throw new RuntimeException("cannot close " + h.filename());
+        }
+    }
+
+    private OpenOption[] openOptions() {
+        if (mode == StorageMode.DIRECT) {
+            return new OpenOption[] {StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, ExtendedOpenOption.DIRECT};
+        }
+        return new OpenOption[] {StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE};
+    }
+
+    private class MXBeanImpl implements FileMgrMXBean {
+
+        @Override
+        public Map<String, FileStats.Snapshot> getFileStats() {
+            return ioStats();
+        }
+
+        @Override
+        public int getOpenFiles() {
+            return openFileCount();
+        }
+
+        @Override
+        public long getHandleCacheHits() {
+            return handleCacheHits();
+        }
+
+        @Override
+        public long getHandleCacheMisses() {
+            return handleCacheMisses();
+        }
+
+        @Override
+        public long getHandleCacheEvictions() {
+            return handleCacheEvictions();
         }
-        return f;
     }
 
 }
@@ -0,0 +1,28 @@
+package dawndb.file;
+
+import java.util.Map;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 16:45
+ * @Version: 1.0
+ * @Description:
+ * 通过JMX导出的文件管理器统计信息, 由{@link FileMgr#registerMBean()}注册
+ */
+
+
+public interface FileMgrMXBean {
+
+    /**
+     * 各文件的I/O统计, 键为文件名
+     */
+    Map<String, FileStats.Snapshot> getFileStats();
+
+    int getOpenFiles();
+
+    long getHandleCacheHits();
+
+    long getHandleCacheMisses();
+
+    long getHandleCacheEvictions();
+}
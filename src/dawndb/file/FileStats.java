@@ -0,0 +1,183 @@
+package dawndb.file;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 16:30
+ * @Version: 1.0
+ * @Description:
+ * 单个文件的I/O统计：读、写、追加、刷盘的次数，读写的字节数，以及读、写、刷盘的延迟直方图。
+ * 由FileMgr在每次I/O后记录，通过{@link #snapshot()}获取某一时刻的统计值。
+ */
+
+
+public class FileStats {
+
+    private String filename;
+    private LongAdder reads = new LongAdder();
+    private LongAdder writes = new LongAdder();
+    private LongAdder appends = new LongAdder();
+    private LongAdder forces = new LongAdder();
+    private LongAdder bytesRead = new LongAdder();
+    private LongAdder bytesWritten = new LongAdder();
+    private LatencyHistogram readLatency = new LatencyHistogram();
+    private LatencyHistogram writeLatency = new LatencyHistogram();
+    private LatencyHistogram forceLatency = new LatencyHistogram();
+
+    FileStats(String filename) {
+        this.filename = filename;
+    }
+
+    void recordRead(int bytes, long nanos) {
+        recordRead(1, bytes, nanos);
+    }
+
+    /**
+     * 记录一次读操作，批量读时一次读入多个块
+     */
+    void recordRead(int blocks, long bytes, long nanos) {
+        reads.add(blocks);
+        bytesRead.add(bytes);
+        readLatency.record(nanos);
+    }
+
+    /**
+     * 记录一次写操作，批量写时一次写入多个块
+     */
+    void recordWrite(int blocks, long bytes, long nanos) {
+        writes.add(blocks);
+        bytesWritten.add(bytes);
+        writeLatency.record(nanos);
+    }
+
+    void recordAppend() {
+        appends.increment();
+    }
+
+    void recordForce(long nanos) {
+        forces.increment();
+        forceLatency.record(nanos);
+    }
+
+    public LatencyHistogram readLatency() {
+        return readLatency;
+    }
+
+    public LatencyHistogram writeLatency() {
+        return writeLatency;
+    }
+
+    public LatencyHistogram forceLatency() {
+        return forceLatency;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /**
+     * 某一时刻的统计值，延迟单位为纳秒。getter命名便于通过JMX以CompositeData形式导出
+     */
+    public static class Snapshot {
+
+        private String filename;
+        private long reads, writes, appends, forces, bytesRead, bytesWritten;
+        private long readP50, readP99, readMax;
+        private long writeP50, writeP99, writeMax;
+        private long forceP50, forceP99, forceMax;
+
+        private Snapshot(FileStats s) {
+            filename = s.filename;
+            reads = s.reads.sum();
+            writes = s.writes.sum();
+            appends = s.appends.sum();
+            forces = s.forces.sum();
+            bytesRead = s.bytesRead.sum();
+            bytesWritten = s.bytesWritten.sum();
+            readP50 = s.readLatency.percentile(50);
+            readP99 = s.readLatency.percentile(99);
+            readMax = s.readLatency.max();
+            writeP50 = s.writeLatency.percentile(50);
+            writeP99 = s.writeLatency.percentile(99);
+            writeMax = s.writeLatency.max();
+            forceP50 = s.forceLatency.percentile(50);
+            forceP99 = s.forceLatency.percentile(99);
+            forceMax = s.forceLatency.max();
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public long getReads() {
+            return reads;
+        }
+
+        public long getWrites() {
+            return writes;
+        }
+
+        public long getAppends() {
+            return appends;
+        }
+
+        public long getForces() {
+            return forces;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public long getReadLatencyP50() {
+            return readP50;
+        }
+
+        public long getReadLatencyP99() {
+            return readP99;
+        }
+
+        public long getReadLatencyMax() {
+            return readMax;
+        }
+
+        public long getWriteLatencyP50() {
+            return writeP50;
+        }
+
+        public long getWriteLatencyP99() {
+            return writeP99;
+        }
+
+        public long getWriteLatencyMax() {
+            return writeMax;
+        }
+
+        public long getForceLatencyP50() {
+            return forceP50;
+        }
+
+        public long getForceLatencyP99() {
+            return forceP99;
+        }
+
+        public long getForceLatencyMax() {
+            return forceMax;
+        }
+
+        @Override
+        public String toString() {
+            return "[File: " + filename + ", reads: " + reads + ", writes: " + writes
+                    + ", appends: " + appends + ", forces: " + forces
+                    + ", bytes read: " + bytesRead + ", bytes written: " + bytesWritten
+                    + ", read p50/p99/max(ns): " + readP50 + "/" + readP99 + "/" + readMax
+                    + ", write p50/p99/max(ns): " + writeP50 + "/" + writeP99 + "/" + writeMax
+                    + ", force p50/p99/max(ns): " + forceP50 + "/" + forceP99 + "/" + forceMax + "]";
+        }
+    }
+}
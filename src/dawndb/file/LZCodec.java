@@ -0,0 +1,150 @@
+package dawndb.file;
+
+import java.util.Arrays;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 17:10
+ * @Version: 1.0
+ * @Description:
+ * LZ77系列的块压缩算法(格式与LZ4块格式相似)，用于压缩文件中的单个块。
+ * 压缩结果由若干序列组成，每个序列为：
+ * 标记字节(高4位字面量长度, 低4位匹配长度-4, 15表示后续有扩展长度字节) 字面量 2字节偏移(小端) 匹配长度扩展字节
+ * 最后一个序列只有字面量。匹配通过4字节哈希表查找，压缩和解压都不分配内存。
+ */
+
+
+final class LZCodec {
+
+    static final int HASH_BITS = 12;
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xFFFF;
+
+    private LZCodec() {
+    }
+
+    /**
+     * 压缩src的前srcLen个字节到dst
+     * @param table 大小为1 << HASH_BITS的哈希表, 由调用者提供以便重用
+     * @return 压缩后的长度; 压缩结果超过dstLimit时返回-1
+     */
+    static int compress(byte[] src, int srcLen, byte[] dst, int dstLimit, int[] table) {
+        Arrays.fill(table, -1);
+        int sp = 0;
+        int dp = 0;
+        int anchor = 0;
+        while (sp <= srcLen - MIN_MATCH) {
+            int seq = readInt(src, sp);
+            int h = (seq * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[h];
+            table[h] = sp;
+            if (ref < 0 || sp - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+                sp++;
+                continue;
+            }
+            int len = MIN_MATCH;
+            while (sp + len < srcLen && src[ref + len] == src[sp + len]) {
+                len++;
+            }
+            dp = writeSequence(src, anchor, sp - anchor, sp - ref, len, dst, dp, dstLimit);
+            if (dp < 0) {
+                return -1;
+            }
+            sp += len;
+            anchor = sp;
+        }
+        return writeSequence(src, anchor, srcLen - anchor, 0, 0, dst, dp, dstLimit);
+    }
+
+    /**
+     * 将src的前srcLen个字节解压到dst
+     * @param dstLen 解压后应有的长度
+     */
+    static void decompress(byte[] src, int srcLen, byte[] dst, int dstLen) {
+        int sp = 0;
+        int dp = 0;
+        try {
+            while (sp < srcLen) {
+                int token = src[sp++] & 0xFF;
+                int lit = token >>> 4;
+                if (lit == 15) {
+                    int b;
+                    do {
+                        b = src[sp++] & 0xFF;
+                        lit += b;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, sp, dst, dp, lit);
+                sp += lit;
+                dp += lit;
+                if (sp >= srcLen) {
+                    break;
+                }
+                int offset = (src[sp] & 0xFF) | (src[sp + 1] & 0xFF) << 8;
+                sp += 2;
+                int len = token & 15;
+                if (len == 15) {
+                    int b;
+                    do {
+                        b = src[sp++] & 0xFF;
+                        len += b;
+                    } while (b == 255);
+                }
+                len += MIN_MATCH;
+                // 匹配可能与输出重叠, 逐字节复制
+                for (int i = 0; i < len; i++) {
+                    dst[dp + i] = dst[dp - offset + i];
+                }
+                dp += len;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalStateException("corrupt compressed block");
+        }
+        if (dp != dstLen) {
+            throw new IllegalStateException("corrupt compressed block");
+        }
+    }
+
+    /**
+     * 写入一个序列, len为0时只有字面量
+     * @return 写入后的位置, 超过dstLimit时返回-1
+     */
+    private static int writeSequence(byte[] src, int litStart, int lit, int offset, int len,
+                                     byte[] dst, int dp, int dstLimit) {
+        int matchLen = len - MIN_MATCH;
+        // 标记、扩展长度、偏移的最大字节数
+        if (dp + 1 + lit / 255 + 1 + lit + 2 + matchLen / 255 + 1 > dstLimit) {
+            return -1;
+        }
+        int tokenPos = dp++;
+        int token = Math.min(lit, 15) << 4;
+        if (lit >= 15) {
+            dp = writeLength(lit - 15, dst, dp);
+        }
+        System.arraycopy(src, litStart, dst, dp, lit);
+        dp += lit;
+        if (len > 0) {
+            token |= Math.min(matchLen, 15);
+            dst[dp++] = (byte) offset;
+            dst[dp++] = (byte) (offset >>> 8);
+            if (matchLen >= 15) {
+                dp = writeLength(matchLen - 15, dst, dp);
+            }
+        }
+        dst[tokenPos] = (byte) token;
+        return dp;
+    }
+
+    private static int writeLength(int n, byte[] dst, int dp) {
+        while (n >= 255) {
+            dst[dp++] = (byte) 255;
+            n -= 255;
+        }
+        dst[dp++] = (byte) n;
+        return dp;
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,96 @@
+package dawndb.file;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 16:10
+ * @Version: 1.0
+ * @Description:
+ * 延迟直方图(HDR风格的对数-线性分桶)。
+ * 每个2的幂区间再等分为8个子桶，相对误差不超过1/8；
+ * 记录一个值只需若干次原子加法，不分配内存，可在I/O路径上常开。
+ *
+ * counts: 各桶的计数
+ * count/sum/max: 记录的值的个数、总和、最大值
+ */
+
+
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT / 2;
+    private static final int NUM_BUCKETS = (64 - SUB_BITS + 1) * HALF_COUNT + HALF_COUNT;
+
+    private AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+    private AtomicLong count = new AtomicLong();
+    private AtomicLong sum = new AtomicLong();
+    private AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个非负值(纳秒)
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) {
+            m = max.get();
+        }
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * 返回第p百分位(0~100)的近似值，即该值所在桶的上界
+     */
+    public long percentile(double p) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * p / 100.0);
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank && seen > 0) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * 值小于SUB_COUNT时单独成桶；否则按最高位所在的2的幂区间及其后3位确定桶
+     */
+    private static int bucket(long value) {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+        return shift * HALF_COUNT + (int) (value >>> shift);
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / HALF_COUNT - 1;
+        long sub = bucket % HALF_COUNT + HALF_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,123 @@
+package dawndb.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 10:35
+ * @Version: 1.0
+ * @Description:
+ * 以内存映射方式访问的文件。
+ * 文件被划分为若干固定大小的段，每段单独映射；映射只覆盖文件已有的部分，
+ * 文件通过append增长后，最后一段在下次访问时重新映射。
+ *
+ * fc: 文件通道
+ * blocksize: 块大小
+ * segmentBlocks: 每段包含的块数
+ * segments: 已映射的段, 下标为段号
+ */
+
+
+class MappedFile {
+
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    private FileChannel fc;
+    private int blocksize;
+    private int segmentBlocks;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    MappedFile(FileChannel fc, int blocksize) {
+        this.fc = fc;
+        this.blocksize = blocksize;
+        segmentBlocks = (int) Math.max(1, SEGMENT_BYTES / blocksize);
+    }
+
+    /**
+     * 将块blknum的内容拷贝到dst中
+     * @return 块不在文件范围内时返回false
+     */
+    boolean read(int blknum, ByteBuffer dst) throws IOException {
+        MappedByteBuffer seg = segment(blknum);
+        if (seg == null) {
+            return false;
+        }
+        dst.put(0, seg, offset(blknum), blocksize);
+        return true;
+    }
+
+    /**
+     * 将src的内容拷贝到块blknum所在的映射区域
+     * @return 块不在文件范围内时返回false
+     */
+    boolean write(int blknum, ByteBuffer src) throws IOException {
+        MappedByteBuffer seg = segment(blknum);
+        if (seg == null) {
+            return false;
+        }
+        seg.put(offset(blknum), src, 0, blocksize);
+        return true;
+    }
+
+    /**
+     * 将块blknum所在映射区域的修改刷到磁盘
+     */
+    void force(int blknum) throws IOException {
+        MappedByteBuffer seg = segment(blknum);
+        if (seg != null) {
+            seg.force(offset(blknum), blocksize);
+        }
+    }
+
+    /**
+     * 将所有映射段的修改刷到磁盘
+     */
+    void force() {
+        for (MappedByteBuffer seg : segments) {
+            if (seg != null) {
+                seg.force();
+            }
+        }
+    }
+
+    private int offset(int blknum) {
+        return (blknum % segmentBlocks) * blocksize;
+    }
+
+    /**
+     * 返回覆盖块blknum的映射段，必要时映射新段或重新映射增长后的最后一段
+     */
+    private MappedByteBuffer segment(int blknum) throws IOException {
+        int segnum = blknum / segmentBlocks;
+        int limit = offset(blknum) + blocksize;
+        MappedByteBuffer[] segs = segments;
+        if (segnum < segs.length && segs[segnum] != null && segs[segnum].capacity() >= limit) {
+            return segs[segnum];
+        }
+        synchronized (this) {
+            segs = segments;
+            if (segnum < segs.length && segs[segnum] != null && segs[segnum].capacity() >= limit) {
+                return segs[segnum];
+            }
+            long start = (long) segnum * segmentBlocks * blocksize;
+            long size = Math.min(fc.size() - start, (long) segmentBlocks * blocksize);
+            size -= size % blocksize;
+            if (size < limit) {
+                return null;
+            }
+            MappedByteBuffer seg = fc.map(FileChannel.MapMode.READ_WRITE, start, size);
+            if (segnum >= segs.length) {
+                segs = Arrays.copyOf(segs, segnum + 1);
+            } else {
+                segs = segs.clone();
+            }
+            segs[segnum] = seg;
+            segments = segs;
+            return seg;
+        }
+    }
+}
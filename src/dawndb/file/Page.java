@@ -31,6 +31,26 @@ public class Page {
         bb = ByteBuffer.allocateDirect(blockSize);
     }
 
+    /**
+     * 创建一个起始地址按alignment对齐的页，用于直接I/O
+     * @param blockSize 块大小
+     * @param alignment 对齐单位, 2的幂
+     */
+    public Page(int blockSize, int alignment) {
+        bb = ByteBuffer.allocateDirect(blockSize + alignment)
+                .alignedSlice(alignment)
+                .limit(blockSize)
+                .slice();
+    }
+
+    /**
+     * 创建以bb为内容的页，用于从一大块内存中切出的页
+     * @param bb 容量为块大小的缓冲区
+     */
+    public Page(ByteBuffer bb) {
+        this.bb = bb;
+    }
+
     /**
      * 创建一个从 Java 数组获取内存的页面
      * @param b 字节数组
@@ -58,17 +78,31 @@ public class Page {
         bb.putInt(offset, n);
     }
 
+    /**
+     * 读取8个字节的数据
+     */
+    public long getLong(int offset) {
+        return bb.getLong(offset);
+    }
+
+    /**
+     * 写入8个字节的数据
+     */
+    public void setLong(int offset, long n) {
+        bb.putLong(offset, n);
+    }
+
     /**
      * 获取offset后的所有字节
+     * 使用绝对位置读写，不改变缓冲区指针，多个线程可以同时读写页的不同部分
      * @param offset 起始位置
      * @return
      */
     public byte[] getBytes(int offset) {
-        bb.position(offset);
-        int length = bb.getInt();
+        int length = bb.getInt(offset);
         byte[] b = new byte[length];
         // 将缓冲区内容输出到b数组
-        bb.get(b);
+        bb.get(offset + Integer.BYTES, b);
         return b;
     }
 
@@ -76,9 +110,8 @@ public class Page {
      * 设置缓冲区数据
      */
     public void setBytes(int offset, byte[] b) {
-        bb.position(offset);
-        bb.putInt(b.length);
-        bb.put(b);
+        bb.putInt(offset, b.length);
+        bb.put(offset + Integer.BYTES, b);
     }
 
     /**
@@ -105,6 +138,13 @@ public class Page {
         return Integer.BYTES + (strlen * (int)bytesPreChar);
     }
 
+    /**
+     * 将页p的内容复制到本页
+     */
+    public void copyFrom(Page p) {
+        bb.put(0, p.bb, 0, Math.min(bb.capacity(), p.bb.capacity()));
+    }
+
     /**
      * 重置缓冲区指针
      */
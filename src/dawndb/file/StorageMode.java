@@ -0,0 +1,19 @@
+package dawndb.file;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 10:20
+ * @Version: 1.0
+ * @Description:
+ * 文件管理器访问磁盘块的方式，在创建FileMgr时为整个数据库目录指定。
+ * STANDARD: 通过文件通道的定位读写访问块
+ * MMAP: 将文件按段映射到内存，读写块时直接与映射区域拷贝，适合能放入内存的读多写少的表
+ * DIRECT: 以直接I/O方式打开文件，绕过操作系统页缓存，块大小须为文件系统块大小的整数倍；
+ *         文件系统不支持时退回STANDARD
+ */
+
+public enum StorageMode {
+    STANDARD,
+    MMAP,
+    DIRECT
+}
@@ -1,6 +1,5 @@
 package dawndb.log;
 
-import dawndb.file.BlockId;
 import dawndb.file.FileMgr;
 import dawndb.file.Page;
 
@@ -19,29 +18,39 @@ import java.util.Iterator;
 public class LogIterator implements Iterator<byte[]> {
 
     private FileMgr fm;
-    private BlockId blk;
+    private LogSegments segments;
+    private int blknum;
     private Page p;
     private int currentpos;
     private int boundary;
 
     /**
      * 创建一个日志记录迭代器
-     * 位于最后一个日志记录之后
+     * 位于逻辑块blknum中最后一个日志记录之后
      */
-    public LogIterator(FileMgr fm, BlockId blk) {
+    LogIterator(FileMgr fm, LogSegments segments, int blknum) {
         this.fm = fm;
-        this.blk = blk;
+        this.segments = segments;
         byte[] b = new byte[fm.blockSize()];
         p = new Page(b);
-        moveToBlock(blk);
+        moveToBlock(blknum);
     }
 
     /**
-     * 确定当前日志记录是否是日志文件中最早的记录
+     * 创建一个日志记录迭代器
+     * 位于块blk中位置pos处的记录之前，第一次调用next返回该记录
+     */
+    LogIterator(FileMgr fm, LogSegments segments, int blknum, int pos) {
+        this(fm, segments, blknum);
+        currentpos = pos;
+    }
+
+    /**
+     * 确定当前日志记录是否是保留的日志中最早的记录
      */
     @Override
     public boolean hasNext() {
-        return currentpos < fm.blockSize() || blk.blknum() > 0;
+        return currentpos < fm.blockSize() || blknum > segments.firstBlock();
     }
 
     /**
@@ -51,8 +60,7 @@ public class LogIterator implements Iterator<byte[]> {
     @Override
     public byte[] next() {
         if (currentpos == fm.blockSize()) {
-            blk = new BlockId(blk.filename(), blk.blknum()-1);
-            moveToBlock(blk);
+            moveToBlock(blknum - 1);
         }
         byte[] rec = p.getBytes(currentpos);
         currentpos += Integer.BYTES + rec.length;
@@ -60,11 +68,12 @@ public class LogIterator implements Iterator<byte[]> {
     }
 
     /**
-     * 移动到指定的日志块
+     * 移动到指定的逻辑日志块
      * 并将其定位在该块中的第一条记录
      */
-    public void moveToBlock(BlockId blk) {
-        fm.read(blk, p);
+    private void moveToBlock(int blknum) {
+        this.blknum = blknum;
+        fm.read(segments.block(blknum), p);
         boundary = p.getInt(0);
         currentpos = boundary;
     }
@@ -4,7 +4,15 @@ import dawndb.file.BlockId;
 import dawndb.file.FileMgr;
 import dawndb.file.Page;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
@@ -13,76 +21,324 @@ import java.util.Iterator;
  * @Version: 1.0
  * @Description:
  * 内存页内容：最后写入记录的位置(boundary) + 日志内容(从右向左存储, 日志内容包括：字节数+内容)
+ * 日志缓冲区是由若干页组成的环，第n块日志使用第n % ring.length页。
+ * 追加者只写当前页(块号currentBlk)，写满后封页并换到环中的下一页，不做任何I/O；
+ * 已封的页由日志写线程在后台用一次聚集写按顺序写出并刷盘，写出后该页才能被重新使用，
+ * 环中没有空闲页时追加者才需要等待。
+ * LSN是记录在日志流中的字节偏移: 第blk块中位置为recpos的记录的LSN为blk * blockSize + (blockSize - recpos)，
+ * 即日志流中到该记录为止已使用的字节数(每块的头部计入前一块)。LSN单调递增，重启后由日志文件的长度和
+ * 最后一块的boundary恢复，不会从0重新开始，并且可以直接换算出记录所在的块和位置(见iterator(long))。
+ * 无锁追加：当前页的块号与boundary打包在一个long中(高32位块号, 低32位boundary)，LSN由二者算出。
+ * 追加者用CAS预留空间(也就确定了LSN)，预留后各自并行地把记录复制到预留的位置，
+ * 然后按预留的先后发布：等前一个预留发布后再发布自己的，因此已发布的部分总是页中已填满的连续前缀。
+ * 页写满时追加者在锁内封页(boundary置为0，使其他追加者进入慢路径等待锁)，等所有已预留的记录发布后换页。
+ * 同一时间只有一个线程(flushing)写出日志，写出的顺序即块号的顺序，部分写满的页先写出的副本总会被之后写出的整页覆盖。
+ * flush(lsn)只等待lsn所在的页持久化：lsn在已封的页中时只写出已封的页，在当前页中时才写出当前页已发布部分的副本。
+ * 组提交：并发调用flush的线程中只有一个(leader)写出日志并刷盘，其余线程等待它完成。
+ * leader在锁内确定要写出的页，写出和刷盘时不持有锁，期间其他线程可以继续追加记录，
+ * 新到达的flush请求等待当前一次刷盘结束后由下一个leader一起写出，因此N个并发提交只需远少于N次刷盘。
+ * 设置了最大组延迟时，写出当前页的leader先等待更多的提交者加入(至多maxGroupDelay，或等待者达到maxGroupSize)。
+ * 日志分段存放(见LogSegments)。事务开始前用retain登记当时的日志末尾，结束后release；
+ * checkpoint记录检查点的位置，并删除检查点之前、且早于所有登记位置的段，使日志占用的磁盘空间有界。
  * fm: 负责读写日志块至磁盘
- * logfile: 日志文件
- * logpage: 日志文件页
- * currentblk: 当前应读写的日志文件块
- * latestLSN: 最新的日志序列号(LSN)
- * lastSavedLSN: 已写入磁盘的最新的日志序列号
+ * segments: 日志的段与控制文件
+ * ring: 日志缓冲区的页
+ * flushpage: 写出当前页时使用的副本
+ * currentBlk: 当前页的块号
+ * writtenBlk: 块号小于它的页都已写出并刷盘, 所在的页可以重新使用
+ * reserved: 当前页的块号与已预留的boundary
+ * published: 当前页的块号与已发布(记录已复制完成)的boundary
+ * sealedLSN: 已封的页中最大的日志序列号
+ * lastSavedLSN: 该LSN及之前的日志都已写入磁盘
+ * lock: 保护换页、写出以及以下状态
+ * flushDone: 一次写出结束时发出信号
+ * pagesSealed: 有页被封时发出信号, 唤醒日志写线程
+ * groupFull: 等待的线程数达到maxGroupSize时发出信号
+ * flushing: 是否有线程正在写出日志
+ * waiting: 等待刷盘的线程数(不含leader)
+ * maxGroupDelay: leader写出前等待其他提交者的最长时间(纳秒), 为0时不等待
+ * maxGroupSize: 一组的提交者达到该数目时leader不再等待
+ * flushRequests/flushes: 需要等待刷盘的flush调用次数、实际写出的次数
+ * retained: 活动事务登记的LSN及登记次数, 这些LSN之后的日志不会被删除
+ * failure: 写出或刷盘失败的原因。失败后不再重试写出，等待中的追加者和刷新者以及之后的调用都抛出异常
+ * running: 日志是否未关闭, 关闭后不能再追加记录
+ * writer: 日志写线程
+ * DEFAULT_BUFFER_SIZE: 默认的日志缓冲区字节数
+ * DEFAULT_SEGMENT_SIZE: 新建日志默认的段字节数
+ * SPINS: 等待前一个预留发布时先自旋的次数, 之后让出处理器
  */
 
 
 public class LogMgr {
 
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    public static final int DEFAULT_SEGMENT_SIZE = 16 << 20;
+    private static final int SPINS = 100;
+
     private FileMgr fm;
-    private String logfile;
-    private Page logpage;
-    private BlockId currentblk;
-    private int latestLSN;
-    private int lastSavedLSN;
+    private LogSegments segments;
+    private Page[] ring;
+    private Page flushpage;
+    private volatile int currentBlk;
+    private int writtenBlk;
+    private AtomicLong reserved = new AtomicLong();
+    private AtomicLong published = new AtomicLong();
+    private volatile long sealedLSN;
+    private volatile long lastSavedLSN;
+    private ReentrantLock lock = new ReentrantLock();
+    private Condition flushDone = lock.newCondition();
+    private Condition pagesSealed = lock.newCondition();
+    private Condition groupFull = lock.newCondition();
+    private boolean flushing;
+    private int waiting;
+    private volatile long maxGroupDelay;
+    private volatile int maxGroupSize = Integer.MAX_VALUE;
+    private long flushRequests;
+    private long flushes;
+    private ConcurrentSkipListMap<Long, Integer> retained = new ConcurrentSkipListMap<>();
+    private volatile Throwable failure;
+    private volatile boolean running = true;
+    private Thread writer;
 
     public LogMgr(FileMgr fm, String logfile) {
+        this(fm, logfile, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize 日志缓冲区的字节数, 至少2页
+     */
+    public LogMgr(FileMgr fm, String logfile, int bufferSize) {
+        this(fm, logfile, bufferSize, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param bufferSize 日志缓冲区的字节数, 至少2页
+     * @param segmentSize 新建日志时每段的字节数, 至少1块; 日志已存在时使用创建时的段大小
+     */
+    public LogMgr(FileMgr fm, String logfile, int bufferSize, int segmentSize) {
         this.fm = fm;
-        this.logfile = logfile;
-        // 向内存中申请一块内存页
-        byte[] b = new byte[fm.blockSize()];
-        logpage = new Page(b);
-        // 获取文件logfile所占的物理块个数
-        int logsize = fm.length(logfile);
-        if (logsize == 0) {
-            // 若日志文件不存在
-            currentblk = appendNewBlock();
+        segments = new LogSegments(fm, logfile, segmentSize / fm.blockSize());
+        // 向内存中申请日志缓冲区
+        ring = new Page[Math.max(2, bufferSize / fm.blockSize())];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = fm.newPage();
+        }
+        flushpage = fm.newPage();
+        // 获取日志的逻辑块数
+        int logsize = segments.length();
+        if (logsize == segments.firstBlock()) {
+            // 若日志为空, 该块在第一次写出时才加入文件
+            currentBlk = logsize;
+            page(currentBlk).setInt(0, fm.blockSize());
         } else {
-            // 日志文件存在，则读入前一个块(前一个块未满)
-            currentblk = new BlockId(logfile, logsize-1);
-            fm.read(currentblk, logpage);
+            // 日志存在，则读入最后一块(最后一块未满)
+            currentBlk = logsize - 1;
+            fm.read(segments.block(currentBlk), page(currentBlk));
         }
+        writtenBlk = currentBlk;
+        long state = pack(currentBlk, page(currentBlk).getInt(0));
+        reserved.set(state);
+        published.set(state);
+        // 磁盘上已有的日志都已持久化
+        sealedLSN = lsn(state);
+        lastSavedLSN = lsn(state);
+        writer = new Thread(this::drain, "dawndb-logwriter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 设置组提交的最大延迟，为0时leader不等待，只合并它刷盘期间到达的请求
+     * @param micros 最大延迟(微秒)
+     */
+    public void setMaxGroupDelay(long micros) {
+        maxGroupDelay = TimeUnit.MICROSECONDS.toNanos(Math.max(0, micros));
     }
 
     /**
-     * 添加一条日志记录
+     * 设置一组的提交者数目上限，达到时leader不再等待最大延迟
+     */
+    public void setMaxGroupSize(int maxGroupSize) {
+        this.maxGroupSize = Math.max(1, maxGroupSize);
+    }
+
+    /**
+     * 日志缓冲区的页数
+     */
+    public int bufferPages() {
+        return ring.length;
+    }
+
+    /**
+     * 每段的块数
+     */
+    public int segmentBlocks() {
+        return segments.segmentBlocks();
+    }
+
+    /**
+     * 最早保留的段的编号
+     */
+    public int firstSegment() {
+        return segments.firstSegment();
+    }
+
+    /**
+     * 控制文件中记录的最近一次检查点的LSN, 没有检查点时为-1
+     */
+    public long checkpointLSN() {
+        return segments.checkpointLSN();
+    }
+
+    /**
+     * 需要等待刷盘的flush调用次数
+     */
+    public long flushRequests() {
+        lock.lock();
+        try {
+            return flushRequests;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 实际写出日志并刷盘的次数
+     */
+    public long flushes() {
+        lock.lock();
+        try {
+            return flushes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 添加一条日志记录，可由多个线程同时调用
      * 日志被从右向左存储，这样可以更好地被读
      * @param logrec
-     * @return 最新日志记录的序列号LSN
+     * @return 该日志记录的序列号LSN
+     * @throws IllegalStateException 日志已关闭
      */
-    public int append(byte[] logrec) {
-        // 获取当前内存页已用空间
-        int boundary = logpage.getInt(0);
+    public long append(byte[] logrec) {
         // 计算存储记录所需的字节数
-        int recsize = logrec.length;
-        int bytesneeded = recsize + Integer.BYTES;
+        int bytesneeded = logrec.length + Integer.BYTES;
+        if (bytesneeded > fm.blockSize() - Integer.BYTES) {
+            throw new IllegalArgumentException("log record of " + logrec.length + " bytes does not fit in a block");
+        }
+        checkOpen();
+        while (true) {
+            long state = reserved.get();
+            // 获取当前内存页已用空间
+            int boundary = boundary(state);
+            if (boundary - bytesneeded < Integer.BYTES) {
+                // 无法存储记录，封页并使用环中的下一页
+                nextBlock(bytesneeded);
+                continue;
+            }
+            // 日志内存页剩余空间可以存储日志
+            int recpos = boundary - bytesneeded;
+            long next = pack(blk(state), recpos);
+            // 预留成功时当前页不会被换掉，直到本次预留发布
+            if (reserved.compareAndSet(state, next)) {
+                page(blk(state)).setBytes(recpos, logrec);
+                publish(state, next);
+                return lsn(next);
+            }
+        }
+    }
 
-        if (boundary - bytesneeded < Integer.BYTES) {
-            // 无法存储记录，将当前页写回内存并使用下一块磁盘块
-            flush();
-            currentblk = appendNewBlock();
-            boundary = logpage.getInt(0);
+    /**
+     * 等到前一个预留(以state结束)发布后发布本次预留
+     */
+    private void publish(long state, long next) {
+        int spins = 0;
+        while (published.get() != state) {
+            if (++spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
         }
+        published.set(next);
+    }
 
-        // 日志内存页剩余空间可以存储日志
-        int recpos = boundary - bytesneeded;
-        logpage.setBytes(recpos, logrec);
-        logpage.setInt(0, recpos);
-        latestLSN += 1;
-        return latestLSN;
+    /**
+     * 当前页放不下bytesneeded字节时在锁内封页并换到环中的下一页。
+     * 下一页尚未写出时唤醒日志写线程并等待。其他线程已经换页时直接返回，由调用者重新预留。
+     * 日志已关闭或写出失败时抛出异常而不再等待
+     */
+    private void nextBlock(int bytesneeded) {
+        lock.lock();
+        try {
+            checkOpen();
+            long state = reserved.get();
+            while (boundary(state) - bytesneeded < Integer.BYTES && currentBlk + 1 - ring.length >= writtenBlk) {
+                pagesSealed.signal();
+                flushDone.awaitUninterruptibly();
+                checkOpen();
+                state = reserved.get();
+            }
+            if (boundary(state) - bytesneeded >= Integer.BYTES) {
+                return;
+            }
+            // 封页，其他追加者将在锁上等待；此后直到换页完成都持有锁
+            while (!reserved.compareAndSet(state, pack(blk(state), 0))) {
+                state = reserved.get();
+            }
+            // 等待已预留的记录复制完成
+            publish(state, state);
+            page(currentBlk).setInt(0, boundary(state));
+            sealedLSN = lsn(state);
+            page(currentBlk + 1).setInt(0, fm.blockSize());
+            currentBlk++;
+            long fresh = pack(currentBlk, fm.blockSize());
+            published.set(fresh);
+            reserved.set(fresh);
+            pagesSealed.signal();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * 将lsn号之前的日志记录写回磁盘
+     * 将lsn号之前的日志记录写回磁盘，只等待lsn所在的页持久化。
+     * 已有线程在写出时等待它完成；它写出的记录不包含lsn时，由等待的线程之一成为下一个leader
+     * @param lsn append返回的LSN, 小于0时不刷新
+     * @throws IllegalArgumentException lsn超出已追加的日志(例如来自其他日志), 否则将永远等不到它被写出
      */
-    public void flush(int lsn) {
-        if (lsn >= lastSavedLSN) {
-            flush();
+    public void flush(long lsn) {
+        if (lsn <= lastSavedLSN) {
+            return;
+        }
+        if (lsn > lsn(published.get())) {
+            throw new IllegalArgumentException("LSN " + lsn + " is not in the log");
+        }
+        lock.lock();
+        try {
+            if (lsn <= lastSavedLSN) {
+                return;
+            }
+            flushRequests++;
+            while (lsn > lastSavedLSN) {
+                checkFailure();
+                if (flushing) {
+                    waiting++;
+                    if (waiting + 1 >= maxGroupSize) {
+                        groupFull.signal();
+                    }
+                    try {
+                        flushDone.awaitUninterruptibly();
+                    } finally {
+                        waiting--;
+                    }
+                } else {
+                    writeOut(lsn > sealedLSN);
+                }
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -90,26 +346,241 @@ public class LogMgr {
      * 访问日记记录的迭代器
      */
     public Iterator<byte[]> iterator() {
-        flush();
-        return new LogIterator(fm, currentblk);
+        lock.lock();
+        try {
+            // 写出包括当前页在内的所有日志, 当前页没有记录时也写出, 使迭代器能从它开始读
+            while (flushing) {
+                flushDone.awaitUninterruptibly();
+            }
+            // 写出期间释放锁, 其他线程可能已换页, 从实际写出的页开始读
+            int blknum = writeOut(true);
+            return new LogIterator(fm, segments, blknum);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 从lsn处的记录开始倒序访问日志记录的迭代器，直接定位到记录所在的块，不需要从日志末尾遍历。
+     * 先将lsn之前的日志刷新到磁盘
+     * @param lsn append返回的LSN
+     */
+    public Iterator<byte[]> iterator(long lsn) {
+        if (lsn < 0 || lsn > lsn(published.get())) {
+            throw new IllegalArgumentException("LSN " + lsn + " is not in the log");
+        }
+        flush(lsn);
+        int blocksize = fm.blockSize();
+        return new LogIterator(fm, segments, (int) (lsn / blocksize), blocksize - (int) (lsn % blocksize));
+    }
+
+    /**
+     * 登记当前的日志末尾，在release之前不会删除它之后的日志。事务在写入开始记录之前调用
+     * @return 登记的LSN, 传给release
+     */
+    public long retain() {
+        // 在锁内读取日志末尾并登记，checkpoint计算保留位置时不会漏掉正在登记的事务
+        lock.lock();
+        try {
+            long lsn = lsn(published.get());
+            retained.merge(lsn, 1, Integer::sum);
+            return lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取消retain的登记
+     */
+    public void release(long lsn) {
+        retained.computeIfPresent(lsn, (k, n) -> n > 1 ? n - 1 : null);
+    }
+
+    /**
+     * 将检查点记录刷新到磁盘并记录在控制文件中，然后删除检查点和活动事务都不再需要的段。
+     * 检查点之前的段只有在所有更早登记的事务结束后才会被删除
+     * @param lsn 检查点记录的LSN
+     */
+    public void checkpoint(long lsn) {
+        flush(lsn);
+        long keep = lsn;
+        // 之后登记的事务得到的位置不早于检查点记录, 因此删除段时无需持有锁
+        lock.lock();
+        try {
+            Map.Entry<Long, Integer> oldest = retained.firstEntry();
+            if (oldest != null) {
+                keep = Math.min(keep, oldest.getKey());
+            }
+        } finally {
+            lock.unlock();
+        }
+        segments.checkpoint(lsn, (int) (keep / fm.blockSize()));
+    }
+
+    /**
+     * 删除日志logfile的所有段和控制文件，日志不能正在被使用
+     */
+    public static void delete(FileMgr fm, String logfile) {
+        new LogSegments(fm, logfile, 1).delete();
+    }
+
+    /**
+     * 写出所有日志并停止日志写线程
+     */
+    public void close() {
+        lock.lock();
+        try {
+            while (flushing) {
+                flushDone.awaitUninterruptibly();
+            }
+            try {
+                writeOut(true);
+            } finally {
+                running = false;
+                pagesSealed.signalAll();
+                flushDone.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 日志写线程：有已封的页且没有其他线程在写出时写出它们。写出失败时退出
+     */
+    private void drain() {
+        lock.lock();
+        try {
+            while (running && failure == null) {
+                if (!flushing && writtenBlk < currentBlk) {
+                    writeOut(false);
+                } else {
+                    pagesSealed.awaitUninterruptibly();
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            // 写出失败已由writeOut记录; 因其他原因退出时同样记录, 使等待换页的追加者不会无限等待
+            if (failure == null) {
+                failure = e;
+            }
+            flushDone.signalAll();
+            System.out.println("log writer: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * 申请新的磁盘块用于存储日志记录
+     * 日志已关闭或写出失败时抛出异常
      */
-    private BlockId appendNewBlock() {
-        BlockId blk = fm.append(logfile);
-        logpage.setInt(0, fm.blockSize());
-        fm.write(blk, logpage);
-        return blk;
+    private void checkOpen() {
+        checkFailure();
+        if (!running) {
+            throw new IllegalStateException("log is closed");
+        }
+    }
+
+    /**
+     * 写出失败后抛出异常
+     */
+    private void checkFailure() {
+        Throwable f = failure;
+        if (f != null) {
+            throw new RuntimeException("log write failed: " + f.getMessage(), f);
+        }
     }
 
     /**
-     * 将内存页内容写入磁盘
+     * 在持有锁且没有其他线程在写出时调用，用一次聚集写写出已封而未写出的页并刷盘。
+     * includeCurrent为true时先等待其他提交者加入，再一起写出当前页已发布部分的副本。
+     * 写出和刷盘期间释放锁。写出失败时记录失败并唤醒所有等待者
+     * @return 写出时当前页的块号, includeCurrent为true时该页已写出
      */
-    private void flush() {
-        fm.write(currentblk, logpage);
-        lastSavedLSN = latestLSN;
+    private int writeOut(boolean includeCurrent) {
+        checkFailure();
+        flushing = true;
+        boolean interrupted = false;
+        try {
+            if (includeCurrent) {
+                long remaining = maxGroupDelay;
+                try {
+                    while (remaining > 0 && waiting + 1 < maxGroupSize) {
+                        remaining = groupFull.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    // 不再等待，但中断状态在写出之后才恢复，避免中断正在读写的文件通道
+                    interrupted = true;
+                }
+            }
+            // 持有锁时不会换页; 已封的页在写出之前不会被重新使用, 无需复制
+            int end = currentBlk;
+            long target = sealedLSN;
+            List<BlockId> blocks = new ArrayList<>();
+            List<Page> pages = new ArrayList<>();
+            for (int blk = writtenBlk; blk < end; blk++) {
+                blocks.add(segments.block(blk));
+                pages.add(page(blk));
+            }
+            if (includeCurrent) {
+                long state = published.get();
+                flushpage.copyFrom(page(end));
+                flushpage.setInt(0, boundary(state));
+                blocks.add(segments.block(end));
+                pages.add(flushpage);
+                target = lsn(state);
+            }
+            lock.unlock();
+            try {
+                fm.writeBatch(blocks, pages);
+            } catch (RuntimeException | Error e) {
+                failure = e;
+                throw e;
+            } finally {
+                lock.lock();
+            }
+            writtenBlk = end;
+            lastSavedLSN = Math.max(lastSavedLSN, target);
+            flushes++;
+            return end;
+        } finally {
+            flushing = false;
+            flushDone.signalAll();
+            if (writtenBlk < currentBlk) {
+                pagesSealed.signal();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Page page(int blknum) {
+        return ring[blknum % ring.length];
+    }
+
+    private static long pack(int blk, int boundary) {
+        return ((long) blk << 32) | (boundary & 0xFFFFFFFFL);
+    }
+
+    private static int blk(long state) {
+        return (int) (state >>> 32);
+    }
+
+    /**
+     * state中最后一条记录的LSN，页中没有记录时为该页开始处的偏移
+     */
+    private long lsn(long state) {
+        return (long) blk(state) * fm.blockSize() + fm.blockSize() - boundary(state);
+    }
+
+    private static int boundary(long state) {
+        return (int) state;
     }
 
 }
@@ -0,0 +1,230 @@
+package dawndb.log;
+
+import dawndb.file.BlockId;
+import dawndb.file.FileMgr;
+import dawndb.file.Page;
+
+import java.util.zip.CRC32;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 2:30
+ * @Version: 1.0
+ * @Description:
+ * 日志段与控制文件。日志在逻辑上是一串连续编号的块，按每segmentBlocks块一个段存放在文件
+ * logfile.000000、logfile.000001…中，第n块位于第n / segmentBlocks段的第n % segmentBlocks块，
+ * 因此LSN(日志流中的字节偏移)不受分段影响。
+ * 控制文件logfile.ctl记录段的大小、最早保留的段和最近一次检查点的LSN。
+ * 控制文件有两个槽(第0、1块)，每次更新写入较旧的槽并刷盘，槽中带有版本号和CRC32，
+ * 读取时取校验通过且版本号最大的槽，写到一半崩溃时仍能读到上一次的内容。
+ * 检查点之后，检查点和最早的活动事务都不再需要的段先从控制文件中除去，再被删除；
+ * 删除前崩溃留下的段在下次打开时删除。
+ * 分段之前的日志是单个文件logfile。打开时若只有该文件而没有控制文件，将它的各块依次复制为逻辑块0、1…，
+ * 刷盘后写入控制文件，最后删除原文件；复制中途崩溃时控制文件尚未写入，下次打开重新复制。
+ *
+ * fm: 文件管理器
+ * logfile: 日志名, 各段和控制文件以它为前缀
+ * segmentBlocks: 每段的块数, 创建日志时确定, 之后以控制文件为准
+ * firstSegment: 最早保留的段
+ * checkpointLSN: 最近一次检查点的LSN, 没有检查点时为-1
+ * version: 控制文件的版本号, 每次保存加1
+ * MAGIC: 控制文件每个槽开头的标识
+ */
+
+
+class LogSegments {
+
+    private static final int MAGIC = 0x44424C43;
+    private static final int SLOTS = 2;
+    private static final int VERSION_POS = Integer.BYTES;
+    private static final int SEGMENT_BLOCKS_POS = VERSION_POS + Long.BYTES;
+    private static final int FIRST_SEGMENT_POS = SEGMENT_BLOCKS_POS + Integer.BYTES;
+    private static final int CHECKPOINT_POS = FIRST_SEGMENT_POS + Integer.BYTES;
+    private static final int CRC_POS = CHECKPOINT_POS + Long.BYTES;
+    private static final int CONTROL_SIZE = CRC_POS + Long.BYTES;
+
+    private FileMgr fm;
+    private String logfile;
+    private int segmentBlocks;
+    private volatile int firstSegment;
+    private volatile long checkpointLSN = -1;
+    private long version;
+
+    /**
+     * 打开日志的段，控制文件不存在时以segmentBlocks块为一段创建它，并迁移分段之前的单文件日志
+     */
+    LogSegments(FileMgr fm, String logfile, int segmentBlocks) {
+        this.fm = fm;
+        this.logfile = logfile;
+        this.segmentBlocks = Math.max(1, segmentBlocks);
+        if (!load()) {
+            if (fm.exists(logfile)) {
+                migrate();
+            }
+            save();
+        }
+        if (fm.exists(logfile)) {
+            // 迁移后、删除原文件前崩溃留下的单文件日志, 其内容已复制到各段
+            fm.deleteFile(logfile);
+        }
+        // 删除上次检查点之后未来得及删除的段
+        for (int n = firstSegment - 1; n >= 0 && fm.exists(segment(n)); n--) {
+            fm.deleteFile(segment(n));
+        }
+    }
+
+    /**
+     * 逻辑块blknum所在的段文件中的块
+     */
+    BlockId block(int blknum) {
+        return new BlockId(segment(blknum / segmentBlocks), blknum % segmentBlocks);
+    }
+
+    /**
+     * 最早保留的逻辑块号，迭代器不会读到它之前的块
+     */
+    int firstBlock() {
+        return firstSegment * segmentBlocks;
+    }
+
+    /**
+     * 日志的逻辑块数(包括已删除的段)
+     */
+    int length() {
+        int last = firstSegment;
+        while (fm.exists(segment(last + 1))) {
+            last++;
+        }
+        if (!fm.exists(segment(last))) {
+            return firstBlock();
+        }
+        return last * segmentBlocks + fm.length(segment(last));
+    }
+
+    int segmentBlocks() {
+        return segmentBlocks;
+    }
+
+    int firstSegment() {
+        return firstSegment;
+    }
+
+    long checkpointLSN() {
+        return checkpointLSN;
+    }
+
+    /**
+     * 记录检查点的LSN，并删除逻辑块号小于keepBlk的块所在的整段。
+     * 调用者保证检查点及之前的日志已经刷盘，且不再需要keepBlk之前的日志
+     */
+    synchronized void checkpoint(long lsn, int keepBlk) {
+        int oldFirst = firstSegment;
+        checkpointLSN = Math.max(checkpointLSN, lsn);
+        firstSegment = Math.max(oldFirst, keepBlk / segmentBlocks);
+        save();
+        for (int n = oldFirst; n < firstSegment; n++) {
+            fm.deleteFile(segment(n));
+        }
+    }
+
+    /**
+     * 删除日志的所有段和控制文件
+     */
+    synchronized void delete() {
+        for (int n = firstSegment; fm.exists(segment(n)); n++) {
+            fm.deleteFile(segment(n));
+        }
+        fm.deleteFile(control());
+    }
+
+    /**
+     * 第n段的文件名，段号补足6位。每读写一个日志块都要调用，不使用String.format
+     */
+    private String segment(int n) {
+        String num = Integer.toString(n);
+        StringBuilder sb = new StringBuilder(logfile.length() + 7 + num.length()).append(logfile).append('.');
+        for (int i = num.length(); i < 6; i++) {
+            sb.append('0');
+        }
+        return sb.append(num).toString();
+    }
+
+    private String control() {
+        return logfile + ".ctl";
+    }
+
+    /**
+     * 将单文件日志的第i块复制为逻辑块i，并将写入的段刷盘
+     */
+    private void migrate() {
+        int length = fm.length(logfile);
+        Page p = fm.newPage();
+        for (int i = 0; i < length; i++) {
+            fm.read(new BlockId(logfile, i), p);
+            fm.write(block(i), p);
+        }
+        for (int n = 0; n * segmentBlocks < length; n++) {
+            fm.force(segment(n));
+        }
+        System.out.println("migrated " + length + " blocks of " + logfile + " into log segments");
+    }
+
+    /**
+     * 读取控制文件中有效且最新的槽
+     * @return 控制文件是否存在有效的槽
+     */
+    private boolean load() {
+        if (!fm.exists(control())) {
+            return false;
+        }
+        int slots = Math.min(SLOTS, fm.length(control()));
+        boolean found = false;
+        Page p = fm.newPage();
+        byte[] b = new byte[CONTROL_SIZE];
+        Page slot = new Page(b);
+        for (int i = 0; i < slots; i++) {
+            fm.read(new BlockId(control(), i), p);
+            slot.copyFrom(p);
+            if (slot.getInt(0) != MAGIC || slot.getLong(CRC_POS) != checksum(b)) {
+                continue;
+            }
+            long v = slot.getLong(VERSION_POS);
+            if (!found || v > version) {
+                found = true;
+                version = v;
+                segmentBlocks = slot.getInt(SEGMENT_BLOCKS_POS);
+                firstSegment = slot.getInt(FIRST_SEGMENT_POS);
+                checkpointLSN = slot.getLong(CHECKPOINT_POS);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 将当前状态写入较旧的槽并刷盘
+     */
+    private void save() {
+        version++;
+        byte[] b = new byte[CONTROL_SIZE];
+        Page slot = new Page(b);
+        slot.setInt(0, MAGIC);
+        slot.setLong(VERSION_POS, version);
+        slot.setInt(SEGMENT_BLOCKS_POS, segmentBlocks);
+        slot.setInt(FIRST_SEGMENT_POS, firstSegment);
+        slot.setLong(CHECKPOINT_POS, checkpointLSN);
+        slot.setLong(CRC_POS, checksum(b));
+        Page p = fm.newPage();
+        p.copyFrom(slot);
+        fm.write(new BlockId(control(), (int) (version % SLOTS)), p);
+        fm.force(control());
+    }
+
+    /**
+     * 槽中CRC之前内容的CRC32
+     */
+    private static long checksum(byte[] b) {
+        CRC32 crc = new CRC32();
+        crc.update(b, 0, CRC_POS);
+        return crc.getValue();
+    }
+}
@@ -68,7 +68,8 @@ class StatMgr {
                               Layout layout, Transaction tx) {
       int numRecs = 0;
       int numblocks = 0;
-      TableScan ts = new TableScan(tx, tblname, layout);
+      // a statistics pass reads the whole table once; keep it out of the shared pool
+      TableScan ts = new TableScan(tx, tblname, layout, tx.bulkReadStrategy(tblname + ".tbl"));
       while (ts.next()) {
          numRecs++;
          numblocks = ts.getRid().blockNumber() + 1;
@@ -1,5 +1,6 @@
 package dawndb.record;
 
+import dawndb.buffer.BufferAccessStrategy;
 import dawndb.file.*;
 import dawndb.tx.Transaction;
 
@@ -16,10 +17,18 @@ public class RecordPage {
    private Layout layout;
 
    public RecordPage(Transaction tx, BlockId blk, Layout layout) {
+      this(tx, blk, layout, null);
+   }
+
+   /**
+    * Pin the block using the specified buffer access strategy.
+    * @param strategy the strategy, or null to use the whole buffer pool
+    */
+   public RecordPage(Transaction tx, BlockId blk, Layout layout, BufferAccessStrategy strategy) {
       this.tx = tx;
       this.blk = blk;
       this.layout = layout;
-      tx.pin(blk);
+      tx.pin(blk, strategy);
    }
 
    /**
@@ -1,5 +1,6 @@
 package dawndb.record;
 
+import dawndb.buffer.BufferAccessStrategy;
 import dawndb.file.BlockId;
 import dawndb.query.*;
 import dawndb.tx.Transaction;
@@ -17,10 +18,23 @@ public class TableScan implements UpdateScan {
    private RecordPage rp;
    private String filename;
    private int currentslot;
+   private BufferAccessStrategy strategy;
 
    public TableScan(Transaction tx, String tblname, Layout layout) {
+      this(tx, tblname, layout, null);
+   }
+
+   /**
+    * Create a scan whose sequential block reads use the specified
+    * buffer access strategy, so that a scan of a large table
+    * recycles a small ring of buffers instead of flushing the pool.
+    * Blocks reached through moveToRid use the whole pool.
+    * @param strategy the strategy, or null to use the whole buffer pool
+    */
+   public TableScan(Transaction tx, String tblname, Layout layout, BufferAccessStrategy strategy) {
       this.tx = tx;
       this.layout = layout;
+      this.strategy = strategy;
       filename = tblname + ".tbl";
       if (tx.size(filename) == 0) {
          moveToNewBlock();
@@ -137,7 +151,7 @@ public class TableScan implements UpdateScan {
    private void moveToBlock(int blknum) {
       close();
       BlockId blk = new BlockId(filename, blknum);
-      rp = new RecordPage(tx, blk, layout);
+      rp = new RecordPage(tx, blk, layout, strategy);
       currentslot = -1;
    }
 
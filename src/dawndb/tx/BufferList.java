@@ -1,6 +1,7 @@
 package dawndb.tx;
 
 import dawndb.buffer.Buffer;
+import dawndb.buffer.BufferAccessStrategy;
 import dawndb.buffer.BufferMgr;
 import dawndb.file.BlockId;
 
@@ -38,7 +39,14 @@ public class BufferList {
      * 固定块并在内部跟踪缓冲区。
      */
     void pin(BlockId blk) {
-        Buffer buff = bm.pin(blk);
+        pin(blk, null);
+    }
+
+    /**
+     * 按访问策略固定块并在内部跟踪缓冲区。
+     */
+    void pin(BlockId blk, BufferAccessStrategy strategy) {
+        Buffer buff = bm.pin(blk, strategy);
         buffers.put(blk, buff);
         pins.add(blk);
     }
@@ -1,6 +1,7 @@
 package dawndb.tx;
 
 import dawndb.buffer.Buffer;
+import dawndb.buffer.BufferAccessStrategy;
 import dawndb.buffer.BufferMgr;
 import dawndb.file.BlockId;
 import dawndb.file.FileMgr;
@@ -76,6 +77,13 @@ public class Transaction {
         buffers.pin(blk);
     }
 
+    /**
+     * 按访问策略固定块，大表的顺序扫描用环形缓冲区避免冲掉其他事务的热点块
+     */
+    public void pin(BlockId blk, BufferAccessStrategy strategy) {
+        buffers.pin(blk, strategy);
+    }
+
     public void unpin(BlockId blk) {
         buffers.unpin(blk);
     }
@@ -108,7 +116,7 @@ public class Transaction {
     public void setInt(BlockId blk, int offset, int val, boolean okToLog) {
         concurMgr.xLock(blk);
         Buffer buff = buffers.getBuffer(blk);
-        int lsn = -1;
+        long lsn = -1;
         if (okToLog) {
             lsn = recoveryMgr.setInt(buff, offset, val);
         }
@@ -125,7 +133,7 @@ public class Transaction {
     public void setString(BlockId blk, int offset, String val, boolean okToLog) {
         concurMgr.xLock(blk);
         Buffer buff = buffers.getBuffer(blk);
-        int lsn = -1;
+        long lsn = -1;
         if (okToLog) {
             lsn = recoveryMgr.setString(buff, offset, val);
         }
@@ -163,6 +171,13 @@ public class Transaction {
         return fm.blockSize();
     }
 
+    /**
+     * 顺序扫描文件filename时应使用的访问策略，文件较小时为null
+     */
+    public BufferAccessStrategy bulkReadStrategy(String filename) {
+        return bm.bulkReadStrategy(size(filename));
+    }
+
     public int availableBuffs() {
         return bm.available();
     }
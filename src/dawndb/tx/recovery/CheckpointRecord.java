@@ -45,7 +45,7 @@ public class CheckpointRecord implements LogRecord{
      * <CHECKPOINT>
      * @return 最后一个日志值的LSN
      */
-    public static int writeToLog(LogMgr lm) {
+    public static long writeToLog(LogMgr lm) {
         byte[] rec = new byte[Integer.BYTES];
         Page p = new Page(rec);
         p.setInt(0, CHECKPOINT);
@@ -38,7 +38,7 @@ public class CommitRecord implements LogRecord{
     @Override
     public void undo(Transaction tx) {}
 
-    public static int writeToLog(LogMgr lm, int txnum) {
+    public static long writeToLog(LogMgr lm, int txnum) {
         byte[] rec = new byte[2*Integer.BYTES];
         Page p = new Page(rec);
         p.setInt(0, COMMIT);
@@ -24,6 +24,9 @@ public class RecoveryMgr {
     private BufferMgr bm;
     private Transaction tx;
     private int txnum;
+    private long retained;
+    private boolean released;
+    private long lastLSN;
 
     /**
      * 为指定的事务创建恢复管理器。
@@ -37,52 +40,85 @@ public class RecoveryMgr {
         this.txnum = txnum;
         this.lm = lm;
         this.bm = bm;
-        StartRecord.writeToLog(lm, txnum);
+        // 事务结束前不能删除它的日志
+        retained = lm.retain();
+        lastLSN = StartRecord.writeToLog(lm, txnum);
     }
 
     /**
      * 将提交记录写入日志，并将其刷新到磁盘。
      */
     public void commit() {
-        bm.flushAll(txnum);
-        int lsn = CommitRecord.writeToLog(lm, txnum);
-        lm.flush(lsn);
+        try {
+            bm.flushAll(txnum);
+            long lsn = CommitRecord.writeToLog(lm, txnum);
+            lm.flush(lsn);
+        } finally {
+            release();
+        }
     }
 
     /**
      * 将回滚记录写入日志并将其刷新到磁盘。
      */
     public void rollback() {
-        doRollback();
-        bm.flushAll(txnum);
-        int lsn = RollbackRecord.writeToLog(lm, txnum);
-        lm.flush(lsn);
+        try {
+            doRollback();
+            bm.flushAll(txnum);
+            long lsn = RollbackRecord.writeToLog(lm, txnum);
+            lm.flush(lsn);
+        } finally {
+            release();
+        }
     }
 
     /**
      * 从日志中恢复未完成的事务，然后将静止检查点记录写入日志并刷新它。
+     * 检查点的位置记录在日志的控制文件中，之前不再需要的日志段被删除。
+     * 恢复所用的事务在写检查点之前取消登记，否则它的开始记录之后的段不会被删除
      */
     public void recover() {
-        doRecover();
-        bm.flushAll(txnum);
-        int lsn = CheckpointRecord.writeToLog(lm);
-        lm.flush(lsn);
+        long lsn;
+        try {
+            doRecover();
+            bm.flushAll(txnum);
+            lsn = CheckpointRecord.writeToLog(lm);
+        } finally {
+            release();
+        }
+        lm.checkpoint(lsn);
     }
 
-    public int setInt(Buffer buff, int offset, int newval) {
+    public long setInt(Buffer buff, int offset, int newval) {
         int oldval = buff.contents().getInt(offset);
         BlockId blk = buff.block();
-        return SetIntRecord.writeToLog(lm, txnum, blk, offset, oldval);
+        lastLSN = SetIntRecord.writeToLog(lm, txnum, blk, offset, oldval);
+        return lastLSN;
     }
 
-    public int setString(Buffer buff, int offset, String newval) {
+    public long setString(Buffer buff, int offset, String newval) {
         String oldval = buff.contents().getString(offset);
         BlockId blk = buff.block();
-        return SetStringRecord.writeToLog(lm, txnum, blk, offset, oldval);
+        lastLSN = SetStringRecord.writeToLog(lm, txnum, blk, offset, oldval);
+        return lastLSN;
     }
 
+    /**
+     * 取消构造时的登记。登记按次数计算，失败后再次提交或回滚时不能重复取消
+     */
+    private void release() {
+        if (!released) {
+            released = true;
+            lm.release(retained);
+        }
+    }
+
+    /**
+     * 从该事务写入的最后一条日志记录开始倒序撤销，直到该事务的开始记录。
+     * 其他事务在此之后写入的日志不需要读取
+     */
     private void doRollback() {
-        Iterator<byte[]> iter = lm.iterator();
+        Iterator<byte[]> iter = lm.iterator(lastLSN);
         while (iter.hasNext()) {
             byte[] bytes = iter.next();
             LogRecord rec = LogRecord.createLogRecord(bytes);
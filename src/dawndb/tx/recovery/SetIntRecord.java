@@ -55,7 +55,7 @@ public class SetIntRecord implements LogRecord{
         return "<SETINT " + txnum + " " + blk + " " + offset + " " + val + ">";
     }
 
-    public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, int val) {
+    public static long writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, int val) {
         int tpos = Integer.BYTES;
         int fpos = tpos + Integer.BYTES;
         int bpos = fpos + Page.maxLength(blk.filename().length());
@@ -55,7 +55,7 @@ public class SetStringRecord implements LogRecord {
         return "<SETSTRING " + txnum + " " + blk + " " + offset + " " + val + ">";
     }
 
-    public static int writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, String val) {
+    public static long writeToLog(LogMgr lm, int txnum, BlockId blk, int offset, String val) {
         int tpos = Integer.BYTES;
         int fpos = tpos + Integer.BYTES;
         int bpos = fpos + Page.maxLength(blk.filename().length());
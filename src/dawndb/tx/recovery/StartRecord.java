@@ -46,7 +46,7 @@ public class StartRecord implements LogRecord{
      * <START txnum>
      * @return 最后一个日志值的LSN
      */
-    public static int writeToLog(LogMgr lm, int txnum) {
+    public static long writeToLog(LogMgr lm, int txnum) {
         byte[] rec = new byte[2*Integer.BYTES];
         Page p = new Page(rec);
         p.setInt(0, START);
@@ -0,0 +1,109 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+import dawndb.file.FileMgr;
+import dawndb.file.Page;
+import dawndb.log.LogMgr;
+
+import java.io.File;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 6:30
+ * @Version: 1.0
+ * @Description:
+ * 后台写线程测试：在写线程写回的过程中停止它，之后对同一文件的读写和日志的追加、刷新都应正常进行。
+ * 停止时若中断写线程，正在进行的I/O会关闭共享的文件通道，之后的读写失败。
+ * 最后检查不被打断时写线程写回所有未被固定的脏缓冲区(cleanPercent为100)
+ */
+
+
+public class BackgroundWriterTest {
+
+    private static final int BUFFERS = 256;
+    private static boolean ok = true;
+
+    public static void main(String[] args) throws Exception {
+        FileMgr fm = new FileMgr(new File("dbtest-bgwriter"), 400);
+        String filename = "bgwriter.tbl";
+        fm.deleteFile(filename);
+        LogMgr.delete(fm, "bgwriter.log");
+        LogMgr lm = new LogMgr(fm, "bgwriter.log");
+        BufferMgr bm = new BufferMgr(fm, lm, BUFFERS);
+        Page p = fm.newPage();
+
+        for (int round = 0; round < 50; round++) {
+            dirtyAll(bm, lm, filename, round);
+            bm.startBackgroundWriter(1, 512, 100);
+            Thread.sleep(round % 3);
+            bm.stopBackgroundWriter();
+            try {
+                BlockId blk = new BlockId(filename, BUFFERS + round);
+                p.setInt(0, round);
+                fm.write(blk, p);
+                p.setInt(0, -1);
+                fm.read(blk, p);
+                check(p.getInt(0) == round, "read after stopping the writer in round " + round);
+                lm.flush(lm.append(new byte[16]));
+            } catch (RuntimeException e) {
+                check(false, "I/O after stopping the writer in round " + round + ": " + e.getMessage());
+                break;
+            }
+        }
+        check(bm.backgroundWrites() > 0, "the writer wrote blocks before being stopped");
+
+        // 不被打断的写回
+        dirtyAll(bm, lm, filename, 100);
+        bm.startBackgroundWriter(1, BUFFERS, 100);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dirtyCount(bm, filename) > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        bm.stopBackgroundWriter();
+        check(dirtyCount(bm, filename) == 0, "the writer cleans all unpinned buffers");
+        for (int i = 0; i < BUFFERS; i++) {
+            fm.read(new BlockId(filename, i), p);
+            check(p.getInt(0) == 100 + i, "block " + i + " was written by the background writer, found " + p.getInt(0));
+        }
+
+        lm.close();
+        System.out.println(ok ? "background writer: ok" : "background writer: failed");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 修改缓冲池中的每个缓冲区后取消固定
+     */
+    private static void dirtyAll(BufferMgr bm, LogMgr lm, String filename, int value) {
+        for (int i = 0; i < BUFFERS; i++) {
+            Buffer buff = bm.pin(new BlockId(filename, i));
+            buff.contents().setInt(0, value + i);
+            buff.setModified(1, lm.append(new byte[8]));
+            bm.unpin(buff);
+        }
+    }
+
+    /**
+     * 缓冲池中被修改过的块数
+     */
+    private static int dirtyCount(BufferMgr bm, String filename) {
+        int dirty = 0;
+        for (int i = 0; i < BUFFERS; i++) {
+            Buffer buff = bm.pin(new BlockId(filename, i));
+            if (buff.modifyingTx() >= 0) {
+                dirty++;
+            }
+            bm.unpin(buff);
+        }
+        return dirty;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("failed: " + what);
+            ok = false;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+import dawndb.file.FileMgr;
+import dawndb.file.Page;
+import dawndb.log.LogMgr;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 7:10
+ * @Version: 1.0
+ * @Description:
+ * 环形缓冲区测试。
+ * 1. 顺序扫描最多占用环容量个缓冲区，扫描之前读入的热点块仍在缓冲池中;
+ * 2. 环中被固定的缓冲区不被复用：扫描期间一直固定环中的一个块，扫描拿到的缓冲区都不是它，它的块和内容不变;
+ * 3. 环中被修改的缓冲区不被复用，修改在块被淘汰之前一直保留在缓冲池中;
+ * 4. 一个线程扫描时另一个线程随机固定扫描的块，对方固定期间缓冲区不被扫描复用，双方读到的内容都正确
+ */
+
+
+public class BufferAccessStrategyTest {
+
+    private static final int BLOCKS = 200;
+    private static final int RING = 8;
+    private static boolean ok = true;
+
+    public static void main(String[] args) throws Exception {
+        FileMgr fm = new FileMgr(new File("dbtest-ring"), 400);
+        String filename = "ring.tbl";
+        fm.deleteFile(filename);
+        Page p = fm.newPage();
+        for (int i = 0; i < BLOCKS; i++) {
+            p.setInt(0, i);
+            fm.write(new BlockId(filename, i), p);
+        }
+        LogMgr.delete(fm, "ring.log");
+        LogMgr lm = new LogMgr(fm, "ring.log");
+        BufferMgr bm = new BufferMgr(fm, lm, 64, 1, ClockPolicy::new);
+
+        // 热点块
+        String hotfile = "hot.tbl";
+        fm.deleteFile(hotfile);
+        for (int i = 0; i < 16; i++) {
+            bm.unpin(bm.pin(new BlockId(hotfile, i)));
+        }
+        scan(bm, filename, 0, BLOCKS, new BufferAccessStrategy(RING));
+        List<BlockId> resident = bm.residentBlocks();
+        int hot = 0;
+        int scanned = 0;
+        for (BlockId blk : resident) {
+            if (blk.filename().equals(hotfile)) {
+                hot++;
+            } else {
+                scanned++;
+            }
+        }
+        check(hot == 16, "hot blocks survive the scan, " + hot + " resident");
+        check(scanned <= RING + 1, "scan uses at most the ring, " + scanned + " buffers");
+
+        // 扫描期间固定环中的一个块。第一次扫描最后的几个块仍在缓冲池中, 命中时不经过环, 因此只扫描前一半
+        BufferAccessStrategy strategy = new BufferAccessStrategy(RING);
+        scan(bm, filename, 0, RING, strategy);
+        BlockId held = new BlockId(filename, 2);
+        Buffer pinned = bm.pin(held);
+        Set<Buffer> seen = new HashSet<>();
+        for (int i = RING; i < BLOCKS / 2; i++) {
+            Buffer buff = bm.pin(new BlockId(filename, i), strategy);
+            check(buff != pinned, "pinned ring buffer is not reused for block " + i);
+            seen.add(buff);
+            bm.unpin(buff);
+        }
+        check(held.equals(pinned.block()) && pinned.contents().getInt(0) == 2, "pinned ring buffer is unchanged");
+        check(seen.size() <= RING + 1, "scan still uses a ring, " + seen.size() + " buffers");
+        bm.unpin(pinned);
+
+        // 环中被修改的缓冲区
+        strategy = new BufferAccessStrategy(RING);
+        scan(bm, filename, 0, RING, strategy);
+        BlockId modified = new BlockId(filename, 3);
+        Buffer buff = bm.pin(modified);
+        buff.contents().setInt(4, 333);
+        buff.setModified(1, lm.append(new byte[8]));
+        bm.unpin(buff);
+        for (int i = RING; i < BLOCKS; i++) {
+            Buffer b = bm.pin(new BlockId(filename, i), strategy);
+            check(b != buff, "modified ring buffer is not reused for block " + i);
+            bm.unpin(b);
+        }
+        check(modified.equals(buff.block()) && buff.contents().getInt(4) == 333, "modified ring buffer keeps its changes");
+        bm.flushAll(1);
+        fm.read(modified, p);
+        check(p.getInt(4) == 333, "modification reaches the disk");
+
+        // 并发的随机固定
+        AtomicBoolean done = new AtomicBoolean();
+        Thread other = new Thread(() -> {
+            Random random = new Random(7);
+            while (!done.get()) {
+                BlockId blk = new BlockId(filename, random.nextInt(BLOCKS));
+                Buffer b = bm.pin(blk);
+                Thread.yield();
+                check(blk.equals(b.block()) && b.contents().getInt(0) == blk.blknum(),
+                        "buffer pinned by another thread is not reused for the scan, " + blk);
+                bm.unpin(b);
+            }
+        });
+        other.start();
+        for (int round = 0; round < 20; round++) {
+            scan(bm, filename, 0, BLOCKS, new BufferAccessStrategy(RING));
+        }
+        done.set(true);
+        other.join();
+        check(bm.available() == 64, "all buffers are unpinned");
+
+        lm.close();
+        System.out.println(ok ? "buffer access strategy: ok" : "buffer access strategy: failed");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 用策略strategy顺序扫描[from, to)中的块并检查读到的内容
+     */
+    private static void scan(BufferMgr bm, String filename, int from, int to, BufferAccessStrategy strategy) {
+        for (int i = from; i < to; i++) {
+            Buffer buff = bm.pin(new BlockId(filename, i), strategy);
+            check(buff.contents().getInt(0) == i, "scan reads block " + i);
+            bm.unpin(buff);
+        }
+    }
+
+    private static synchronized void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("failed: " + what);
+            ok = false;
+        }
+    }
+}
@@ -0,0 +1,610 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+import dawndb.file.Durability;
+import dawndb.file.FileMgr;
+import dawndb.file.LatencyHistogram;
+import dawndb.file.Page;
+import dawndb.file.StorageMode;
+import dawndb.log.LogMgr;
+import dawndb.metadata.MetadataMgr;
+import dawndb.record.Layout;
+import dawndb.record.RID;
+import dawndb.record.Schema;
+import dawndb.record.TableScan;
+import dawndb.tx.Transaction;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 18:40
+ * @Version: 1.0
+ * @Description:
+ * BufferMgr性能测试
+ * pin: 缓冲池大小从8到1M时，固定/取消固定已在缓冲池中的块的平均耗时
+ * concurrent: 1到64个线程并发随机固定/取消固定时的吞吐量，对比单个分区(单锁)与默认分区数
+ * trace [file]: 运行一个混合负载并记录固定操作，再用各替换策略回放
+ * replay file [numbuffs...]: 用各替换策略回放记录的固定操作，输出命中率
+ * scan [MB]: 冷缓存下(直接I/O)全表扫描的吞吐量，对比关闭与开启顺序预读
+ * ring: 全表扫描进行期间OLTP负载的命中率，对比扫描使用整个缓冲池与使用环形缓冲区
+ * commit: 缓冲池大小为1K与1M时，修改4个块的事务提交(flushAll)的平均耗时
+ * arena [GB] [dir]: 创建4K块、GB大小的缓冲池的耗时与堆占用，缓冲池内存映射在dir中(默认分配直接缓冲区)
+ * resize: 负载运行时扩大、缩小缓冲池，各阶段的吞吐量、命中率以及resize的耗时
+ * warmup: 重启后命中率回到稳定值所需的时间与启动初期的固定延迟，对比冷启动、边服务边预热、预热完成后再服务
+ * bgwriter: 更新线程不断弄脏缓冲区时，读线程固定块的延迟分布，对比关闭与开启后台写线程
+ */
+
+
+public class BufferMgrBenchmark {
+
+    private static final int BLOCK_SIZE = 100;
+
+    private static final String[] POLICIES = {"naive", "clock", "lru-2", "2q"};
+
+    public static void main(String[] args) throws IOException {
+        String scenario = args.length > 0 ? args[0] : "pin";
+        switch (scenario) {
+            case "pin":
+                pin(args.length > 1 ? Integer.parseInt(args[1]) : 1 << 20);
+                break;
+            case "concurrent":
+                concurrent();
+                break;
+            case "trace":
+                trace(args.length > 1 ? args[1] : "pin.trace");
+                break;
+            case "replay":
+                int[] sizes = new int[Math.max(0, args.length - 2)];
+                for (int i = 0; i < sizes.length; i++) {
+                    sizes[i] = Integer.parseInt(args[i + 2]);
+                }
+                replay(new File(args[1]), sizes.length > 0 ? sizes : new int[] {16, 32, 64, 128});
+                break;
+            case "scan":
+                scan(args.length > 1 ? Integer.parseInt(args[1]) : 256);
+                break;
+            case "ring":
+                ring();
+                break;
+            case "commit":
+                commit();
+                break;
+            case "arena":
+                arena(args.length > 1 ? Integer.parseInt(args[1]) : 16, args.length > 2 ? new File(args[2]) : null);
+                break;
+            case "resize":
+                resize();
+                break;
+            case "warmup":
+                warmup();
+                break;
+            case "bgwriter":
+                bgwriter();
+                break;
+            default:
+                System.out.println("unknown scenario: " + scenario);
+        }
+    }
+
+    /**
+     * 先将numbuffs个块读入缓冲池，再随机地固定并立即取消固定这些块
+     */
+    private static void pin(int maxBuffs) {
+        File dir = new File("dbbench-buffer");
+        FileMgr fm = new FileMgr(dir, BLOCK_SIZE);
+        fm.setDurability(Durability.NONE);
+        LogMgr lm = new LogMgr(fm, "bench.log");
+        System.out.println("buffers\tpin+unpin(ns/op)");
+        for (int numbuffs = 8; numbuffs <= maxBuffs; numbuffs = (numbuffs == maxBuffs) ? numbuffs + 1
+                : Math.min(numbuffs * 8, maxBuffs)) {
+            BufferMgr bm = new BufferMgr(fm, lm, numbuffs);
+            for (int i = 0; i < numbuffs; i++) {
+                bm.unpin(bm.pin(new BlockId("bench.tbl", i)));
+            }
+            int ops = 2_000_000;
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < 5; round++) {
+                Random rand = new Random(round);
+                long begin = System.nanoTime();
+                for (int i = 0; i < ops; i++) {
+                    bm.unpin(bm.pin(new BlockId("bench.tbl", rand.nextInt(numbuffs))));
+                }
+                best = Math.min(best, System.nanoTime() - begin);
+            }
+            System.out.println(numbuffs + "\t" + best / ops);
+        }
+    }
+
+    /**
+     * 工作集为8192个块，其中一部分不在缓冲池中，因此既有命中也有淘汰和读入
+     */
+    private static void concurrent() throws IOException {
+        File dir = new File("dbbench-buffer");
+        FileMgr fm = new FileMgr(dir, BLOCK_SIZE);
+        fm.setDurability(Durability.NONE);
+        LogMgr lm = new LogMgr(fm, "bench.log");
+        int numbuffs = 4096;
+        int blocks = 8192;
+        BufferMgr single = new BufferMgr(fm, lm, numbuffs, 1, ClockPolicy::new);
+        BufferMgr partitioned = new BufferMgr(fm, lm, numbuffs);
+        // 预热
+        pinThroughput(single, 1, blocks);
+        pinThroughput(partitioned, 1, blocks);
+        System.out.println("threads\t1 partition(ops/s)\t" + partitioned.partitions() + " partitions(ops/s)");
+        for (int threads = 1; threads <= 64; threads *= 2) {
+            long a = pinThroughput(single, threads, blocks);
+            long b = pinThroughput(partitioned, threads, blocks);
+            System.out.println(threads + "\t" + a + "\t\t\t" + b);
+        }
+    }
+
+    /**
+     * 用直接I/O绕过操作系统的页缓存，每次扫描都从磁盘读；缓冲池只有1024个4K的缓冲区，
+     * 每次扫描前新建缓冲区管理器，因此缓冲池也是冷的
+     */
+    private static void scan(int megabytes) {
+        File dir = new File("dbbench-readahead");
+        FileMgr fm = new FileMgr(dir, 4096, StorageMode.DIRECT);
+        fm.setDurability(Durability.NONE);
+        Schema sch = new Schema();
+        sch.addIntField("id");
+        sch.addStringField("name", 20);
+        Layout layout = new Layout(sch);
+        int slots = fm.blockSize() / layout.slotSize();
+        int numblocks = (int) ((long) megabytes * 1024 * 1024 / fm.blockSize());
+        List<BlockId> blocks = new ArrayList<>();
+        List<Page> pages = new ArrayList<>();
+        for (int b = fm.length("scan.tbl"); b < numblocks; b++) {
+            Page p = fm.newPage();
+            for (int slot = 0; slot < slots; slot++) {
+                p.setInt(slot * layout.slotSize(), 1);
+                p.setInt(slot * layout.slotSize() + layout.offset("id"), b * slots + slot);
+            }
+            blocks.add(new BlockId("scan.tbl", b));
+            pages.add(p);
+            if (blocks.size() == 1024 || b == numblocks - 1) {
+                fm.writeBatch(blocks, pages);
+                blocks.clear();
+                pages.clear();
+            }
+        }
+
+        LogMgr lm = new LogMgr(fm, "bench.log");
+        System.out.println("read-ahead	records	ms	MB/s	prefetched");
+        for (int window : new int[] {0, 32, 128}) {
+            BufferMgr bm = new BufferMgr(fm, lm, 1024);
+            if (window > 0) {
+                bm.startReadAhead(window);
+            }
+            Transaction tx = new Transaction(fm, lm, bm);
+            long begin = System.nanoTime();
+            TableScan ts = new TableScan(tx, "scan", layout);
+            long count = 0;
+            while (ts.next()) {
+                count++;
+            }
+            ts.close();
+            long elapsed = System.nanoTime() - begin;
+            tx.commit();
+            bm.stopReadAhead();
+            System.out.println((window == 0 ? "off" : window + " blocks") + "	" + count + "	"
+                    + elapsed / 1_000_000 + "	" + (long) megabytes * 1_000_000_000L / elapsed + "	"
+                    + bm.prefetched());
+        }
+    }
+
+    /**
+     * 创建缓冲池，再固定并修改其中的10万个块，分别报告耗时和堆占用
+     */
+    private static void arena(int gigabytes, File dir) {
+        FileMgr fm = new FileMgr(new File("dbbench-buffer"), 4096);
+        fm.setDurability(Durability.NONE);
+        LogMgr lm = new LogMgr(fm, "bench.log");
+        int numbuffs = (int) (((long) gigabytes << 30) / fm.blockSize());
+        long heap = usedHeap();
+        long begin = System.nanoTime();
+        FrameArena arena = (dir == null) ? FrameArena.allocate(numbuffs, fm) : FrameArena.map(numbuffs, fm, dir);
+        BufferMgr bm = new BufferMgr(fm, lm, arena, 64, ClockPolicy::new);
+        long created = System.nanoTime() - begin;
+        System.out.println(numbuffs + " buffers (" + gigabytes + " GB, " + (dir == null ? "allocated" : "mapped in " + dir)
+                + "): created in " + created / 1_000_000 + " ms, heap " + (usedHeap() - heap) / 1024 / 1024 + " MB");
+        begin = System.nanoTime();
+        int touched = Math.min(numbuffs, 100000);
+        for (int i = 0; i < touched; i++) {
+            Buffer buff = bm.pin(new BlockId("arena.tbl", i));
+            buff.contents().setInt(0, i);
+            bm.unpin(buff);
+        }
+        long elapsed = System.nanoTime() - begin;
+        long used = usedHeap() - heap;
+        System.out.println("first use of " + touched + " buffers: " + elapsed / 1_000_000 + " ms, heap "
+                + used / 1024 / 1024 + " MB, " + bm.available() + " available");
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * 4个线程随机固定16384个块中的一个，缓冲池从4096个缓冲区扩大到16384个再缩小到2048个
+     */
+    private static void resize() {
+        File dir = new File("dbbench-buffer");
+        FileMgr fm = new FileMgr(dir, BLOCK_SIZE);
+        fm.setDurability(Durability.NONE);
+        LogMgr lm = new LogMgr(fm, "bench.log");
+        int blocks = 16384;
+        BufferMgr bm = new BufferMgr(fm, lm, 4096);
+        pinThroughput(bm, 4, blocks);
+        System.out.println("buffers	resize(ms)	ops/s	hit ratio");
+        for (int numbuffs : new int[] {4096, 16384, 2048}) {
+            long begin = System.nanoTime();
+            bm.resize(numbuffs);
+            long resized = System.nanoTime() - begin;
+            // 第一轮使缓冲池达到稳定状态
+            pinThroughput(bm, 4, blocks);
+            long hits = bm.hits();
+            long misses = bm.misses();
+            long ops = pinThroughput(bm, 4, blocks);
+            double ratio = (double) (bm.hits() - hits) / (bm.hits() - hits + bm.misses() - misses);
+            System.out.printf("%d\t%.2f\t\t%d\t%.3f%n", bm.size(), resized / 1e6, ops, ratio);
+        }
+    }
+
+    /**
+     * 缓冲池中的块都已读入，每个事务修改4个随机块后提交；持久化级别为NONE，只计算CPU开销
+     */
+    private static void commit() {
+        File dir = new File("dbbench-buffer");
+        FileMgr fm = new FileMgr(dir, BLOCK_SIZE);
+        fm.setDurability(Durability.NONE);
+        LogMgr lm = new LogMgr(fm, "bench.log");
+        System.out.println("buffers	commit(us)");
+        for (int numbuffs : new int[] {1 << 10, 1 << 20}) {
+            BufferMgr bm = new BufferMgr(fm, lm, numbuffs);
+            for (int i = 0; i < numbuffs; i++) {
+                bm.unpin(bm.pin(new BlockId("bench.tbl", i)));
+            }
+            Random rand = new Random(1);
+            int txs = 20000;
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < 3; round++) {
+                long begin = System.nanoTime();
+                for (int txnum = 1; txnum <= txs; txnum++) {
+                    for (int i = 0; i < 4; i++) {
+                        Buffer buff = bm.pin(new BlockId("bench.tbl", rand.nextInt(numbuffs)));
+                        buff.contents().setInt(0, txnum);
+                        buff.setModified(txnum, -1);
+                        bm.unpin(buff);
+                    }
+                    bm.flushAll(txnum);
+                }
+                best = Math.min(best, System.nanoTime() - begin);
+            }
+            System.out.printf("%d\t%.2f%n", numbuffs, best / 1000.0 / txs);
+        }
+    }
+
+    /**
+     * 缓冲池有1024个缓冲区，OLTP负载随机访问768个热点块，大表有8192个块。
+     * 扫描每读一个块，OLTP负载固定1个块(交替执行，使命中数只来自OLTP负载)，
+     * 统计扫描期间OLTP负载的命中率和扫描结束时缓冲池中的热点块数
+     */
+    private static void ring() {
+        File dir = new File("dbbench-buffer");
+        FileMgr fm = new FileMgr(dir, BLOCK_SIZE);
+        fm.setDurability(Durability.NONE);
+        LogMgr lm = new LogMgr(fm, "bench.log");
+        int hot = 768;
+        int big = 8192;
+        System.out.println("policy	scan		OLTP hit ratio	hot blocks cached after scan");
+        for (String name : POLICIES) {
+            for (boolean useRing : new boolean[] {false, true}) {
+                BufferMgr bm = new BufferMgr(fm, lm, 1024, () -> ReplacementPolicy.forName(name));
+                Random rand = new Random(1);
+                for (int i = 0; i < 20 * hot; i++) {
+                    bm.unpin(bm.pin(new BlockId("oltp.tbl", rand.nextInt(hot))));
+                }
+                BufferAccessStrategy strategy = useRing ? bm.bulkReadStrategy(big) : null;
+                long pins = 0;
+                long hits = 0;
+                for (int b = 0; b < big; b++) {
+                    bm.unpin(bm.pin(new BlockId("big.tbl", b), strategy));
+                    long before = bm.hits();
+                    bm.unpin(bm.pin(new BlockId("oltp.tbl", rand.nextInt(hot))));
+                    hits += bm.hits() - before;
+                    pins++;
+                }
+                // 再次固定每个热点块，命中数即仍在缓冲池中的热点块数
+                long before = bm.hits();
+                for (int i = 0; i < hot; i++) {
+                    bm.unpin(bm.pin(new BlockId("oltp.tbl", i)));
+                }
+                System.out.printf("%s	%s	%.3f		%d%n", bm.policyName(), useRing ? "ring" : "shared pool",
+                        (double) hits / pins, bm.hits() - before);
+            }
+        }
+    }
+
+    /**
+     * 表有32768个4K的块，缓冲池有8192个缓冲区；负载90%的固定落在随机分布于整个表的6144个热点块上，其余均匀分布。
+     * 先运行负载使缓冲池达到稳定状态并保存驻留表，再以新的缓冲区管理器模拟重启。
+     * 用直接I/O绕过操作系统的页缓存，重启后未命中的块都从磁盘读。
+     * 每10000次固定统计一次命中率，达到稳定命中率的95%即认为回到稳定状态
+     */
+    private static void warmup() {
+        File dir = new File("dbbench-warmup");
+        FileMgr fm = new FileMgr(dir, 4096, StorageMode.DIRECT);
+        fm.setDurability(Durability.NONE);
+        LogMgr lm = new LogMgr(fm, "bench.log");
+        int numblocks = 32768;
+        List<BlockId> blocks = new ArrayList<>();
+        List<Page> pages = new ArrayList<>();
+        for (int b = fm.length("warm.tbl"); b < numblocks; b++) {
+            Page p = fm.newPage();
+            p.setInt(0, b);
+            blocks.add(new BlockId("warm.tbl", b));
+            pages.add(p);
+            if (blocks.size() == 1024 || b == numblocks - 1) {
+                fm.writeBatch(blocks, pages);
+                blocks.clear();
+                pages.clear();
+            }
+        }
+        int[] hot = new int[6144];
+        Random rand = new Random(7);
+        for (int i = 0; i < hot.length; i++) {
+            hot[i] = rand.nextInt(numblocks);
+        }
+        File residency = new File(dir, "residency.map");
+        BufferMgr before = new BufferMgr(fm, lm, 8192);
+        Random workload = new Random(1);
+        for (int i = 0; i < 300000; i++) {
+            pinWarm(before, workload, hot, numblocks);
+        }
+        long hits = before.hits();
+        long misses = before.misses();
+        for (int i = 0; i < 100000; i++) {
+            pinWarm(before, workload, hot, numblocks);
+        }
+        double steady = (double) (before.hits() - hits) / (before.hits() - hits + before.misses() - misses);
+        before.saveResidency(residency);
+        System.out.printf("steady hit ratio %.3f, %d blocks saved%n", steady, before.residentBlocks().size());
+
+        System.out.println("restart		warm-up(ms)	loaded	steady after(ms)	p99 first 50000 pins(us)");
+        for (String mode : new String[] {"cold", "warm", "warm, wait"}) {
+            BufferMgr bm = new BufferMgr(fm, lm, 8192);
+            long begin = System.nanoTime();
+            if (!mode.equals("cold")) {
+                bm.startWarmUp(residency);
+            }
+            if (mode.equals("warm, wait")) {
+                bm.awaitWarmUp();
+            }
+            long warmed = System.nanoTime() - begin;
+            LatencyHistogram latency = new LatencyHistogram();
+            workload = new Random(2);
+            long steadyAfter = -1;
+            for (int round = 0; round < 100 && steadyAfter < 0; round++) {
+                hits = bm.hits();
+                misses = bm.misses();
+                for (int i = 0; i < 10000; i++) {
+                    long start = System.nanoTime();
+                    pinWarm(bm, workload, hot, numblocks);
+                    if (round < 5) {
+                        latency.record(System.nanoTime() - start);
+                    }
+                }
+                double ratio = (double) (bm.hits() - hits) / (bm.hits() - hits + bm.misses() - misses);
+                if (ratio >= 0.95 * steady) {
+                    steadyAfter = System.nanoTime() - begin;
+                }
+            }
+            bm.stopWarmUp();
+            System.out.println(mode + (mode.length() < 8 ? "\t\t" : "\t") + (mode.equals("cold") ? "-" : warmed / 1_000_000)
+                    + "\t\t" + bm.warmedUp() + "\t" + (steadyAfter < 0 ? "-" : steadyAfter / 1_000_000)
+                    + "\t\t\t" + latency.percentile(99) / 1000);
+        }
+    }
+
+    private static void pinWarm(BufferMgr bm, Random rand, int[] hot, int numblocks) {
+        int b = (rand.nextInt(10) < 9) ? hot[rand.nextInt(hot.length)] : rand.nextInt(numblocks);
+        bm.unpin(bm.pin(new BlockId("warm.tbl", b)));
+    }
+
+    /**
+     * 表有8192个块，缓冲池只有1024个缓冲区。一个更新线程随机修改块并每1000次修改提交一次，
+     * 两个读线程随机固定块并记录每次固定的耗时。
+     * 以STRICT级别写块，淘汰脏缓冲区时读线程要等待一次同步写
+     */
+    private static void bgwriter() {
+        File dir = new File("dbbench-buffer");
+        FileMgr fm = new FileMgr(dir, BLOCK_SIZE);
+        fm.setDurability(Durability.STRICT);
+        LogMgr lm = new LogMgr(fm, "bench.log");
+        int blocks = 8192;
+        for (int i = fm.length("bgwriter.tbl"); i < blocks; i++) {
+            fm.append("bgwriter.tbl");
+        }
+        System.out.println("bgwriter\tpins\tp50(us)\tp99(us)\tmax(us)\tdirty victim writes\tbackground writes");
+        for (boolean enabled : new boolean[] {false, true}) {
+            BufferMgr bm = new BufferMgr(fm, lm, 1024);
+            if (enabled) {
+                bm.startBackgroundWriter(5, 256, 50);
+            }
+            LatencyHistogram latency = new LatencyHistogram();
+            AtomicBoolean running = new AtomicBoolean(true);
+            Thread updater = new Thread(() -> {
+                Random rand = new Random(1);
+                int n = 0;
+                while (running.get()) {
+                    Buffer buff = bm.pin(new BlockId("bgwriter.tbl", rand.nextInt(blocks)));
+                    buff.contents().setInt(0, n);
+                    buff.setModified(1, -1);
+                    bm.unpin(buff);
+                    if (++n % 1000 == 0) {
+                        bm.flushAll(1);
+                    }
+                }
+            });
+            Thread[] readers = new Thread[2];
+            for (int t = 0; t < readers.length; t++) {
+                final long seed = t + 2;
+                readers[t] = new Thread(() -> {
+                    Random rand = new Random(seed);
+                    for (int i = 0; i < 100000; i++) {
+                        BlockId blk = new BlockId("bgwriter.tbl", rand.nextInt(blocks));
+                        long begin = System.nanoTime();
+                        Buffer buff = bm.pin(blk);
+                        latency.record(System.nanoTime() - begin);
+                        bm.unpin(buff);
+                    }
+                });
+            }
+            updater.start();
+            for (Thread reader : readers) {
+                reader.start();
+            }
+            try {
+                for (Thread reader : readers) {
+                    reader.join();
+                }
+                running.set(false);
+                updater.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            bm.stopBackgroundWriter();
+            System.out.println((enabled ? "on" : "off") + "\t\t" + latency.count() + "\t" + latency.percentile(50) / 1000
+                    + "\t" + latency.percentile(99) / 1000 + "\t" + latency.max() / 1000 + "\t" + bm.dirtyVictimWrites()
+                    + "\t\t\t" + bm.backgroundWrites());
+        }
+    }
+
+    private static long pinThroughput(BufferMgr bm, int threads, int blocks) {
+        int opsPerThread = 100000;
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            new Thread(() -> {
+                Random rand = new Random(seed);
+                try {
+                    start.await();
+                    for (int i = 0; i < opsPerThread; i++) {
+                        bm.unpin(bm.pin(new BlockId("bench.tbl", rand.nextInt(blocks))));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long elapsed = System.nanoTime() - begin;
+        return (long) threads * opsPerThread * 1_000_000_000L / elapsed;
+    }
+
+    /**
+     * 负载：每个事务先查询两张表的元数据(目录表tblcat/fldcat)，再按RID随机读取小表customers中的记录；
+     * 每20个事务完整扫描一次大表orders。记录开始于建表和装载数据之后
+     */
+    private static void trace(String filename) throws IOException {
+        File dir = new File("dbbench-trace");
+        for (File f : dir.exists() ? dir.listFiles() : new File[0]) {
+            f.delete();
+        }
+        FileMgr fm = new FileMgr(dir, 400);
+        fm.setDurability(Durability.NONE);
+        LogMgr lm = new LogMgr(fm, "bench.log");
+        BufferMgr bm = new BufferMgr(fm, lm, 16);
+        Transaction tx = new Transaction(fm, lm, bm);
+        MetadataMgr mdm = new MetadataMgr(true, tx);
+        Schema customers = new Schema();
+        customers.addIntField("id");
+        customers.addStringField("name", 16);
+        mdm.createTable("customers", customers, tx);
+        Schema orders = new Schema();
+        orders.addIntField("id");
+        orders.addIntField("custid");
+        orders.addStringField("item", 20);
+        mdm.createTable("orders", orders, tx);
+        load(tx, "customers", mdm.getLayout("customers", tx), 1000);
+        load(tx, "orders", mdm.getLayout("orders", tx), 5000);
+        tx.commit();
+
+        File file = new File(filename);
+        Random rand = new Random(1);
+        try (PinTrace trace = new PinTrace(file)) {
+            bm.setTrace(trace);
+            for (int i = 0; i < 300; i++) {
+                tx = new Transaction(fm, lm, bm);
+                Layout custLayout = mdm.getLayout("customers", tx);
+                Layout orderLayout = mdm.getLayout("orders", tx);
+                TableScan cust = new TableScan(tx, "customers", custLayout);
+                int custBlocks = tx.size("customers.tbl");
+                int slots = tx.blockSize() / custLayout.slotSize();
+                for (int j = 0; j < 5; j++) {
+                    cust.moveToRid(new RID(rand.nextInt(custBlocks), rand.nextInt(slots)));
+                    cust.getInt("id");
+                }
+                cust.close();
+                if (i % 20 == 0) {
+                    TableScan ts = new TableScan(tx, "orders", orderLayout);
+                    while (ts.next()) {
+                        ts.getInt("custid");
+                    }
+                    ts.close();
+                }
+                tx.commit();
+            }
+            bm.setTrace(null);
+        }
+        replay(file, new int[] {16, 32, 64, 128});
+    }
+
+    private static void load(Transaction tx, String tblname, Layout layout, int n) {
+        TableScan ts = new TableScan(tx, tblname, layout);
+        for (int i = 0; i < n; i++) {
+            ts.insert();
+            ts.setInt("id", i);
+        }
+        ts.close();
+    }
+
+    private static void replay(File file, int[] sizes) throws IOException {
+        List<PinTrace.Event> events = PinTrace.read(file);
+        System.out.println(events.size() + " events, at most " + PinTrace.maxPinned(events) + " pinned at once");
+        System.out.print("buffers");
+        for (String policy : POLICIES) {
+            System.out.print("\t" + policy);
+        }
+        System.out.println();
+        File dir = new File("dbbench-replay");
+        for (int numbuffs : sizes) {
+            System.out.print(numbuffs);
+            for (String policy : POLICIES) {
+                BufferMgr bm = PinTrace.replay(events, numbuffs, ReplacementPolicy.forName(policy), dir);
+                System.out.printf("\t%.3f", bm.hitRatio());
+            }
+            System.out.println();
+        }
+    }
+}
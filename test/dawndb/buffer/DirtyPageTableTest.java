@@ -0,0 +1,159 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+import dawndb.file.FileMgr;
+import dawndb.file.Page;
+import dawndb.log.LogMgr;
+import dawndb.tx.Transaction;
+
+import java.io.File;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 7:30
+ * @Version: 1.0
+ * @Description:
+ * 脏页表测试。缓冲池分为两个分区，事务修改的块分布在两个分区中。
+ * 1. 提交前各分区的脏页表恰好包含该事务修改的缓冲区，提交后为空且不再记录该事务，修改已写回;
+ * 2. 回滚时撤销修改的缓冲区同样登记在脏页表中，回滚后为空且不再记录该事务，磁盘上是原来的值;
+ * 3. 提交前被淘汰写回的缓冲区从脏页表中移出，另一个事务修改同一缓冲区时从前一个事务的集合中移出
+ */
+
+
+public class DirtyPageTableTest {
+
+    private static final int BLOCKS = 12;
+    private static boolean ok = true;
+
+    public static void main(String[] args) {
+        FileMgr fm = new FileMgr(new File("dbtest-dirtypages"), 400);
+        String filename = "dirtypages.tbl";
+        fm.deleteFile(filename);
+        for (int i = 0; i < BLOCKS; i++) {
+            fm.append(filename);
+        }
+        LogMgr.delete(fm, "dirtypages.log");
+        LogMgr lm = new LogMgr(fm, "dirtypages.log");
+        BufferMgr bm = new BufferMgr(fm, lm, 32, 2, ClockPolicy::new);
+        BlockId[] blocks = new BlockId[BLOCKS];
+        for (int i = 0; i < BLOCKS; i++) {
+            blocks[i] = new BlockId(filename, i);
+        }
+        check(spansPartitions(bm, blocks), "blocks are spread over both partitions");
+
+        // 提交
+        Transaction tx = new Transaction(fm, lm, bm);
+        for (BlockId blk : blocks) {
+            tx.pin(blk);
+            tx.setInt(blk, 0, 100 + blk.blknum(), true);
+        }
+        int txnum = modifyingTx(bm, blocks[0]);
+        check(countDirty(bm, blocks, txnum) == BLOCKS, "each modified buffer is in its partition's table before commit");
+        tx.commit();
+        check(countDirty(bm, blocks, txnum) == 0, "no buffers of the transaction after commit");
+        check(transactions(bm, blocks) == 0, "committed transaction is forgotten");
+        check(onDisk(fm, blocks, 100), "committed changes are on disk");
+
+        // 回滚
+        tx = new Transaction(fm, lm, bm);
+        for (BlockId blk : blocks) {
+            tx.pin(blk);
+            tx.setInt(blk, 0, 200 + blk.blknum(), true);
+        }
+        txnum = modifyingTx(bm, blocks[0]);
+        check(countDirty(bm, blocks, txnum) == BLOCKS, "each modified buffer is in its partition's table before rollback");
+        tx.rollback();
+        check(countDirty(bm, blocks, txnum) == 0, "no buffers of the transaction after rollback");
+        check(transactions(bm, blocks) == 0, "rolled back transaction is forgotten");
+        check(onDisk(fm, blocks, 100), "rolled back blocks have their old values on disk");
+
+        // 淘汰写回与改由另一个事务修改
+        Buffer buff = bm.pin(blocks[0]);
+        buff.contents().setInt(0, 300);
+        buff.setModified(50, lm.append(new byte[8]));
+        check(bm.partition(blocks[0]).dirtyPages().buffers(50).contains(buff), "buffer is registered for transaction 50");
+        buff.setModified(51, lm.append(new byte[8]));
+        check(!bm.partition(blocks[0]).dirtyPages().buffers(50).contains(buff), "buffer moves out of transaction 50");
+        check(bm.partition(blocks[0]).dirtyPages().buffers(51).contains(buff), "buffer moves to transaction 51");
+        bm.unpin(buff);
+        for (int i = 0; i < 32; i++) {
+            bm.unpin(bm.pin(new BlockId("other.tbl", i)));
+        }
+        check(bm.partition(blocks[0]).dirtyPages().buffers(51).isEmpty(), "evicted buffer leaves the table");
+        bm.flushAll(50);
+        bm.flushAll(51);
+        check(transactions(bm, blocks) == 0, "transactions without unwritten buffers are forgotten");
+        Page p = fm.newPage();
+        fm.read(blocks[0], p);
+        check(p.getInt(0) == 300, "evicted change is on disk");
+
+        lm.close();
+        System.out.println(ok ? "dirty page table: ok" : "dirty page table: failed");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean spansPartitions(BufferMgr bm, BlockId[] blocks) {
+        for (BlockId blk : blocks) {
+            if (bm.partition(blk) != bm.partition(blocks[0])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int modifyingTx(BufferMgr bm, BlockId blk) {
+        Buffer buff = bm.pin(blk);
+        int txnum = buff.modifyingTx();
+        bm.unpin(buff);
+        return txnum;
+    }
+
+    /**
+     * 各块所在分区的脏页表中事务txnum的缓冲区里分配给这些块的个数
+     */
+    private static int countDirty(BufferMgr bm, BlockId[] blocks, int txnum) {
+        int count = 0;
+        for (BlockId blk : blocks) {
+            for (Buffer buff : bm.partition(blk).dirtyPages().buffers(txnum)) {
+                if (blk.equals(buff.block())) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 这些块所在分区的脏页表中记录的事务数
+     */
+    private static int transactions(BufferMgr bm, BlockId[] blocks) {
+        BufferPartition first = bm.partition(blocks[0]);
+        int count = first.dirtyPages().transactions();
+        for (BlockId blk : blocks) {
+            if (bm.partition(blk) != first) {
+                return count + bm.partition(blk).dirtyPages().transactions();
+            }
+        }
+        return count;
+    }
+
+    private static boolean onDisk(FileMgr fm, BlockId[] blocks, int base) {
+        Page p = fm.newPage();
+        for (BlockId blk : blocks) {
+            fm.read(blk, p);
+            if (p.getInt(0) != base + blk.blknum()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("failed: " + what);
+            ok = false;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+import dawndb.file.FileMgr;
+import dawndb.log.LogMgr;
+
+import java.io.File;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 3:10
+ * @Version: 1.0
+ * @Description:
+ * flushAll的持久性测试(COMMIT_ONLY级别)。事务修改的块在提交前被淘汰时由固定块的线程写回但不刷盘，
+ * flushAll应在写入提交记录之前对该文件刷盘；没有这样的写回时不应多余地刷盘。
+ * 检查文件的刷盘次数(FileMgr.ioStats)以及重新读入的内容
+ */
+
+
+public class FlushAllTest {
+
+    private static boolean ok = true;
+
+    public static void main(String[] args) {
+        FileMgr fm = new FileMgr(new File("dbtest-flushall"), 400);
+        String filename = "flushall.tbl";
+        fm.deleteFile(filename);
+        for (int i = 0; i < 4; i++) {
+            fm.append(filename);
+        }
+        LogMgr.delete(fm, "flushall.log");
+        LogMgr lm = new LogMgr(fm, "flushall.log");
+        BufferMgr bm = new BufferMgr(fm, lm, 3);
+
+        // 事务1修改第0块后取消固定
+        BlockId blk0 = new BlockId(filename, 0);
+        Buffer buff = bm.pin(blk0);
+        buff.contents().setInt(0, 1234);
+        buff.setModified(1, lm.append(new byte[8]));
+        bm.unpin(buff);
+        // 固定另外3个块，唯一未被固定的缓冲区(第0块)被淘汰并写回
+        Buffer[] others = new Buffer[3];
+        for (int i = 1; i <= 3; i++) {
+            others[i - 1] = bm.pin(new BlockId(filename, i));
+        }
+        check(bm.dirtyVictimWrites() == 1, "block 0 was written as a dirty victim");
+
+        long before = fm.ioStats(filename).getForces();
+        bm.flushAll(1);
+        check(fm.ioStats(filename).getForces() == before + 1, "flushAll forces the evicted block's file");
+
+        // 之后的提交没有淘汰写回, 不再刷盘
+        before = fm.ioStats(filename).getForces();
+        bm.flushAll(2);
+        check(fm.ioStats(filename).getForces() == before, "flushAll without early writes does not force");
+
+        for (Buffer b : others) {
+            bm.unpin(b);
+        }
+        buff = bm.pin(blk0);
+        check(buff.contents().getInt(0) == 1234, "evicted block is read back with the modification");
+        bm.unpin(buff);
+        lm.close();
+
+        System.out.println(ok ? "flushAll: ok" : "flushAll: failed");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("failed: " + what);
+            ok = false;
+        }
+    }
+}
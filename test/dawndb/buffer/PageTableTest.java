@@ -0,0 +1,104 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+import dawndb.file.Page;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 4:50
+ * @Version: 1.0
+ * @Description:
+ * 页表测试。以HashMap为参照随机插入、替换、删除表项，每步之后检查所有块的查找结果，
+ * 表较小且接近装满，探测序列冲突、跨越表尾回绕以及删除时表项前移都会频繁发生；
+ * 中途扩容后继续检查。最后检查用完即删的临时文件不会使文件编号表无限增长
+ */
+
+
+public class PageTableTest {
+
+    private static boolean ok = true;
+
+    public static void main(String[] args) {
+        int capacity = 8;
+        PageTable pt = new PageTable(capacity);
+        Map<BlockId, Buffer> model = new HashMap<>();
+        List<BlockId> universe = new ArrayList<>();
+        for (int f = 0; f < 3; f++) {
+            for (int b = 0; b < 12; b++) {
+                universe.add(new BlockId("pt" + f + ".tbl", b));
+            }
+        }
+        Random random = new Random(7);
+        for (int step = 0; step < 20000; step++) {
+            if (step == 10000) {
+                capacity = 24;
+                pt.ensureCapacity(capacity);
+            }
+            BlockId blk = universe.get(random.nextInt(universe.size()));
+            if (model.containsKey(blk) && random.nextBoolean()) {
+                pt.remove(blk);
+                model.remove(blk);
+            } else if (model.containsKey(blk) || model.size() < capacity) {
+                Buffer buff = newBuffer(step);
+                pt.put(blk, buff);
+                model.put(blk, buff);
+            } else {
+                // 删除不存在的块不影响页表
+                pt.remove(new BlockId(blk.filename(), blk.blknum() + 100));
+            }
+            if (!verify(pt, model, universe)) {
+                check(false, "lookups match the reference map at step " + step);
+                break;
+            }
+        }
+        check(pt.files() <= 3, "file ids of the reference files");
+
+        // 临时文件: 放入后全部删除, 文件编号随最后一个块回收
+        for (int t = 0; t < 10000; t++) {
+            BlockId blk = new BlockId("temp" + t, t % 5);
+            pt.put(blk, newBuffer(t));
+            pt.remove(blk);
+        }
+        int referenceFiles = (int) model.keySet().stream().map(BlockId::filename).distinct().count();
+        check(pt.files() == referenceFiles, "deleted temp files do not keep file ids: " + pt.files());
+        check(pt.size() == model.size() && verify(pt, model, universe), "temp files leave other entries intact");
+        for (BlockId blk : new ArrayList<>(model.keySet())) {
+            pt.remove(blk);
+        }
+        check(pt.size() == 0 && pt.files() == 0, "empty table has no file ids");
+
+        System.out.println(ok ? "page table: ok" : "page table: failed");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static Buffer newBuffer(int frame) {
+        return new Buffer(null, null, frame, null, new Page(new byte[Integer.BYTES]));
+    }
+
+    private static boolean verify(PageTable pt, Map<BlockId, Buffer> model, List<BlockId> universe) {
+        if (pt.size() != model.size()) {
+            return false;
+        }
+        for (BlockId blk : universe) {
+            if (pt.get(blk) != model.get(blk) || pt.get(blk.filename(), blk.blknum()) != model.get(blk)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("failed: " + what);
+            ok = false;
+        }
+    }
+}
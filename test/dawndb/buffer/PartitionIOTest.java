@@ -0,0 +1,143 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+import dawndb.file.FileMgr;
+import dawndb.file.Page;
+import dawndb.log.LogMgr;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 6:00
+ * @Version: 1.0
+ * @Description:
+ * 固定块时的I/O不在分区锁内进行：一个线程读入块或写回被淘汰的脏缓冲区很慢时，
+ * 同一分区中命中的固定不受影响；同时固定正在读入的块的线程等待读入完成并看到读入的内容，
+ * 固定正在写回的旧块的线程直接命中，看到的是修改后的内容。
+ * 用一个读写slow.tbl时变慢的文件管理器模拟慢速磁盘
+ */
+
+
+public class PartitionIOTest {
+
+    private static final long DELAY = 500;
+    private static boolean ok = true;
+
+    public static void main(String[] args) throws Exception {
+        SlowFileMgr fm = new SlowFileMgr(new File("dbtest-partitionio"), 400);
+        LogMgr.delete(fm, "partitionio.log");
+        LogMgr lm = new LogMgr(fm, "partitionio.log");
+        fm.deleteFile("slow.tbl");
+        fm.deleteFile("fast.tbl");
+        Page p = fm.newPage();
+        p.setInt(0, 77);
+        fm.write(new BlockId("slow.tbl", 0), p);
+        BufferMgr bm = new BufferMgr(fm, lm, 2);
+
+        // 第0块读入中, 另一个线程命中fast.tbl的块
+        Buffer fast = bm.pin(new BlockId("fast.tbl", 0));
+        bm.unpin(fast);
+        fm.slow = true;
+        CountDownLatch started = new CountDownLatch(1);
+        int[] seen = new int[2];
+        Thread reader = new Thread(() -> {
+            started.countDown();
+            Buffer b = bm.pin(new BlockId("slow.tbl", 0));
+            seen[0] = b.contents().getInt(0);
+            bm.unpin(b);
+        });
+        reader.start();
+        started.await();
+        Thread.sleep(DELAY / 5);
+        long begin = System.currentTimeMillis();
+        fast = bm.pin(new BlockId("fast.tbl", 0));
+        long hitTime = System.currentTimeMillis() - begin;
+        bm.unpin(fast);
+        check(hitTime < DELAY / 2, "hit does not wait for another thread's read: " + hitTime + "ms");
+        // 同一块的第二个固定等待读入完成
+        Buffer same = bm.pin(new BlockId("slow.tbl", 0));
+        seen[1] = same.contents().getInt(0);
+        bm.unpin(same);
+        reader.join();
+        check(seen[0] == 77 && seen[1] == 77, "both pins of the block being read see its contents");
+        fm.slow = false;
+
+        // slow.tbl第0块被修改后淘汰, 写回期间命中fast.tbl的块并固定被淘汰的块
+        Buffer dirty = bm.pin(new BlockId("slow.tbl", 0));
+        dirty.contents().setInt(0, 88);
+        dirty.setModified(1, lm.append(new byte[8]));
+        bm.unpin(dirty);
+        fast = bm.pin(new BlockId("fast.tbl", 0));
+        fm.slow = true;
+        Thread evictor = new Thread(() -> {
+            Buffer b = bm.pin(new BlockId("fast.tbl", 1));
+            bm.unpin(b);
+        });
+        evictor.start();
+        Thread.sleep(DELAY / 5);
+        bm.unpin(fast);
+        begin = System.currentTimeMillis();
+        fast = bm.pin(new BlockId("fast.tbl", 0));
+        hitTime = System.currentTimeMillis() - begin;
+        bm.unpin(fast);
+        check(hitTime < DELAY / 2, "hit does not wait for another thread's dirty victim write: " + hitTime + "ms");
+        Buffer old = bm.pin(new BlockId("slow.tbl", 0));
+        check(old.contents().getInt(0) == 88, "block being written out is still resident with its changes");
+        bm.unpin(old);
+        evictor.join();
+        fm.slow = false;
+        check(bm.dirtyVictimWrites() >= 1, "dirty victim was written");
+        Page disk = fm.newPage();
+        fm.read(new BlockId("slow.tbl", 0), disk);
+        check(disk.getInt(0) == 88, "dirty victim reached the disk");
+        check(bm.available() == 2, "all buffers are unpinned");
+
+        lm.close();
+        System.out.println(ok ? "partition I/O: ok" : "partition I/O: failed");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("failed: " + what);
+            ok = false;
+        }
+    }
+
+    /**
+     * slow为true时读写slow.tbl前等待DELAY毫秒
+     */
+    private static class SlowFileMgr extends FileMgr {
+        volatile boolean slow;
+
+        SlowFileMgr(File dbDirectory, int blocksize) {
+            super(dbDirectory, blocksize);
+        }
+
+        @Override
+        public void read(BlockId blk, Page p) {
+            delay(blk);
+            super.read(blk, p);
+        }
+
+        @Override
+        public void write(BlockId blk, Page p) {
+            delay(blk);
+            super.write(blk, p);
+        }
+
+        private void delay(BlockId blk) {
+            if (slow && blk.filename().equals("slow.tbl")) {
+                try {
+                    Thread.sleep(DELAY);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
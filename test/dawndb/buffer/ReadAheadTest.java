@@ -0,0 +1,87 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+import dawndb.file.FileMgr;
+import dawndb.file.Page;
+import dawndb.log.LogMgr;
+
+import java.io.File;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 6:50
+ * @Version: 1.0
+ * @Description:
+ * 顺序预读测试。
+ * 1. 顺序扫描触发预读后立即停止预读线程，之后对同一文件的读写都应正常进行，扫描读到的内容正确。
+ * 停止时若中断预读线程，正在进行的读会关闭共享的文件通道，之后的读写失败;
+ * 2. 依次访问大量只用一次的文件(如用完即删的临时文件)，记录访问模式的文件数不超过上限
+ */
+
+
+public class ReadAheadTest {
+
+    private static final int BLOCKS = 400;
+    private static boolean ok = true;
+
+    public static void main(String[] args) {
+        FileMgr fm = new FileMgr(new File("dbtest-readahead"), 400);
+        String filename = "readahead.tbl";
+        fm.deleteFile(filename);
+        Page p = fm.newPage();
+        for (int i = 0; i < BLOCKS; i++) {
+            p.setInt(0, i);
+            fm.write(new BlockId(filename, i), p);
+        }
+        LogMgr.delete(fm, "readahead.log");
+        LogMgr lm = new LogMgr(fm, "readahead.log");
+        BufferMgr bm = new BufferMgr(fm, lm, 128);
+
+        for (int round = 0; round < 100; round++) {
+            bm.startReadAhead(32);
+            int start = round * 7 % (BLOCKS - 64);
+            for (int i = start; i < start + 40; i++) {
+                Buffer buff = bm.pin(new BlockId(filename, i));
+                check(buff.contents().getInt(0) == i, "scan reads block " + i + " in round " + round);
+                bm.unpin(buff);
+            }
+            bm.stopReadAhead();
+            try {
+                BlockId blk = new BlockId(filename, BLOCKS - 1);
+                fm.read(blk, p);
+                check(p.getInt(0) == BLOCKS - 1, "read after stopping read ahead in round " + round);
+                fm.write(blk, p);
+                Buffer buff = bm.pin(new BlockId(filename, start + 50));
+                check(buff.contents().getInt(0) == start + 50, "pin after stopping read ahead in round " + round);
+                bm.unpin(buff);
+            } catch (RuntimeException e) {
+                check(false, "I/O after stopping read ahead in round " + round + ": " + e.getMessage());
+                break;
+            }
+        }
+        check(bm.prefetched() > 0, "sequential scans were prefetched");
+        check(bm.available() == 128, "all buffers are unpinned");
+
+        // 未启动预读线程, 只检查访问模式的记录
+        ReadAhead ra = new ReadAhead(bm, fm, 8);
+        int most = 0;
+        for (int i = 0; i < 2000; i++) {
+            ra.accessed(new BlockId("temp" + i, 0));
+            most = Math.max(most, ra.streams());
+        }
+        check(most <= 256, "streams are bounded, at most " + most);
+
+        lm.close();
+        System.out.println(ok ? "read ahead: ok" : "read ahead: failed");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("failed: " + what);
+            ok = false;
+        }
+    }
+}
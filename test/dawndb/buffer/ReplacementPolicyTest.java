@@ -0,0 +1,214 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 5:10
+ * @Version: 1.0
+ * @Description:
+ * 替换策略的淘汰对象测试。
+ * 1. CLOCK、LRU-K、2Q各用一段确定的访问序列检查淘汰顺序：CLOCK的第二次机会，
+ * LRU-K中访问不足K次的块先被淘汰、被淘汰块的访问历史在重新读入时恢复，2Q中A1in先进先出、
+ * A1out中的块重新读入后进入Am、Am按LRU淘汰且被固定的缓冲区被跳过;
+ * 2. 对所有策略随机固定、取消固定、读入新块(中途改变缓冲池大小)，检查victim只返回未被固定的缓冲区、
+ * 全部被固定时返回-1，nextVictims的结果互不相同、都未被固定且第一个与victim一致
+ */
+
+
+public class ReplacementPolicyTest {
+
+    private static boolean ok = true;
+
+    public static void main(String[] args) {
+        clock();
+        lruK();
+        twoQ();
+        for (String name : new String[] {"naive", "clock", "lru-1", "lru-2", "lru-3", "2q"}) {
+            random(name);
+        }
+        System.out.println(ok ? "replacement policies: ok" : "replacement policies: failed");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static void clock() {
+        ReplacementPolicy p = new ClockPolicy();
+        p.init(4);
+        for (int f = 0; f < 4; f++) {
+            load(p, f, "c", f);
+        }
+        // 访问位都为1: 第一圈清零, 淘汰指针处的第0个
+        check(p.victim() == 0, "clock: all referenced, victim is at the hand");
+        load(p, 0, "c", 4);
+        touch(p, 1, "c", 1);
+        // 指针在1: 第1个刚被访问过, 得到第二次机会
+        check(p.victim() == 2, "clock: recently referenced frame gets a second chance");
+        p.pinned(3, new BlockId("c", 3), true);
+        check(p.victim() == 1, "clock: pinned frame is skipped");
+    }
+
+    private static void lruK() {
+        ReplacementPolicy p = new LruKPolicy(2);
+        p.init(3);
+        load(p, 0, "a", 0);
+        touch(p, 0, "a", 0);
+        load(p, 1, "b", 0);
+        load(p, 2, "c", 0);
+        touch(p, 2, "c", 0);
+        check(p.victim() == 1, "lru-2: block accessed once is evicted first");
+        load(p, 1, "d", 0);
+        check(p.victim() == 1, "lru-2: new block accessed once is evicted first");
+        touch(p, 1, "d", 0);
+        check(p.victim() == 0, "lru-2: oldest second to last access is evicted");
+        // b只被访问过一次, 其历史随淘汰保留, 重新读入后访问两次, 倒数第2次访问早于c、d
+        load(p, 0, "b", 0);
+        check(p.victim() == 0, "lru-2: retained history is restored on reload");
+        check(Arrays.equals(p.nextVictims(3), new int[] {0, 2, 1}), "lru-2: victim order "
+                + Arrays.toString(p.nextVictims(3)));
+
+        ReplacementPolicy q = new LruKPolicy(2);
+        q.init(3);
+        load(q, 0, "x", 0);
+        load(q, 1, "y", 0);
+        load(q, 2, "z", 0);
+        touch(q, 0, "x", 0);
+        // y、z都只被访问过一次, 按最近一次访问的先后淘汰
+        check(q.victim() == 1, "lru-2: least recent of the blocks with fewer than K accesses");
+    }
+
+    private static void twoQ() {
+        ReplacementPolicy p = new TwoQPolicy();
+        p.init(4);
+        for (int f = 0; f < 4; f++) {
+            load(p, f, "q", f);
+        }
+        check(p.victim() == 0, "2q: A1in is first in first out");
+        load(p, 0, "q", 4);
+        touch(p, 2, "q", 2);
+        check(p.victim() == 1, "2q: hits do not move blocks in A1in");
+        // q0在A1out中, 重新读入进入Am
+        load(p, 1, "q", 0);
+        check(p.victim() == 2, "2q: block reloaded from A1out is not in A1in");
+        load(p, 2, "q", 1);
+        check(p.victim() == 3, "2q: A1in above its target size is evicted first");
+        load(p, 3, "q", 2);
+        // A1in只剩第0个, 不超过目标大小, 从Am淘汰最近最少使用的
+        check(p.victim() == 1, "2q: least recently used frame of Am");
+        touch(p, 1, "q", 0);
+        check(p.victim() == 2, "2q: hit moves a frame to the end of Am");
+        p.pinned(2, new BlockId("q", 1), true);
+        check(p.victim() == 3, "2q: pinned frame of Am is skipped");
+    }
+
+    /**
+     * 随机的固定、取消固定与读入新块
+     */
+    private static void random(String name) {
+        ReplacementPolicy p = ReplacementPolicy.forName(name);
+        Random random = new Random(name.hashCode());
+        int n = 16;
+        p.init(n);
+        int[] pins = new int[64];
+        BlockId[] blocks = new BlockId[64];
+        int nextBlock = 0;
+        for (int f = 0; f < n; f++) {
+            blocks[f] = new BlockId("r", nextBlock++);
+            load(p, f, blocks[f]);
+        }
+        for (int step = 0; step < 50000; step++) {
+            if (step % 10000 == 9999) {
+                // 缩小时被移除的缓冲区须未被固定
+                int m = 8 + random.nextInt(40);
+                for (int f = m; f < n; f++) {
+                    if (pins[f] > 0) {
+                        pins[f] = 0;
+                        p.unpinned(f);
+                    }
+                }
+                p.resize(m);
+                for (int f = n; f < m; f++) {
+                    blocks[f] = new BlockId("r", nextBlock++);
+                    load(p, f, blocks[f]);
+                }
+                Arrays.fill(pins, m, pins.length, 0);
+                n = m;
+            }
+            int f = random.nextInt(n);
+            int op = random.nextInt(3);
+            if (op == 0) {
+                pins[f]++;
+                p.pinned(f, blocks[f], true);
+            } else if (op == 1 && pins[f] > 0) {
+                if (--pins[f] == 0) {
+                    p.unpinned(f);
+                }
+            } else {
+                int v = checkVictims(p, pins, n, name, step);
+                if (v == -2) {
+                    return;
+                }
+                if (v >= 0) {
+                    blocks[v] = new BlockId("r", random.nextInt(4) == 0 ? random.nextInt(nextBlock) : nextBlock++);
+                    pins[v]++;
+                    p.pinned(v, blocks[v], false);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return victim的结果, 不正确时返回-2
+     */
+    private static int checkVictims(ReplacementPolicy p, int[] pins, int n, String name, int step) {
+        boolean anyUnpinned = false;
+        for (int f = 0; f < n; f++) {
+            anyUnpinned |= pins[f] == 0;
+        }
+        int[] next = p.nextVictims(n);
+        Set<Integer> seen = new HashSet<>();
+        for (int f : next) {
+            if (f < 0 || f >= n || pins[f] > 0 || !seen.add(f)) {
+                check(false, name + ": nextVictims returned frame " + f + " at step " + step);
+                return -2;
+            }
+        }
+        int v = p.victim();
+        if (anyUnpinned ? (v < 0 || v >= n || pins[v] > 0) : v != -1) {
+            check(false, name + ": victim " + v + " at step " + step);
+            return -2;
+        }
+        if (v >= 0 && (next.length == 0 || next[0] != v)) {
+            check(false, name + ": nextVictims does not start with the victim at step " + step);
+            return -2;
+        }
+        return v;
+    }
+
+    private static void load(ReplacementPolicy p, int frame, String filename, int blknum) {
+        load(p, frame, new BlockId(filename, blknum));
+    }
+
+    private static void load(ReplacementPolicy p, int frame, BlockId blk) {
+        p.pinned(frame, blk, false);
+        p.unpinned(frame);
+    }
+
+    private static void touch(ReplacementPolicy p, int frame, String filename, int blknum) {
+        p.pinned(frame, new BlockId(filename, blknum), true);
+        p.unpinned(frame);
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("failed: " + what);
+            ok = false;
+        }
+    }
+}
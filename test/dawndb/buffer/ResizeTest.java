@@ -0,0 +1,221 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+import dawndb.file.FileMgr;
+import dawndb.file.Page;
+import dawndb.log.LogMgr;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 8:10
+ * @Version: 1.0
+ * @Description:
+ * 缓冲池大小调整测试，检查调整前后没有丢失的修改(磁盘上是旧值)，也没有读到过期的页(缓冲区中是旧值)。
+ * 1. 单个分区，确定的步骤：扩大后增加内存段；缩小时未被固定的脏缓冲区立即写回并移出，
+ * 被固定的缓冲区排空期间仍可命中和修改，但不会被用来读入其他块；排空期间再扩大，
+ * 范围内的缓冲区重新属于分区；全部取消固定后写回并移出，内存段恢复为一个;
+ * 2. 四个分区、四个线程随机固定并修改块，同时开启后台写线程和预读，另一个线程不断改变缓冲池大小。
+ * 每个线程修改自己的块，固定时检查内容是自己最后写入的值；结束后检查磁盘上的值，
+ * 缩小到每个分区一个缓冲区后各分区只剩一个内存段
+ */
+
+
+public class ResizeTest {
+
+    private static boolean ok = true;
+
+    public static void main(String[] args) throws Exception {
+        FileMgr fm = new FileMgr(new File("dbtest-resize"), 400);
+        LogMgr.delete(fm, "resize.log");
+        LogMgr lm = new LogMgr(fm, "resize.log");
+        steps(fm, lm);
+        for (String policy : new String[] {"clock", "lru-2", "2q"}) {
+            stress(fm, lm, policy);
+        }
+        lm.close();
+        System.out.println(ok ? "resize: ok" : "resize: failed");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static void steps(FileMgr fm, LogMgr lm) {
+        String filename = "resize.tbl";
+        fm.deleteFile(filename);
+        Page p = fm.newPage();
+        for (int i = 0; i < 32; i++) {
+            p.setInt(0, i);
+            fm.write(new BlockId(filename, i), p);
+        }
+        BufferMgr bm = new BufferMgr(fm, lm, 8, 1, ClockPolicy::new);
+        BufferPartition part = bm.partition(new BlockId(filename, 0));
+
+        bm.resize(16);
+        check(part.segments() == 2 && bm.available() == 16, "growing adds a segment");
+        Buffer[] buffs = new Buffer[16];
+        for (int i = 0; i < 16; i++) {
+            buffs[i] = bm.pin(new BlockId(filename, i));
+            buffs[i].contents().setInt(0, 1000 + i);
+            buffs[i].setModified(1, lm.append(new byte[8]));
+        }
+        // 保留下标不小于8的缓冲区中的三个, 其余取消固定
+        List<Buffer> held = new ArrayList<>();
+        for (Buffer buff : buffs) {
+            if (buff.frame() >= 8 && held.size() < 3) {
+                held.add(buff);
+            } else {
+                bm.unpin(buff);
+            }
+        }
+
+        bm.resize(8);
+        check(bm.size() == 8 && bm.available() == 8, "shrinking keeps pinned buffers out of the count");
+        check(part.segments() == 2, "segment stays while buffers are retiring");
+        for (int i = 0; i < 16; i++) {
+            if (buffs[i].frame() >= 8 && !held.contains(buffs[i])) {
+                fm.read(new BlockId(filename, i), p);
+                check(p.getInt(0) == 1000 + i, "unpinned dirty block " + i + " is written when removed");
+            }
+        }
+        for (Buffer buff : held) {
+            Buffer again = bm.pin(buff.block());
+            check(again == buff && again.contents().getInt(0) == 1000 + buff.block().blknum(),
+                    "retiring buffer is still hit by its block");
+            again.contents().setInt(0, 2000 + buff.block().blknum());
+            again.setModified(2, lm.append(new byte[8]));
+            bm.unpin(again);
+        }
+        for (int i = 16; i < 32; i++) {
+            Buffer buff = bm.pin(new BlockId(filename, i));
+            check(buff.frame() < 8 && !held.contains(buff), "retiring buffer is not used for block " + i);
+            check(buff.contents().getInt(0) == i, "block " + i + " is read while buffers are retiring");
+            bm.unpin(buff);
+        }
+
+        // 排空期间扩大, 下标小于12的重新属于分区
+        bm.resize(12);
+        check(part.segments() == 3, "growing while retiring adds a segment");
+        for (Buffer buff : held) {
+            Buffer again = bm.pin(buff.block());
+            check(again == buff && again.contents().getInt(0) == 2000 + buff.block().blknum(),
+                    "buffer keeps its block across shrink and grow");
+            bm.unpin(again);
+        }
+        bm.resize(8);
+        for (Buffer buff : held) {
+            bm.unpin(buff);
+        }
+        check(bm.available() == 8, "all buffers are unpinned after draining");
+        check(part.segments() == 1, "drained segments are removed, " + part.segments() + " left");
+        for (Buffer buff : held) {
+            check(buff.block() == null, "drained buffer no longer belongs to a block");
+        }
+        bm.flushAll(1);
+        bm.flushAll(2);
+        for (int i = 0; i < 32; i++) {
+            int expected = (i >= 16) ? i : held.contains(buffs[i]) ? 2000 + i : 1000 + i;
+            fm.read(new BlockId(filename, i), p);
+            check(p.getInt(0) == expected, "block " + i + " on disk, found " + p.getInt(0));
+            Buffer b = bm.pin(new BlockId(filename, i));
+            check(b.contents().getInt(0) == expected, "block " + i + " in the pool, found " + b.contents().getInt(0));
+            bm.unpin(b);
+        }
+    }
+
+    private static void stress(FileMgr fm, LogMgr lm, String policy) throws Exception {
+        String filename = "resize-" + policy + ".tbl";
+        fm.deleteFile(filename);
+        int blocks = 2000;
+        for (int i = 0; i < blocks; i++) {
+            fm.append(filename);
+        }
+        BufferMgr bm = new BufferMgr(fm, lm, 256, 4, () -> ReplacementPolicy.forName(policy));
+        bm.startBackgroundWriter(1, 32, 50);
+        bm.startReadAhead(16);
+        int threads = 4;
+        int[] expected = new int[blocks];
+        AtomicInteger stale = new AtomicInteger();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            workers[t] = new Thread(() -> {
+                Random random = new Random(id);
+                for (int i = 1; i <= 30000; i++) {
+                    // 第id个线程只修改块号模threads余id的块, 其中三分之一按顺序访问以触发预读
+                    int n = (i % 3 == 0) ? (i / 3) % (blocks / threads) : random.nextInt(blocks / threads);
+                    int blknum = n * threads + id;
+                    Buffer buff = bm.pin(new BlockId(filename, blknum));
+                    if (buff.contents().getInt(0) != expected[blknum]) {
+                        stale.incrementAndGet();
+                    }
+                    buff.contents().setInt(0, i);
+                    buff.setModified(id + 1, -1);
+                    expected[blknum] = i;
+                    bm.unpin(buff);
+                    if (i % 1000 == 0) {
+                        bm.flushAll(id + 1);
+                    }
+                }
+                bm.flushAll(id + 1);
+            });
+            workers[t].start();
+        }
+        Random random = new Random(99);
+        int resizes = 0;
+        while (alive(workers)) {
+            bm.resize(16 + random.nextInt(512));
+            resizes++;
+            Thread.sleep(2);
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        bm.stopBackgroundWriter();
+        bm.stopReadAhead();
+        check(stale.get() == 0, policy + ": " + stale.get() + " stale pages in " + resizes + " resizes");
+
+        bm.resize(4);
+        check(bm.available() == 4, policy + ": all buffers are unpinned");
+        Set<BufferPartition> parts = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < blocks; i++) {
+            parts.add(bm.partition(new BlockId(filename, i)));
+        }
+        for (BufferPartition part : parts) {
+            check(part.segments() == 1, policy + ": drained partition keeps one segment, " + part.segments());
+        }
+        Page p = fm.newPage();
+        int lost = 0;
+        for (int i = 0; i < blocks; i++) {
+            fm.read(new BlockId(filename, i), p);
+            if (p.getInt(0) != expected[i]) {
+                lost++;
+            }
+        }
+        check(lost == 0, policy + ": " + lost + " lost writes");
+    }
+
+    private static boolean alive(Thread[] threads) {
+        for (Thread t : threads) {
+            if (t.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static synchronized void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("failed: " + what);
+            ok = false;
+        }
+    }
+}
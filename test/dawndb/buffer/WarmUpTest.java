@@ -0,0 +1,177 @@
+package dawndb.buffer;
+
+import dawndb.file.BlockId;
+import dawndb.file.FileMgr;
+import dawndb.file.Page;
+import dawndb.log.LogMgr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 8:30
+ * @Version: 1.0
+ * @Description:
+ * 缓冲池预热测试。
+ * 1. 按保存的驻留表预热，预热的块之后被固定时命中，内容正确;
+ * 2. 过期的驻留表：其中的文件已被删除、块在截短后的文件末尾之后、块在保存之后被修改，
+ * 预热忽略不存在的块且不重新创建已删除的文件，读入的是磁盘上当前的内容;
+ * 驻留表中的块多于缓冲区时只读入最近使用的块;
+ * 3. 损坏的驻留表(某个字节被改写、被截短、开头不是驻留表、块数或文件名个数不合理)被忽略，
+ * 缓冲池中没有预热的块，之后正常使用
+ */
+
+
+public class WarmUpTest {
+
+    private static final int BUFFERS = 16;
+    private static boolean ok = true;
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File("dbtest-warmup");
+        FileMgr fm = new FileMgr(dir, 400);
+        String filename = "warmup.tbl";
+        String gone = "gone.tbl";
+        fm.deleteFile(filename);
+        fm.deleteFile(gone);
+        Page p = fm.newPage();
+        for (int i = 0; i < 40; i++) {
+            p.setInt(0, i);
+            fm.write(new BlockId(filename, i), p);
+        }
+        fm.write(new BlockId(gone, 0), p);
+        LogMgr.delete(fm, "warmup.log");
+        LogMgr lm = new LogMgr(fm, "warmup.log");
+        File map = new File(dir, "warmup.map");
+        map.delete();
+
+        // 正常的驻留表
+        BufferMgr bm = new BufferMgr(fm, lm, BUFFERS);
+        for (int i = 0; i < 10; i++) {
+            bm.unpin(bm.pin(new BlockId(filename, i)));
+        }
+        bm.saveResidency(map);
+        BufferMgr warm = new BufferMgr(fm, lm, BUFFERS);
+        warm.startWarmUp(map);
+        warm.awaitWarmUp();
+        check(warm.warmedUp() == 10, "resident blocks are warmed up, " + warm.warmedUp());
+        for (int i = 0; i < 10; i++) {
+            Buffer buff = warm.pin(new BlockId(filename, i));
+            check(buff.contents().getInt(0) == i, "warmed up block " + i + " has its contents");
+            warm.unpin(buff);
+        }
+        check(warm.hits() == 10 && warm.misses() == 0, "warmed up blocks are hits");
+
+        // 过期的驻留表
+        List<BlockId> blocks = new ArrayList<>();
+        blocks.add(new BlockId(gone, 0));
+        for (int i = 0; i < 8; i++) {
+            blocks.add(new BlockId(filename, i));
+        }
+        blocks.add(new BlockId(filename, 100));
+        blocks.add(new BlockId(filename, 39));
+        ResidencyMap.save(blocks, map);
+        fm.deleteFile(gone);
+        for (int i = 0; i < 8; i++) {
+            p.setInt(0, 500 + i);
+            fm.write(new BlockId(filename, i), p);
+        }
+        warm = new BufferMgr(fm, lm, BUFFERS);
+        warm.startWarmUp(map);
+        warm.awaitWarmUp();
+        check(warm.warmedUp() == 9, "only blocks that still exist are warmed up, " + warm.warmedUp());
+        check(!fm.exists(gone), "deleted file is not recreated");
+        check(!warm.residentBlocks().contains(new BlockId(filename, 100)), "block past the end is not warmed up");
+        check(warm.available() == BUFFERS, "warm up leaves all buffers unpinned");
+        for (int i = 0; i < 8; i++) {
+            Buffer buff = warm.pin(new BlockId(filename, i));
+            check(buff.contents().getInt(0) == 500 + i, "warm up reads the current contents of block " + i);
+            warm.unpin(buff);
+        }
+
+        // 驻留表中的块多于缓冲区
+        blocks.clear();
+        for (int i = 39; i >= 0; i--) {
+            blocks.add(new BlockId(filename, i));
+        }
+        ResidencyMap.save(blocks, map);
+        warm = new BufferMgr(fm, lm, BUFFERS);
+        warm.startWarmUp(map);
+        warm.awaitWarmUp();
+        check(warm.warmedUp() == BUFFERS, "warm up fills the pool, " + warm.warmedUp());
+        List<BlockId> resident = warm.residentBlocks();
+        for (int i = 39; i >= 40 - BUFFERS; i--) {
+            check(resident.contains(new BlockId(filename, i)), "most recently used block " + i + " is warmed up");
+        }
+
+        // 损坏的驻留表
+        ResidencyMap.save(blocks, map);
+        byte[] good = Files.readAllBytes(map.toPath());
+        // 末尾依次是块数、40个块各8字节、8字节的CRC32
+        int blockCount = good.length - 8 - 8 * 40 - 4;
+        corrupt(fm, lm, map, good, "a flipped byte", bytes -> bytes[bytes.length / 2] ^= 0x55);
+        corrupt(fm, lm, map, good, "a wrong checksum", bytes -> bytes[bytes.length - 1] ^= 0x01);
+        corrupt(fm, lm, map, good, "a wrong magic number", bytes -> bytes[0] = 0);
+        corrupt(fm, lm, map, good, "a huge file name count", bytes -> bytes[4] = 0x7f);
+        corrupt(fm, lm, map, good, "a huge block count", bytes -> bytes[blockCount] = 0x7f);
+        corrupt(fm, lm, map, good, "a negative block count", bytes -> bytes[blockCount] = (byte) 0x80);
+        write(map, Arrays.copyOf(good, good.length / 2));
+        warmCorrupted(fm, lm, map, "a truncated map");
+
+        lm.close();
+        System.out.println(ok ? "warm up: ok" : "warm up: failed");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private interface Damage {
+        void apply(byte[] bytes);
+    }
+
+    private static void corrupt(FileMgr fm, LogMgr lm, File map, byte[] good, String what, Damage damage)
+            throws IOException {
+        byte[] bytes = good.clone();
+        damage.apply(bytes);
+        write(map, bytes);
+        warmCorrupted(fm, lm, map, "a map with " + what);
+    }
+
+    /**
+     * 用损坏的驻留表预热：不读入任何块，缓冲池仍可正常使用
+     */
+    private static void warmCorrupted(FileMgr fm, LogMgr lm, File map, String what) {
+        BufferMgr warm = new BufferMgr(fm, lm, BUFFERS);
+        try {
+            warm.startWarmUp(map);
+            warm.awaitWarmUp();
+        } catch (RuntimeException e) {
+            check(false, what + " is ignored, but " + e);
+            return;
+        }
+        check(warm.warmedUp() == 0 && warm.residentBlocks().isEmpty(), what + " warms up nothing");
+        Buffer buff = warm.pin(new BlockId("warmup.tbl", 20));
+        check(buff.contents().getInt(0) == 20, "pool works after " + what);
+        warm.unpin(buff);
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            raf.write(bytes);
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("failed: " + what);
+            ok = false;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package dawndb.file;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 4:30
+ * @Version: 1.0
+ * @Description:
+ * 压缩文件测试：压缩后、重新打开后、改写和追加块后以及再次压缩后，各块内容与原文件一致;
+ * 再次压缩回收改写留下的空洞并删除上一代数据文件; 打开时删除重写中途崩溃遗留的文件。
+ * 文件包含可压缩的块、随机(不可压缩)的块和追加而未写入的全0块
+ */
+
+
+public class CompressedFileTest {
+
+    private static final int BLOCK_SIZE = 400;
+    private static final int BLOCKS = 20;
+    private static boolean ok = true;
+
+    public static void main(String[] args) {
+        File dir = new File("dbtest-compress");
+        String filename = "cold.tbl";
+        FileMgr fm = new FileMgr(dir, BLOCK_SIZE);
+        fm.deleteFile(filename);
+        byte[][] expected = new byte[BLOCKS + 1][];
+        Random random = new Random(42);
+        for (int b = 0; b < BLOCKS; b++) {
+            fm.append(filename);
+            // 第7块追加后不写入, 每5块中有一块随机内容
+            if (b != 7) {
+                expected[b] = (b % 5 == 3) ? randomBlock(random) : textBlock(b);
+                write(fm, filename, b, expected[b]);
+            } else {
+                expected[b] = new byte[BLOCK_SIZE];
+            }
+        }
+        fm.force(filename);
+        long raw = new File(dir, filename).length();
+
+        fm.compress(filename);
+        check(fm.isCompressed(filename), "file is compressed");
+        check(!new File(dir, filename).exists(), "uncompressed file is removed");
+        File gen1 = CompressedFile.dataFile(new File(dir, filename), 1);
+        check(gen1.length() < raw / 2, "compressed data is smaller: " + gen1.length() + " of " + raw);
+        verify(fm, filename, expected, "after compress");
+
+        FileMgr fm2 = new FileMgr(dir, BLOCK_SIZE);
+        verify(fm2, filename, expected, "after reopen");
+
+        // 改写块(留下空洞)并追加一块
+        for (int b = 0; b < BLOCKS; b += 4) {
+            expected[b] = textBlock(b + 100);
+            write(fm2, filename, b, expected[b]);
+        }
+        expected[BLOCKS] = textBlock(BLOCKS);
+        BlockId appended = fm2.append(filename);
+        check(appended.blknum() == BLOCKS, "append to a compressed file");
+        write(fm2, filename, BLOCKS, expected[BLOCKS]);
+        fm2.force(filename);
+        long withHoles = gen1.length();
+        verify(fm2, filename, expected, "after rewriting blocks");
+
+        FileMgr fm3 = new FileMgr(dir, BLOCK_SIZE);
+        verify(fm3, filename, expected, "after rewriting blocks and reopen");
+
+        fm3.compress(filename);
+        File gen2 = CompressedFile.dataFile(new File(dir, filename), 2);
+        check(gen2.exists() && !gen1.exists(), "recompress switches to the next generation");
+        check(gen2.length() < withHoles, "recompress reclaims holes: " + gen2.length() + " of " + withHoles);
+        verify(fm3, filename, expected, "after recompress");
+
+        // 重写中途崩溃: 遗留上一代的数据文件和未完成的临时块映射
+        write(gen1, 1000);
+        write(CompressedFile.mapFile(new File(dir, "temp.compress." + filename)), 100);
+        FileMgr fm4 = new FileMgr(dir, BLOCK_SIZE);
+        verify(fm4, filename, expected, "after a crash during recompress");
+        check(!gen1.exists(), "stale generation is removed on open");
+        check(!CompressedFile.mapFile(new File(dir, "temp.compress." + filename)).exists(),
+                "unfinished block map is removed on startup");
+
+        fm4.deleteFile(filename);
+        check(!gen2.exists() && !CompressedFile.mapFile(new File(dir, filename)).exists(),
+                "delete removes the data file and the block map");
+        System.out.println(ok ? "compressed file: ok" : "compressed file: failed");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static byte[] textBlock(int b) {
+        byte[] bytes = new byte[BLOCK_SIZE];
+        Page p = new Page(bytes);
+        for (int pos = 0; pos + Page.maxLength(12) <= BLOCK_SIZE; pos += Page.maxLength(12)) {
+            p.setString(pos, "row " + b + " " + (pos % 7));
+        }
+        return bytes;
+    }
+
+    private static byte[] randomBlock(Random random) {
+        byte[] bytes = new byte[BLOCK_SIZE];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void write(FileMgr fm, String filename, int blknum, byte[] bytes) {
+        Page p = fm.newPage();
+        p.contents().put(0, bytes);
+        fm.write(new BlockId(filename, blknum), p);
+    }
+
+    private static void write(File f, int bytes) {
+        try (FileOutputStream out = new FileOutputStream(f)) {
+            out.write(new byte[bytes]);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void verify(FileMgr fm, String filename, byte[][] expected, String when) {
+        int blocks = expected[BLOCKS] == null ? BLOCKS : BLOCKS + 1;
+        check(fm.length(filename) == blocks, "length " + when);
+        Page p = fm.newPage();
+        byte[] actual = new byte[BLOCK_SIZE];
+        for (int b = 0; b < blocks; b++) {
+            fm.read(new BlockId(filename, b), p);
+            p.contents().get(0, actual);
+            check(Arrays.equals(actual, expected[b]), "block " + b + " " + when);
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("failed: " + what);
+            ok = false;
+        }
+    }
+}
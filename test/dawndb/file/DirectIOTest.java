@@ -0,0 +1,148 @@
+package dawndb.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 3:50
+ * @Version: 1.0
+ * @Description:
+ * DIRECT方式的读写测试：对齐页、未对齐的直接缓冲区(经中转缓冲区)、堆上的页都能正确读写，
+ * 批量读写与逐块读写结果一致；文件末尾不足一块的部分和文件之外的块读出时以0填充。
+ * 文件系统不支持直接I/O时退回STANDARD方式，只检查读写结果
+ */
+
+
+public class DirectIOTest {
+
+    private static final int BLOCK_SIZE = 4096;
+    private static boolean ok = true;
+
+    public static void main(String[] args) throws IOException {
+        File dir = new File("dbtest-direct");
+        FileMgr fm = new FileMgr(dir, BLOCK_SIZE, StorageMode.DIRECT);
+        boolean direct = fm.storageMode() == StorageMode.DIRECT;
+        if (direct) {
+            check(fm.alignment() > 1, "alignment is the file system block size");
+            check(fm.newPage().contents().alignmentOffset(0, fm.alignment()) == 0, "new pages are aligned");
+            try {
+                new FileMgr(dir, fm.alignment() + 100, StorageMode.DIRECT);
+                check(false, "unaligned block size is rejected");
+            } catch (IllegalArgumentException e) {
+                // 预期的异常
+            }
+        } else {
+            System.out.println("direct I/O is not available, checking buffered I/O only");
+        }
+
+        String filename = "direct.tbl";
+        fm.deleteFile(filename);
+        Page aligned = fm.newPage();
+        Page unaligned = unalignedPage(fm);
+        Page heap = new Page(new byte[BLOCK_SIZE]);
+        if (direct) {
+            check(unaligned.contents().alignmentOffset(0, fm.alignment()) != 0, "test page is unaligned");
+        }
+        Page[] pages = {aligned, unaligned, heap};
+        for (int i = 0; i < pages.length; i++) {
+            fill(pages[i], i + 1);
+            fm.write(new BlockId(filename, i), pages[i]);
+        }
+        for (int i = 0; i < pages.length; i++) {
+            for (Page p : new Page[] {fm.newPage(), unalignedPage(fm), new Page(new byte[BLOCK_SIZE])}) {
+                fm.read(new BlockId(filename, i), p);
+                check(filled(p, i + 1), "block " + i + " read into " + describe(p));
+            }
+        }
+
+        // 批量写入未对齐的页, 再批量读回
+        Page u1 = unalignedPage(fm);
+        Page u2 = unalignedPage(fm);
+        fill(u1, 4);
+        fill(u2, 5);
+        fm.writeBatch(List.of(new BlockId(filename, 3), new BlockId(filename, 4)), List.of(u1, u2));
+        List<Page> batch = List.of(fm.newPage(), fm.newPage(), fm.newPage(), fm.newPage(), fm.newPage(), fm.newPage());
+        fm.readBatch(new BlockId(filename, 0), batch);
+        for (int i = 0; i < 5; i++) {
+            check(filled(batch.get(i), i + 1), "batch read of block " + i);
+        }
+        check(filled(batch.get(5), 0), "batch read beyond the end is zero filled");
+        fm.closeFile(filename);
+
+        // 文件末尾不足一块: 第1块只有100字节
+        String tail = "tail.tbl";
+        fm.deleteFile(tail);
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, tail), "rw")) {
+            byte[] b = new byte[BLOCK_SIZE + 100];
+            for (int i = 0; i < b.length; i++) {
+                b[i] = 7;
+            }
+            raf.write(b);
+        }
+        Page p = fm.newPage();
+        fm.read(new BlockId(tail, 1), p);
+        check(p.contents().get(0) == 7 && p.contents().get(99) == 7, "partial tail block is read");
+        check(zeroFrom(p, 100), "rest of the partial tail block is zero filled");
+        p = unalignedPage(fm);
+        fm.read(new BlockId(tail, 1), p);
+        check(p.contents().get(99) == 7 && zeroFrom(p, 100), "partial tail block through the bounce buffer");
+        fm.read(new BlockId(tail, 5), p);
+        check(zeroFrom(p, 0), "block beyond the end is zero filled");
+
+        fm.deleteFile(filename);
+        fm.deleteFile(tail);
+        System.out.println(ok ? "direct I/O: ok" : "direct I/O: failed");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 起始地址比对齐位置偏移1字节的直接缓冲区页
+     */
+    private static Page unalignedPage(FileMgr fm) {
+        int alignment = Math.max(fm.alignment(), 8);
+        ByteBuffer bb = ByteBuffer.allocateDirect(BLOCK_SIZE + 2 * alignment).alignedSlice(alignment);
+        return new Page(bb.position(1).limit(1 + BLOCK_SIZE).slice());
+    }
+
+    private static void fill(Page p, int value) {
+        for (int i = 0; i < BLOCK_SIZE; i += Integer.BYTES) {
+            p.setInt(i, value * 1000 + i);
+        }
+    }
+
+    private static boolean filled(Page p, int value) {
+        for (int i = 0; i < BLOCK_SIZE; i += Integer.BYTES) {
+            if (p.getInt(i) != (value == 0 ? 0 : value * 1000 + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean zeroFrom(Page p, int from) {
+        for (int i = from; i < BLOCK_SIZE; i++) {
+            if (p.contents().get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String describe(Page p) {
+        ByteBuffer bb = p.contents();
+        return bb.isDirect() ? (bb.alignmentOffset(0, 8) == 0 ? "aligned page" : "unaligned page") : "heap page";
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("failed: " + what);
+            ok = false;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package dawndb.file;
+
+import java.io.File;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 3:30
+ * @Version: 1.0
+ * @Description:
+ * 按区增长的文件在崩溃后的逻辑块数恢复。不关闭文件管理器而在同一目录上新建一个，模拟崩溃后重启：
+ * 1. 刷盘(保存.eof)之后又追加并写入的块，重启后仍计入文件;
+ * 2. 预分配新区之后、写入新块之前崩溃，预分配的0块不计入文件;
+ * 3. 没有.eof文件(按区增长之前创建的文件)时，以文件的物理大小为准
+ */
+
+
+public class FileExtentTest {
+
+    private static boolean ok = true;
+
+    public static void main(String[] args) {
+        File dir = new File("dbtest-extent");
+        String filename = "extent.tbl";
+        FileMgr fm = new FileMgr(dir, 400);
+        fm.deleteFile(filename);
+        fm.setExtentSize(8);
+
+        // 写入两块并刷盘, .eof中保存2
+        for (int i = 0; i < 2; i++) {
+            write(fm, fm.append(filename), i);
+        }
+        fm.force(filename);
+        // 再追加3块, 只写入其中两块, 不刷盘
+        for (int i = 2; i < 5; i++) {
+            BlockId blk = fm.append(filename);
+            if (i < 4) {
+                write(fm, blk, i);
+            }
+        }
+        check(fm.length(filename) == 5, "length before crash");
+
+        FileMgr fm2 = new FileMgr(dir, 400);
+        check(fm2.length(filename) == 4, "written blocks after the saved length survive a crash");
+        for (int i = 0; i < 4; i++) {
+            check(read(fm2, new BlockId(filename, i)) == i, "block " + i + " contents after a crash");
+        }
+        check(fm2.append(filename).blknum() == 4, "append continues after the recovered length");
+
+        // 第9块触发预分配第二个区(先保存逻辑块数8), 写入前崩溃
+        fm2.setExtentSize(8);
+        for (int i = 5; i < 8; i++) {
+            write(fm2, fm2.append(filename), i);
+        }
+        write(fm2, new BlockId(filename, 4), 4);
+        BlockId blk8 = fm2.append(filename);
+        check(blk8.blknum() == 8, "block 8 starts the second extent");
+        check(new File(dir, filename).length() == 16 * 400, "second extent is preallocated");
+
+        FileMgr fm3 = new FileMgr(dir, 400);
+        check(fm3.length(filename) == 8, "preallocated zero blocks are not counted after a crash");
+        check(read(fm3, new BlockId(filename, 7)) == 7, "last block before the new extent");
+        fm3.closeFile(filename);
+
+        // 没有.eof时以物理大小为准
+        new File(dir, filename + FileExtent.EOF_SUFFIX).delete();
+        FileMgr fm4 = new FileMgr(dir, 400);
+        check(fm4.length(filename) == 16, "file without .eof uses its physical size");
+
+        fm4.deleteFile(filename);
+        System.out.println(ok ? "file extent: ok" : "file extent: failed");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static void write(FileMgr fm, BlockId blk, int value) {
+        Page p = fm.newPage();
+        p.setInt(0, value + 1);
+        fm.write(blk, p);
+    }
+
+    private static int read(FileMgr fm, BlockId blk) {
+        Page p = fm.newPage();
+        fm.read(blk, p);
+        return p.getInt(0) - 1;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("failed: " + what);
+            ok = false;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package dawndb.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 4:10
+ * @Version: 1.0
+ * @Description:
+ * 文件句柄缓存测试：
+ * 1. 被引用的句柄不会被淘汰，全部被引用时暂时超过容量，释放后再淘汰到容量以内;
+ * 2. 删除正被使用的文件后立即以同名重新访问，得到新的空文件，旧句柄的最后一次释放不会删除新文件;
+ * 3. 容量为2时多个线程读写6个文件，淘汰不影响进行中的I/O，读出的内容与写入一致
+ */
+
+
+public class FileHandleCacheTest {
+
+    private static final int BLOCK_SIZE = 400;
+    private static boolean ok = true;
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File("dbtest-handles");
+        FileMgr fm = new FileMgr(dir, BLOCK_SIZE);
+        evictReferenced(fm);
+        deleteAndReacquire(fm, dir);
+        concurrentEviction(fm);
+
+        System.out.println(ok ? "file handle cache: ok" : "file handle cache: failed");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static void evictReferenced(FileMgr fm) throws IOException {
+        FileHandleCache cache = new FileHandleCache(fm, 2);
+        FileHandle[] held = new FileHandle[3];
+        for (int i = 0; i < held.length; i++) {
+            held[i] = cache.acquire("held" + i + ".tbl");
+        }
+        check(cache.size() == 3 && cache.evictions() == 0, "referenced handles are not evicted");
+        for (FileHandle h : held) {
+            check(h.channel().isOpen(), "referenced handle stays open");
+        }
+        cache.release(held[0]);
+        cache.release(held[1]);
+        FileHandle h = cache.acquire("held3.tbl");
+        check(cache.size() == 2 && cache.evictions() == 2, "released handles are evicted down to capacity");
+        check(!held[0].channel().isOpen() && !held[1].channel().isOpen(), "evicted handles are closed");
+        check(held[2].channel().isOpen(), "still referenced handle is kept");
+        cache.release(held[2]);
+        cache.release(h);
+        for (int i = 0; i < 4; i++) {
+            cache.delete("held" + i + ".tbl");
+            fm.deleteFile("held" + i + ".tbl");
+        }
+    }
+
+    private static void deleteAndReacquire(FileMgr fm, File dir) throws IOException {
+        String filename = "reuse.tbl";
+        fm.deleteFile(filename);
+        FileHandleCache cache = new FileHandleCache(fm, 4);
+        FileHandle old = cache.acquire(filename);
+        old.extent().append(1, true);
+        old.channel().write(ByteBuffer.wrap(new byte[] {1, 2, 3, 4}), 0);
+
+        check(cache.delete(filename), "open file is deleted through the cache");
+        FileHandle h = cache.acquire(filename);
+        check(h != old, "a deleted file is not handed out again");
+        check(h.channel().size() == 0, "re-acquired name is a new empty file");
+        h.channel().write(ByteBuffer.wrap(new byte[] {9}), 0);
+        old.channel().write(ByteBuffer.wrap(new byte[] {5}), 0);
+
+        cache.release(old);
+        check(!old.channel().isOpen(), "deleted handle is closed on its last release");
+        check(h.channel().isOpen(), "new handle stays open");
+        check(new File(dir, filename).exists(), "last release of the old handle keeps the new file");
+        ByteBuffer bb = ByteBuffer.allocate(1);
+        h.channel().read(bb, 0);
+        check(bb.get(0) == 9, "new file is not overwritten through the old handle");
+        cache.release(h);
+        cache.delete(filename);
+        check(!new File(dir, filename).exists(), "unreferenced file is deleted at once");
+    }
+
+    private static void concurrentEviction(FileMgr fm) throws InterruptedException {
+        int files = 6;
+        fm.setMaxOpenFiles(2);
+        for (int f = 0; f <= files; f++) {
+            fm.deleteFile("evict" + f + ".tbl");
+        }
+        AtomicBoolean failed = new AtomicBoolean();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    Page p = fm.newPage();
+                    for (int i = 0; i < 2000; i++) {
+                        BlockId blk = new BlockId("evict" + (i % files) + ".tbl", id);
+                        p.setInt(0, i);
+                        fm.write(blk, p);
+                        p.setInt(0, -1);
+                        fm.read(blk, p);
+                        if (p.getInt(0) != i) {
+                            failed.set(true);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    System.out.println(e.getMessage());
+                    failed.set(true);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        check(!failed.get(), "reads and writes succeed while handles are evicted");
+        check(fm.handleCacheEvictions() > 0, "handles were evicted");
+        // 没有句柄被引用时, 下一次未命中淘汰到容量以内
+        fm.read(new BlockId("evict" + files + ".tbl", 0), fm.newPage());
+        check(fm.openFileCount() <= 2, "open files are back within capacity");
+        for (int f = 0; f <= files; f++) {
+            fm.deleteFile("evict" + f + ".tbl");
+        }
+        fm.setMaxOpenFiles(FileMgr.DEFAULT_MAX_OPEN_FILES);
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("failed: " + what);
+            ok = false;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package dawndb.file;
+
+import dawndb.buffer.BufferMgr;
+import dawndb.log.LogMgr;
+import dawndb.record.Layout;
+import dawndb.record.Schema;
+import dawndb.record.TableScan;
+import dawndb.tx.Transaction;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/18 9:30
+ * @Version: 1.0
+ * @Description:
+ * FileMgr性能测试
+ * contention: 多线程随机读块的吞吐量，对比全局互斥(原实现)与定位I/O并发读
+ * durability: 各持久化级别下通过TableScan插入记录的吞吐量
+ * scan: 对100k块的表做一次完整的TableScan，并对比大小表与length()系统调用的开销
+ * stats: 开启与关闭I/O统计时read/write每次操作的耗时，衡量统计的开销
+ * compress: 以TableScan测试的数据形态建表，对比压缩前后的文件大小、完整扫描的耗时及读取的字节数
+ */
+
+
+public class FileMgrBenchmark {
+
+    private static final int BLOCK_SIZE = 4096;
+    private static final int NUM_FILES = 4;
+    private static final int BLOCKS_PER_FILE = 2048;
+    private static final int READS_PER_THREAD = 50000;
+
+    public static void main(String[] args) throws Exception {
+        String scenario = args.length > 0 ? args[0] : "contention";
+        switch (scenario) {
+            case "contention":
+                contention();
+                break;
+            case "durability":
+                durability();
+                break;
+            case "scan":
+                scan(args.length > 1 ? Integer.parseInt(args[1]) : 100000);
+                break;
+            case "stats":
+                stats();
+                break;
+            case "compress":
+                compress(args.length > 1 ? Integer.parseInt(args[1]) : 100000);
+                break;
+            default:
+                System.out.println("unknown scenario: " + scenario);
+        }
+    }
+
+    /**
+     * 每个线程在多个文件中随机读块，统计每秒读取的块数
+     */
+    private static void contention() throws Exception {
+        FileMgr fm = new FileMgr(new File("dbbench"), BLOCK_SIZE);
+        prepare(fm);
+        System.out.println("threads\tserialized(blk/s)\tconcurrent(blk/s)");
+        for (int threads = 1; threads <= 32; threads *= 2) {
+            long serialized = readThroughput(fm, threads, true);
+            long concurrent = readThroughput(fm, threads, false);
+            System.out.println(threads + "\t" + serialized + "\t\t\t" + concurrent);
+        }
+    }
+
+    /**
+     * 每个事务插入insertsPerTx条记录后提交，统计每秒插入的记录数
+     */
+    private static void durability() {
+        int numRecords = 20000;
+        int insertsPerTx = 1000;
+        Schema sch = new Schema();
+        sch.addIntField("id");
+        sch.addStringField("name", 20);
+        Layout layout = new Layout(sch);
+        System.out.println("durability\tinserts/s");
+        for (Durability d : Durability.values()) {
+            File dir = new File("dbbench-" + d.name().toLowerCase());
+            deleteAll(dir);
+            FileMgr fm = new FileMgr(dir, 400);
+            fm.setDurability(d);
+            LogMgr lm = new LogMgr(fm, "bench.log");
+            BufferMgr bm = new BufferMgr(fm, lm, 8);
+            long begin = System.nanoTime();
+            for (int i = 0; i < numRecords; i += insertsPerTx) {
+                Transaction tx = new Transaction(fm, lm, bm);
+                TableScan ts = new TableScan(tx, "bench", layout);
+                for (int j = i; j < i + insertsPerTx; j++) {
+                    ts.insert();
+                    ts.setInt("id", j);
+                    ts.setString("name", "rec" + j);
+                }
+                ts.close();
+                tx.commit();
+            }
+            long elapsed = System.nanoTime() - begin;
+            System.out.println(d + "\t" + numRecords * 1_000_000_000L / elapsed);
+        }
+    }
+
+    /**
+     * 直接以记录页格式写出numblocks个块，每块的所有槽位均被使用，然后完整扫描该表
+     */
+    private static void scan(int numblocks) throws Exception {
+        File dir = new File("dbbench-scan");
+        deleteAll(dir);
+        FileMgr fm = new FileMgr(dir, 400);
+        fm.setDurability(Durability.NONE);
+        Schema sch = new Schema();
+        sch.addIntField("id");
+        Layout layout = new Layout(sch);
+        int slots = fm.blockSize() / layout.slotSize();
+
+        List<BlockId> blocks = new ArrayList<>();
+        List<Page> pages = new ArrayList<>();
+        for (int b = 0; b < numblocks; b++) {
+            Page p = new Page(fm.blockSize());
+            for (int slot = 0; slot < slots; slot++) {
+                p.setInt(slot * layout.slotSize(), 1);
+                p.setInt(slot * layout.slotSize() + layout.offset("id"), b * slots + slot);
+            }
+            blocks.add(new BlockId("scan.tbl", b));
+            pages.add(p);
+            if (blocks.size() == 1024 || b == numblocks - 1) {
+                fm.writeBatch(blocks, pages);
+                blocks.clear();
+                pages.clear();
+            }
+        }
+
+        LogMgr lm = new LogMgr(fm, "bench.log");
+        BufferMgr bm = new BufferMgr(fm, lm, 8);
+        Transaction tx = new Transaction(fm, lm, bm);
+        long begin = System.nanoTime();
+        TableScan ts = new TableScan(tx, "scan", layout);
+        long count = 0;
+        while (ts.next()) {
+            count++;
+        }
+        ts.close();
+        long scanTime = System.nanoTime() - begin;
+        tx.commit();
+        System.out.println("full scan of " + numblocks + " blocks, " + count + " records: "
+                + scanTime / 1_000_000 + " ms");
+
+        // TableScan每跨过一个块调用一次length()
+        begin = System.nanoTime();
+        long sum = 0;
+        for (int i = 0; i < numblocks; i++) {
+            sum += fm.length("scan.tbl");
+        }
+        long cached = System.nanoTime() - begin;
+        try (RandomAccessFile f = new RandomAccessFile(new File(dir, "scan.tbl"), "r")) {
+            begin = System.nanoTime();
+            for (int i = 0; i < numblocks; i++) {
+                sum += f.length() / fm.blockSize();
+            }
+        }
+        long syscall = System.nanoTime() - begin;
+        System.out.println("length() x " + numblocks + ": size table " + cached / 1000 + " us, "
+                + "RandomAccessFile.length " + syscall / 1000 + " us (" + sum + ")");
+    }
+
+    /**
+     * 对页缓存中的块交替测量开启、关闭统计时的read/write耗时，先预热使JIT完成编译，
+     * 每种设置测量多轮取最小值以减少噪声
+     */
+    private static void stats() {
+        FileMgr fm = new FileMgr(new File("dbbench"), BLOCK_SIZE);
+        fm.setDurability(Durability.NONE);
+        prepare(fm);
+        Page p = new Page(BLOCK_SIZE);
+        int ops = 200000;
+        long[] best = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int round = 0; round < 10; round++) {
+            for (int enabled = 0; enabled < 2; enabled++) {
+                fm.setStatsEnabled(enabled == 1);
+                best[enabled * 2] = Math.min(best[enabled * 2], opTime(fm, p, ops, false));
+                best[enabled * 2 + 1] = Math.min(best[enabled * 2 + 1], opTime(fm, p, ops, true));
+            }
+        }
+        System.out.println("op\tstats off(ns/op)\tstats on(ns/op)");
+        System.out.println("read\t" + best[0] + "\t\t\t" + best[2]);
+        System.out.println("write\t" + best[1] + "\t\t\t" + best[3]);
+        System.out.println(fm.ioStats("bench0.tbl"));
+    }
+
+    /**
+     * 两种表：TableScanTest的(A int, B varchar(9))，以及定长字符串较宽的(id int, name varchar(20))。
+     * 字符串按最大长度占据槽位，未使用的部分为0，块的可压缩性较高
+     */
+    private static void compress(int numRecords) {
+        File dir = new File("dbbench-compress");
+        deleteAll(dir);
+        FileMgr fm = new FileMgr(dir, 400);
+        fm.setDurability(Durability.NONE);
+        LogMgr lm = new LogMgr(fm, "bench.log");
+        BufferMgr bm = new BufferMgr(fm, lm, 8);
+
+        Schema narrow = new Schema();
+        narrow.addIntField("A");
+        narrow.addStringField("B", 9);
+        Schema wide = new Schema();
+        wide.addIntField("id");
+        wide.addStringField("name", 20);
+        Random rand = new Random(1);
+        System.out.println("table\tformat\t\tsize(bytes)\tscan(ms)\tread(bytes)");
+        for (Schema sch : new Schema[] {narrow, wide}) {
+            Layout layout = new Layout(sch);
+            String tblname = sch == narrow ? "narrow" : "wide";
+            Transaction tx = new Transaction(fm, lm, bm);
+            TableScan ts = new TableScan(tx, tblname, layout);
+            for (int i = 0; i < numRecords; i++) {
+                ts.insert();
+                int n = rand.nextInt(50);
+                if (sch == narrow) {
+                    ts.setInt("A", n);
+                    ts.setString("B", "rec" + n);
+                } else {
+                    ts.setInt("id", i);
+                    ts.setString("name", "name" + n);
+                }
+            }
+            ts.close();
+            tx.commit();
+
+            String filename = tblname + ".tbl";
+            long plainSize = new File(dir, filename).length();
+            long[] plain = scanCost(fm, lm, bm, tblname, layout);
+            fm.compress(filename);
+            File map = new File(dir, filename + ".zmap");
+            long compressedSize = new File(dir, filename + ".z1").length() + map.length();
+            long[] compressed = scanCost(fm, lm, bm, tblname, layout);
+            System.out.println(tblname + "\tplain\t\t" + plainSize + "\t\t" + plain[0] + "\t\t" + plain[1]);
+            System.out.println(tblname + "\tcompressed\t" + compressedSize + "\t\t" + compressed[0]
+                    + "\t\t" + compressed[1]);
+        }
+    }
+
+    /**
+     * 完整扫描表若干次
+     * @return 最短扫描时间(毫秒)及每次扫描从文件读取的字节数
+     */
+    private static long[] scanCost(FileMgr fm, LogMgr lm, BufferMgr bm, String tblname, Layout layout) {
+        long best = Long.MAX_VALUE;
+        long bytes = 0;
+        for (int round = 0; round < 5; round++) {
+            fm.resetIoStats();
+            Transaction tx = new Transaction(fm, lm, bm);
+            long begin = System.nanoTime();
+            TableScan ts = new TableScan(tx, tblname, layout);
+            while (ts.next()) {
+                ts.getInt(layout.schema().fields().get(0));
+            }
+            ts.close();
+            best = Math.min(best, System.nanoTime() - begin);
+            tx.commit();
+            bytes = fm.ioStats(tblname + ".tbl").getBytesRead();
+        }
+        return new long[] {best / 1_000_000, bytes};
+    }
+
+    private static long opTime(FileMgr fm, Page p, int ops, boolean write) {
+        Random rand = new Random(ops);
+        long begin = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            BlockId blk = new BlockId("bench" + (i % NUM_FILES) + ".tbl", rand.nextInt(BLOCKS_PER_FILE));
+            if (write) {
+                fm.write(blk, p);
+            } else {
+                fm.read(blk, p);
+            }
+        }
+        return (System.nanoTime() - begin) / ops;
+    }
+
+    private static void deleteAll(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static void prepare(FileMgr fm) {
+        Page p = new Page(BLOCK_SIZE);
+        for (int f = 0; f < NUM_FILES; f++) {
+            String filename = "bench" + f + ".tbl";
+            for (int b = fm.length(filename); b < BLOCKS_PER_FILE; b++) {
+                p.setInt(0, b);
+                fm.write(new BlockId(filename, b), p);
+            }
+        }
+    }
+
+    /**
+     * @param serialized 为true时所有读操作在同一把锁上互斥，模拟原先synchronized的FileMgr
+     */
+    private static long readThroughput(FileMgr fm, int threads, boolean serialized) throws Exception {
+        Object globalLock = new Object();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicLong checksum = new AtomicLong();
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            new Thread(() -> {
+                Random rand = new Random(seed);
+                Page p = new Page(BLOCK_SIZE);
+                long sum = 0;
+                try {
+                    start.await();
+                    for (int i = 0; i < READS_PER_THREAD; i++) {
+                        BlockId blk = new BlockId("bench" + rand.nextInt(NUM_FILES) + ".tbl",
+                                rand.nextInt(BLOCKS_PER_FILE));
+                        if (serialized) {
+                            synchronized (globalLock) {
+                                fm.read(blk, p);
+                            }
+                        } else {
+                            fm.read(blk, p);
+                        }
+                        sum += p.getInt(0);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                checksum.addAndGet(sum);
+                done.countDown();
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        return (long) threads * READS_PER_THREAD * 1_000_000_000L / elapsed;
+    }
+}
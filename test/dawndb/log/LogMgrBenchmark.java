@@ -0,0 +1,233 @@
+package dawndb.log;
+
+import dawndb.file.BlockId;
+import dawndb.file.Durability;
+import dawndb.file.FileMgr;
+import dawndb.file.LatencyHistogram;
+import dawndb.file.Page;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 1:20
+ * @Version: 1.0
+ * @Description:
+ * LogMgr性能测试
+ * group [seconds]: 1、8、64、256个并发事务各自写入开始、修改、提交记录并刷新日志，统计每秒提交数与每次刷盘的平均提交数。
+ *                  对比每次提交各自写出并刷盘(原实现)、组提交、以及最大组延迟为200微秒的组提交
+ * append [seconds]: 1到16个线程并发追加100字节的记录(不刷盘)的吞吐量，对比整个append加锁与CAS预留空间的无锁追加
+ * ring [seconds]: 4个线程以COMMIT_ONLY级别追加100字节的记录(不刷盘)，日志缓冲区从2页到8MB时的吞吐量与append延迟；
+ *                 2页时几乎每次换页都要等待写出，接近原先只有一个日志页的情形
+ * seek [records]: 模拟回滚一个较早开始的事务。该事务写入10条记录后，其他事务又写入records条记录，
+ *                 对比从日志末尾倒序遍历找到该事务最后一条记录、与用iterator(lsn)直接定位的耗时
+ */
+
+
+public class LogMgrBenchmark {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    public static void main(String[] args) {
+        String scenario = args.length > 0 ? args[0] : "group";
+        switch (scenario) {
+            case "group":
+                group(args.length > 1 ? Integer.parseInt(args[1]) : 2);
+                break;
+            case "append":
+                append(args.length > 1 ? Integer.parseInt(args[1]) : 1);
+                break;
+            case "ring":
+                ring(args.length > 1 ? Integer.parseInt(args[1]) : 2);
+                break;
+            case "seek":
+                seek(args.length > 1 ? Integer.parseInt(args[1]) : 100000);
+                break;
+            default:
+                System.out.println("unknown scenario: " + scenario);
+        }
+    }
+
+    private static void group(int seconds) {
+        FileMgr fm = new FileMgr(new File("dbbench-log"), BLOCK_SIZE);
+        fm.setDurability(Durability.COMMIT_ONLY);
+        System.out.println("threads\tper-commit flush(tx/s)\tgroup commit(tx/s)\tcommits/flush\tdelay 200us(tx/s)\tcommits/flush");
+        for (int threads : new int[] {1, 8, 64, 256}) {
+            LogMgr serial = new LogMgr(fm, "serial.log");
+            Page page = new Page(new byte[BLOCK_SIZE]);
+            long perCommit = commitThroughput(serial, threads, seconds, lsn -> {
+                // 原实现：每个提交者各自写出日志页并刷盘
+                synchronized (page) {
+                    fm.write(new BlockId("serial.log", 0), page);
+                    fm.force("serial.log");
+                }
+            });
+            LogMgr lm = new LogMgr(fm, "group.log");
+            long group = commitThroughput(lm, threads, seconds, lm::flush);
+            double perFlush = (double) lm.flushRequests() / Math.max(1, lm.flushes());
+            LogMgr delayed = new LogMgr(fm, "delayed.log");
+            delayed.setMaxGroupDelay(200);
+            delayed.setMaxGroupSize(threads);
+            long withDelay = commitThroughput(delayed, threads, seconds, delayed::flush);
+            double perDelayedFlush = (double) delayed.flushRequests() / Math.max(1, delayed.flushes());
+            System.out.printf("%d\t%d\t\t\t%d\t\t\t%.1f\t\t%d\t\t\t%.1f%n", threads, perCommit, group, perFlush,
+                    withDelay, perDelayedFlush);
+        }
+    }
+
+    private static void append(int seconds) {
+        FileMgr fm = new FileMgr(new File("dbbench-log"), BLOCK_SIZE);
+        fm.setDurability(Durability.NONE);
+        // 预热JIT
+        appendThroughput(2, seconds, new LogMgr(fm, "warmup.log")::append);
+        System.out.println("threads\tsynchronized(rec/s)\tlock-free(rec/s)");
+        for (int threads = 1; threads <= 16; threads *= 2) {
+            LogMgr locked = new LogMgr(fm, "locked.log");
+            long a = appendThroughput(threads, seconds, rec -> {
+                synchronized (locked) {
+                    locked.append(rec);
+                }
+            });
+            LogMgr lm = new LogMgr(fm, "lockfree.log");
+            long b = appendThroughput(threads, seconds, lm::append);
+            System.out.println(threads + "\t" + a + "\t\t" + b);
+        }
+    }
+
+    private static void ring(int seconds) {
+        FileMgr fm = new FileMgr(new File("dbbench-log"), BLOCK_SIZE);
+        fm.setDurability(Durability.COMMIT_ONLY);
+        int threads = 4;
+        System.out.println("buffer\t\trec/s\t\tp99(us)\tp99.9(us)\tmax(us)\tflushes");
+        for (int bufferSize : new int[] {2 * BLOCK_SIZE, 64 << 10, 1 << 20, 8 << 20}) {
+            LogMgr.delete(fm, "ring.log");
+            LogMgr lm = new LogMgr(fm, "ring.log", bufferSize);
+            LatencyHistogram latency = new LatencyHistogram();
+            long recs = appendThroughput(threads, seconds, rec -> {
+                long begin = System.nanoTime();
+                lm.append(rec);
+                latency.record(System.nanoTime() - begin);
+            });
+            lm.close();
+            System.out.println((bufferSize >= 1 << 20 ? (bufferSize >> 20) + " MB" : (bufferSize >> 10) + " KB") + "\t\t"
+                    + recs + "\t\t" + latency.percentile(99) / 1000 + "\t" + latency.percentile(99.9) / 1000 + "\t\t"
+                    + latency.max() / 1000 + "\t" + lm.flushes());
+        }
+    }
+
+    private static void seek(int records) {
+        FileMgr fm = new FileMgr(new File("dbbench-log"), BLOCK_SIZE);
+        fm.setDurability(Durability.NONE);
+        LogMgr.delete(fm, "seek.log");
+        LogMgr lm = new LogMgr(fm, "seek.log");
+        byte[] rec = new byte[100];
+        byte[] mine = new byte[100];
+        mine[0] = 1;
+        long lastLSN = 0;
+        for (int i = 0; i < 10; i++) {
+            lastLSN = lm.append(mine);
+        }
+        for (int i = 0; i < records; i++) {
+            lm.append(rec);
+        }
+        lm.flush(lm.append(rec));
+        System.out.println("records after	scan from end(ms)	seek by LSN(ms)");
+        // 第一轮预热JIT和操作系统页缓存
+        for (int round = 0; round < 3; round++) {
+            long begin = System.nanoTime();
+            Iterator<byte[]> iter = lm.iterator();
+            int skipped = 0;
+            while (iter.hasNext() && iter.next()[0] != 1) {
+                skipped++;
+            }
+            long scan = System.nanoTime() - begin;
+            begin = System.nanoTime();
+            lm.iterator(lastLSN).next();
+            long seek = System.nanoTime() - begin;
+            if (round > 0) {
+                System.out.printf("%d		%.3f			%.3f%n", skipped, scan / 1e6, seek / 1e6);
+            }
+        }
+        lm.close();
+    }
+
+    private static long appendThroughput(int threads, int seconds, Appender appender) {
+        LongAdder appends = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(threads);
+        byte[] rec = new byte[100];
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                long n = 0;
+                while (running.get()) {
+                    appender.append(rec);
+                    n++;
+                }
+                appends.add(n);
+                done.countDown();
+            }).start();
+        }
+        long begin = System.nanoTime();
+        try {
+            Thread.sleep(seconds * 1000L);
+            running.set(false);
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long elapsed = System.nanoTime() - begin;
+        return appends.sum() * 1_000_000_000L / elapsed;
+    }
+
+    /**
+     * threads个线程在seconds秒内不断执行事务，每个事务写入3条约100字节的记录后刷新到提交记录
+     * @return 每秒提交的事务数
+     */
+    private static long commitThroughput(LogMgr lm, int threads, int seconds, Flusher flusher) {
+        LongAdder commits = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        byte[] rec = new byte[100];
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    while (running.get()) {
+                        lm.append(rec);
+                        lm.append(rec);
+                        long lsn = lm.append(rec);
+                        flusher.flush(lsn);
+                        commits.increment();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        try {
+            Thread.sleep(seconds * 1000L);
+            running.set(false);
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long elapsed = System.nanoTime() - begin;
+        return commits.sum() * 1_000_000_000L / elapsed;
+    }
+
+    private interface Flusher {
+        void flush(long lsn);
+    }
+
+    private interface Appender {
+        void append(byte[] rec);
+    }
+}
@@ -0,0 +1,329 @@
+package dawndb.log;
+
+import dawndb.file.BlockId;
+import dawndb.file.Durability;
+import dawndb.file.FileMgr;
+import dawndb.file.Page;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 1:50
+ * @Version: 1.0
+ * @Description:
+ * 多线程并发追加日志的正确性测试。每个线程追加长度随机的记录(线程号, 序号, 由二者决定的填充字节)，
+ * 并不时刷新日志；结束后分别用原日志管理器和重新打开的日志管理器倒序遍历日志，
+ * 检查每条记录恰好出现一次、内容完整，且同一线程的记录按追加的先后排列。
+ * 追加期间另一个线程不断从日志末尾开始读，读到的记录应完整。
+ * 同一线程得到的LSN应严格递增；每隔SAMPLE条记录保存一个LSN，用iterator(lsn)直接定位时应读到该记录，
+ * 重新打开日志后新追加的记录的LSN应大于之前所有的LSN。
+ * 日志分为很小的段(SEGMENT_SIZE)，最后检查检查点删除的段：有事务登记时不删除它需要的段，
+ * 检查点的位置和保留的段在重新打开后不变。
+ * 日志缓冲区分别为最小的2页(追加者经常等待日志写线程)和默认大小。
+ * 关闭后追加应抛出IllegalStateException；写出失败时等待换页的追加者和刷新者都应抛出异常而不是一直等待。
+ */
+
+
+public class LogMgrStressTest {
+
+    private static final int THREADS = 16;
+    private static final int RECORDS_PER_THREAD = 20000;
+    private static final int SAMPLE = 1000;
+    private static final int SEGMENT_SIZE = 64 * 400;
+
+    public static void main(String[] args) throws InterruptedException {
+        File dir = new File("dbtest-logstress");
+        FileMgr fm = new FileMgr(dir, 400);
+        fm.setDurability(Durability.NONE);
+        boolean ok = true;
+        for (int bufferSize : new int[] {2 * fm.blockSize(), LogMgr.DEFAULT_BUFFER_SIZE}) {
+            ok &= run(fm, bufferSize);
+        }
+        ok &= failure(dir);
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean run(FileMgr fm, int bufferSize) throws InterruptedException {
+        LogMgr.delete(fm, "stress.log");
+        LogMgr lm = new LogMgr(fm, "stress.log", bufferSize, SEGMENT_SIZE);
+        lm.setMaxGroupDelay(20);
+        System.out.println(lm.bufferPages() + " log buffer pages");
+        Thread[] threads = new Thread[THREADS];
+        long[][] samples = new long[THREADS][RECORDS_PER_THREAD / SAMPLE];
+        boolean[] increasing = new boolean[THREADS];
+        long[] lastLSN = new long[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                Random rand = new Random(id);
+                long last = -1;
+                increasing[id] = true;
+                for (int seq = 0; seq < RECORDS_PER_THREAD; seq++) {
+                    long lsn = lm.append(createRecord(id, seq, 8 + rand.nextInt(120)));
+                    increasing[id] &= lsn > last;
+                    last = lsn;
+                    lastLSN[id] = lsn;
+                    if (seq % SAMPLE == 0) {
+                        samples[id][seq / SAMPLE] = lsn;
+                    }
+                    if (rand.nextInt(10) == 0) {
+                        lm.flush(lsn);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        // 追加期间不断从日志末尾开始读，读到的记录应完整
+        AtomicInteger readErrors = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (alive(threads)) {
+                if (!readTail(lm.iterator())) {
+                    readErrors.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+        for (Thread t : threads) {
+            t.join();
+        }
+        reader.join();
+        boolean ok = true;
+        if (readErrors.get() > 0) {
+            System.out.println("concurrent iterator: " + readErrors.get() + " errors");
+            ok = false;
+        }
+        for (int t = 0; t < THREADS; t++) {
+            if (!increasing[t]) {
+                System.out.println("thread " + t + ": LSNs are not increasing");
+                ok = false;
+            }
+        }
+        ok &= check("log manager", lm.iterator());
+        ok &= seek("log manager", lm, samples);
+        lm.close();
+        LogMgr reopened = new LogMgr(fm, "stress.log", bufferSize, SEGMENT_SIZE);
+        ok &= check("reopened", reopened.iterator());
+        ok &= seek("reopened", reopened, samples);
+        long max = Arrays.stream(lastLSN).max().getAsLong();
+        long lsn = reopened.append(createRecord(0, RECORDS_PER_THREAD, 8));
+        if (lsn <= max) {
+            System.out.println("reopened: LSN " + lsn + " after " + max);
+            ok = false;
+        }
+        ok &= truncate(fm, reopened, samples);
+        reopened.close();
+        reopened = new LogMgr(fm, "stress.log", bufferSize, SEGMENT_SIZE);
+        if (reopened.checkpointLSN() != checkpoint || reopened.firstSegment() != firstSegment) {
+            System.out.println("reopened: checkpoint " + reopened.checkpointLSN() + ", first segment "
+                    + reopened.firstSegment());
+            ok = false;
+        }
+        Page last = new Page(reopened.iterator(checkpoint).next());
+        if (last.getInt(Integer.BYTES) != RECORDS_PER_THREAD + 999) {
+            System.out.println("reopened: cannot seek to checkpoint");
+            ok = false;
+        }
+        reopened.close();
+        try {
+            reopened.append(createRecord(0, 0, 8));
+            System.out.println("append after close did not fail");
+            ok = false;
+        } catch (IllegalStateException e) {
+            // 预期的异常
+        }
+        System.out.println("flush requests " + lm.flushRequests() + ", flushes " + lm.flushes());
+        return ok;
+    }
+
+    private static byte[] createRecord(int id, int seq, int length) {
+        byte[] b = new byte[length];
+        Page p = new Page(b);
+        p.setInt(0, id);
+        p.setInt(Integer.BYTES, seq);
+        for (int i = 2 * Integer.BYTES; i < length; i++) {
+            b[i] = (byte) (id * 31 + seq + i);
+        }
+        return b;
+    }
+
+    /**
+     * 日志写出开始失败后，各线程不断追加记录直到抛出异常；2页的缓冲区很快写满，
+     * 多数线程会在等待换页时收到异常。所有线程都应在限定时间内结束，之后flush也应抛出异常
+     */
+    private static boolean failure(File dir) throws InterruptedException {
+        AtomicBoolean broken = new AtomicBoolean();
+        FileMgr fm = new FileMgr(dir, 400) {
+            @Override
+            public void writeBatch(List<BlockId> blocks, List<Page> pages) {
+                if (broken.get()) {
+                    throw new RuntimeException("disk full");
+                }
+                super.writeBatch(blocks, pages);
+            }
+        };
+        fm.setDurability(Durability.NONE);
+        LogMgr.delete(fm, "failure.log");
+        LogMgr lm = new LogMgr(fm, "failure.log", 2 * fm.blockSize(), SEGMENT_SIZE);
+        long lsn = lm.append(createRecord(0, 0, 8));
+        broken.set(true);
+        AtomicInteger failed = new AtomicInteger();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            final int id = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int seq = 1; ; seq++) {
+                        lm.append(createRecord(id, seq, 100));
+                    }
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                }
+            });
+            threads[t].setDaemon(true);
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join(10000);
+        }
+        boolean ok = failed.get() == THREADS;
+        try {
+            lm.flush(lsn);
+            ok = false;
+        } catch (RuntimeException e) {
+            // 预期的异常
+        }
+        System.out.println("write failure: " + failed.get() + " of " + THREADS + " appenders failed, "
+                + (ok ? "ok" : "error"));
+        return ok;
+    }
+
+    private static long checkpoint;
+    private static int firstSegment;
+
+    /**
+     * 在日志中间做检查点时删除之前的段；有事务登记时保留它登记之后的段，登记取消后才删除
+     */
+    private static boolean truncate(FileMgr fm, LogMgr lm, long[][] samples) {
+        boolean ok = true;
+        long mid = samples[THREADS - 1][samples[0].length / 2];
+        long retained = lm.retain();
+        lm.checkpoint(mid);
+        ok &= lm.firstSegment() == segment(fm, lm, mid);
+        for (int i = 0; i < 1000; i++) {
+            checkpoint = lm.append(createRecord(0, RECORDS_PER_THREAD + i, 100));
+        }
+        lm.checkpoint(checkpoint);
+        ok &= lm.firstSegment() == segment(fm, lm, retained);
+        lm.release(retained);
+        lm.checkpoint(checkpoint);
+        firstSegment = lm.firstSegment();
+        ok &= firstSegment == segment(fm, lm, checkpoint) && firstSegment > 0;
+        int records = 0;
+        Iterator<byte[]> iter = lm.iterator();
+        while (iter.hasNext()) {
+            iter.next();
+            records++;
+        }
+        ok &= records > 0 && records < THREADS * RECORDS_PER_THREAD;
+        System.out.println("truncated: first segment " + firstSegment + ", " + records + " records, "
+                + (ok ? "ok" : "error"));
+        return ok;
+    }
+
+    private static int segment(FileMgr fm, LogMgr lm, long lsn) {
+        return (int) (lsn / fm.blockSize()) / lm.segmentBlocks();
+    }
+
+    /**
+     * 从保存的每个LSN处开始读，第一条记录应为该LSN对应的记录
+     */
+    private static boolean seek(String name, LogMgr lm, long[][] samples) {
+        int errors = 0;
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < samples[t].length; i++) {
+                Page p = new Page(lm.iterator(samples[t][i]).next());
+                if (p.getInt(0) != t || p.getInt(Integer.BYTES) != i * SAMPLE) {
+                    errors++;
+                }
+            }
+        }
+        System.out.println(name + ": seek " + (errors == 0 ? "ok" : errors + " errors"));
+        return errors == 0;
+    }
+
+    private static boolean alive(Thread[] threads) {
+        for (Thread t : threads) {
+            if (t.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 读出迭代器开头的最多100条记录，检查都是完整的记录
+     */
+    private static boolean readTail(Iterator<byte[]> iter) {
+        try {
+            for (int n = 0; n < 100 && iter.hasNext(); n++) {
+                byte[] b = iter.next();
+                Page p = new Page(b);
+                int id = p.getInt(0);
+                int seq = p.getInt(Integer.BYTES);
+                if (b.length < 8 || id < 0 || id >= THREADS || seq < 0 || seq >= RECORDS_PER_THREAD) {
+                    return false;
+                }
+                for (int i = 2 * Integer.BYTES; i < b.length; i++) {
+                    if (b[i] != (byte) (id * 31 + seq + i)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    private static boolean check(String name, Iterator<byte[]> iter) {
+        // 倒序遍历，同一线程下一条记录的序号应比上一条小1
+        int[] next = new int[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            next[t] = RECORDS_PER_THREAD - 1;
+        }
+        int records = 0;
+        int errors = 0;
+        while (iter.hasNext()) {
+            byte[] b = iter.next();
+            Page p = new Page(b);
+            int id = p.getInt(0);
+            int seq = p.getInt(Integer.BYTES);
+            boolean valid = id >= 0 && id < THREADS && seq == next[id];
+            for (int i = 2 * Integer.BYTES; valid && i < b.length; i++) {
+                valid = b[i] == (byte) (id * 31 + seq + i);
+            }
+            if (valid) {
+                next[id]--;
+            } else {
+                errors++;
+            }
+            records++;
+        }
+        for (int t = 0; t < THREADS; t++) {
+            if (next[t] != -1) {
+                errors++;
+            }
+        }
+        System.out.println(name + ": " + records + " records, " + (errors == 0 ? "ok" : errors + " errors"));
+        return errors == 0;
+    }
+}
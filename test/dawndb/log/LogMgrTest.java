@@ -26,8 +26,9 @@ public class LogMgrTest {
         System.out.println("done");
         createRecords(1, 35);
         printLogRecords("The log file now has these records:");
-        createRecords(36, 70);
-        lm.flush(65);
+        long[] lsns = createRecords(36, 70);
+        // 刷新到第65条记录，flush的参数是append返回的LSN而不是记录序号
+        lm.flush(lsns[65 - 36]);
         printLogRecords("The log file now has these records:");
     }
 
@@ -51,14 +52,21 @@ public class LogMgrTest {
         System.out.println();
     }
 
-    private static void createRecords(int start, int end) {
+    /**
+     * 追加第start到第end条记录
+     * @return 各记录的LSN
+     */
+    private static long[] createRecords(int start, int end) {
         System.out.print("Creating records: ");
+        long[] lsns = new long[end - start + 1];
         for (int i=start; i<=end; i++) {
             byte[] rec = createLogRecord("record"+i, i);
-            int lsn = lm.append(rec);
+            long lsn = lm.append(rec);
+            lsns[i - start] = lsn;
             System.out.print(lsn + " ");
         }
         System.out.println();
+        return lsns;
     }
 
     private static byte[] createLogRecord(String s, int n) {
@@ -0,0 +1,140 @@
+package dawndb.tx.recovery;
+
+import dawndb.buffer.BufferMgr;
+import dawndb.file.BlockId;
+import dawndb.file.FileMgr;
+import dawndb.file.Page;
+import dawndb.log.LogMgr;
+import dawndb.tx.Transaction;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @Author: WangChen
+ * @Date: 2026/10/19 9:10
+ * @Version: 1.0
+ * @Description:
+ * 恢复管理器取消日志登记的测试。日志分为很小的段，每个场景之后追加足够多的记录再做检查点，
+ * 检查点之前的段都应被删除，即没有事务的登记遗留下来。
+ * 1. 恢复之后恢复所用的事务不再登记;
+ * 2. 写回数据块失败时提交和回滚都抛出异常，事务的登记仍被取消，之后再次回滚不会取消其他事务的登记
+ */
+
+
+public class RecoveryMgrTest {
+
+    private static final int SEGMENT_SIZE = 4 * 400;
+    private static boolean ok = true;
+
+    public static void main(String[] args) {
+        AtomicBoolean broken = new AtomicBoolean();
+        FileMgr fm = new FileMgr(new File("dbtest-recovery"), 400) {
+            @Override
+            public void write(BlockId blk, Page p) {
+                fail(broken, blk);
+                super.write(blk, p);
+            }
+
+            @Override
+            public void writeBatch(List<BlockId> blocks, List<Page> pages) {
+                for (BlockId blk : blocks) {
+                    fail(broken, blk);
+                }
+                super.writeBatch(blocks, pages);
+            }
+        };
+        String filename = "recovery.tbl";
+        fm.deleteFile(filename);
+        fm.append(filename);
+        fm.append(filename);
+        LogMgr.delete(fm, "recovery.log");
+        LogMgr lm = new LogMgr(fm, "recovery.log", LogMgr.DEFAULT_BUFFER_SIZE, SEGMENT_SIZE);
+        BufferMgr bm = new BufferMgr(fm, lm, 8);
+        BlockId blk = new BlockId(filename, 0);
+
+        // 恢复
+        new Transaction(fm, lm, bm).recover();
+        checkTruncated(fm, lm, "recover");
+
+        // 提交失败
+        Transaction tx = new Transaction(fm, lm, bm);
+        tx.pin(blk);
+        tx.setInt(blk, 0, 1, true);
+        broken.set(true);
+        try {
+            tx.commit();
+            check(false, "commit fails when the block cannot be written");
+        } catch (RuntimeException e) {
+            // 预期的异常
+        }
+        broken.set(false);
+        checkTruncated(fm, lm, "failed commit");
+
+        // 回滚失败后再次回滚。提交失败的事务仍持有块0的锁, 使用另一个块
+        // 另一个登记与事务的登记位于同一LSN, 重复取消时会被减掉
+        blk = new BlockId(filename, 1);
+        long other = lm.retain();
+        tx = new Transaction(fm, lm, bm);
+        tx.pin(blk);
+        tx.setInt(blk, 0, 2, true);
+        broken.set(true);
+        try {
+            tx.rollback();
+            check(false, "rollback fails when the block cannot be written");
+        } catch (RuntimeException e) {
+            // 预期的异常
+        }
+        broken.set(false);
+        tx.rollback();
+        long checkpoint = fill(lm);
+        lm.checkpoint(checkpoint);
+        check(lm.firstSegment() == segment(fm, lm, other),
+                "repeated rollback keeps another registration, first segment " + lm.firstSegment());
+        lm.release(other);
+        checkTruncated(fm, lm, "failed rollback");
+
+        lm.close();
+        System.out.println(ok ? "recovery manager: ok" : "recovery manager: failed");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static void fail(AtomicBoolean broken, BlockId blk) {
+        if (broken.get() && blk.filename().equals("recovery.tbl")) {
+            throw new RuntimeException("cannot write " + blk);
+        }
+    }
+
+    /**
+     * 追加记录使日志跨过多个段，然后做检查点，检查点所在段之前的段都应被删除
+     */
+    private static void checkTruncated(FileMgr fm, LogMgr lm, String what) {
+        long checkpoint = fill(lm);
+        lm.checkpoint(checkpoint);
+        check(lm.firstSegment() == segment(fm, lm, checkpoint),
+                what + " leaves no registration, first segment " + lm.firstSegment()
+                        + ", checkpoint in segment " + segment(fm, lm, checkpoint));
+    }
+
+    private static long fill(LogMgr lm) {
+        long lsn = -1;
+        for (int i = 0; i < 100; i++) {
+            lsn = lm.append(new byte[100]);
+        }
+        return lsn;
+    }
+
+    private static int segment(FileMgr fm, LogMgr lm, long lsn) {
+        return (int) (lsn / fm.blockSize()) / lm.segmentBlocks();
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("failed: " + what);
+            ok = false;
+        }
+    }
+}